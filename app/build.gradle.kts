@@ -36,6 +36,18 @@ android {
     buildFeatures {
         buildConfig = true
     }
+
+    testOptions {
+        unitTests {
+            // Robolectric tests inflate the real layouts
+            isIncludeAndroidResources = true
+            // bench_ tests only run with -Pbenchmarks (see Benchmarks in src/test)
+            all {
+                it.systemProperty("benchmarks", project.hasProperty("benchmarks"))
+                it.systemProperty("benchmarks.dir", layout.buildDirectory.dir("reports/benchmarks").get().asFile.path)
+            }
+        }
+    }
 }
 
 dependencies {
@@ -59,6 +71,8 @@ dependencies {
     implementation(libs.material)
     implementation(libs.activity)
     implementation(libs.constraintlayout)
+    implementation(libs.work.runtime)
+    implementation(libs.recyclerview)
 
     // Third-party libraries
     implementation(libs.okhttp)
@@ -67,6 +81,8 @@ dependencies {
 
     // Testing libraries
     testImplementation(libs.junit)
+    testImplementation(libs.robolectric)
+    testImplementation(libs.test.core)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 }
\ No newline at end of file
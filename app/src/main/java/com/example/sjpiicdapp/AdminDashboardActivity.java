@@ -7,12 +7,14 @@ import android.widget.Button;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
 
 public class AdminDashboardActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle s) {
         super.onCreate(s);
         setContentView(R.layout.activity_admin_dashboard);
+        StartupTrace.firstScreen(this, "adminDashboard");
 
         Button btnManageClearance = findViewById(R.id.btnManageClearance);
         Button btnViewAppointments = findViewById(R.id.btnViewAppointments);
@@ -27,7 +29,15 @@ public class AdminDashboardActivity extends AppCompatActivity {
             startActivity(new Intent(this, MyAppointmentsActivity.class));
         });
 
+        if (BuildConfig.DEBUG) {
+            Button btnDebugTxStats = findViewById(R.id.btnDebugTxStats);
+            btnDebugTxStats.setVisibility(android.view.View.VISIBLE);
+            btnDebugTxStats.setOnClickListener(v -> startActivity(new Intent(this, TransactionStatsActivity.class)));
+        }
+
         btnAdminSignOut.setOnClickListener(v -> {
+            FirebaseUser current = FirebaseAuth.getInstance().getCurrentUser();
+            if (current != null) RoleResolver.forget(this, current.getUid());
             FirebaseAuth.getInstance().signOut();
             Intent i = new Intent(this, HomeActivity.class);
             i.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
@@ -4,7 +4,10 @@ import android.app.AlertDialog;
 import android.content.DialogInterface;
 import android.net.Uri;
 import android.os.Bundle;
-import android.text.TextUtils;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -26,34 +29,43 @@ import androidx.appcompat.app.AppCompatActivity;
 import com.google.firebase.Timestamp;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.MetadataChanges;
 import com.google.firebase.firestore.Query;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import okhttp3.Call;
-import okhttp3.Callback;
-import okhttp3.MultipartBody;
-import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
 
 public class AdminManageClearanceActivity extends AppCompatActivity {
     private static final String TAG = "AdminManageClearance";
     private LinearLayout studentsContainer;
     private ProgressBar progressBar;
+    private ProgressBar progressPermitUpload;
+    private TextView tvPermitUploadStatus;
     private TextView tvError;
+    private TextView tvStudentCount;
     private ScrollView scrollView;
     private EditText etSearch;
     private Button btnRefresh;
 
     private FirebaseFirestore db;
 
+    // prefix search on users.searchKeys (see functions/searchKeys.js)
+    private static final int SEARCH_LIMIT = 50;
+    private static final long SEARCH_DEBOUNCE_MS = 300;
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private final Runnable searchRunnable = this::loadStudents;
+    // bumped per search so a slow response cannot overwrite a newer one
+    private int searchGeneration = 0;
+
+    // whole student roster, in memory, for the counter's repeated lookups
+    private final StudentSearchIndex rosterIndex = new StudentSearchIndex();
+    private ListenerRegistration rosterReg;
+    private boolean rosterAwaitingFirst;
+
     // For picking images
     private ActivityResultLauncher<String> pickImageLauncher;
     private String editingUidForPermit;
@@ -62,7 +74,7 @@ public class AdminManageClearanceActivity extends AppCompatActivity {
     private static final String CLOUDINARY_UPLOAD_PRESET = "YOUR_UNSIGNED_UPLOAD_PRESET";
     private static final String CLOUDINARY_UPLOAD_URL = "https://api.cloudinary.com/v1_1/YOUR_CLOUD_NAME/image/upload";
 
-    private OkHttpClient httpClient = new OkHttpClient();
+    private OkHttpClient httpClient;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -71,15 +83,39 @@ public class AdminManageClearanceActivity extends AppCompatActivity {
 
         studentsContainer = findViewById(R.id.studentsContainer);
         progressBar = findViewById(R.id.progressBarManageClearance);
+        progressPermitUpload = findViewById(R.id.progressPermitUpload);
+        tvPermitUploadStatus = findViewById(R.id.tvPermitUploadStatus);
         tvError = findViewById(R.id.tvManageClearanceError);
+        tvStudentCount = findViewById(R.id.tvStudentCount);
         scrollView = findViewById(R.id.scrollManageClearance);
         etSearch = findViewById(R.id.etManageSearch);
         btnRefresh = findViewById(R.id.btnRefreshManageClearance);
 
         db = FirebaseFirestore.getInstance();
-
-        btnRefresh.setOnClickListener(v -> loadStudents());
-        findViewById(R.id.btnSearchManageClearance).setOnClickListener(v -> loadStudents());
+        httpClient = MyApp.httpClient(this);
+
+        btnRefresh.setOnClickListener(v -> {
+            AggregationService.getInstance().invalidate("users:");
+            loadStudents();
+        });
+        findViewById(R.id.btnSearchManageClearance).setOnClickListener(v -> {
+            searchHandler.removeCallbacks(searchRunnable);
+            loadStudents();
+        });
+        etSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) { }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) { }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                // search as you type, once typing pauses
+                searchHandler.removeCallbacks(searchRunnable);
+                searchHandler.postDelayed(searchRunnable, SEARCH_DEBOUNCE_MS);
+            }
+        });
 
         pickImageLauncher = registerForActivityResult(
                 new ActivityResultContracts.GetContent(),
@@ -99,20 +135,47 @@ public class AdminManageClearanceActivity extends AppCompatActivity {
         loadStudents();
     }
 
+    @Override
+    protected void onDestroy() {
+        searchHandler.removeCallbacks(searchRunnable);
+        super.onDestroy();
+    }
+
     private void loadStudents() {
+        final int generation = ++searchGeneration;
         showLoading(true);
         tvError.setVisibility(View.GONE);
-        studentsContainer.removeAllViews();
 
         String q = etSearch.getText() != null ? etSearch.getText().toString().trim() : "";
-        Query query = db.collection("users").whereEqualTo("role", "student"); // keep as your pattern
+        final List<String> tokens = SearchKeys.queryTokens(q);
+        if (!tokens.isEmpty() && rosterIndex.isReady()) {
+            showIndexedResults(q);
+            return;
+        }
+        Query students = db.collection("users").whereEqualTo("role", "student"); // keep as your pattern
+
+        // total comes from a count() aggregation, not from the size of the downloaded list
+        AggregationService.getInstance().count("users:students", students)
+                .addOnSuccessListener(n -> {
+                    tvStudentCount.setText(n + (n == 1 ? " student" : " students"));
+                    tvStudentCount.setVisibility(View.VISIBLE);
+                })
+                .addOnFailureListener(e -> Log.w(TAG, "Student count failed", e));
+
+        // only matching students are downloaded: the first word goes to the server (needs the
+        // role+searchKeys index), the other words are checked against the few docs that come back
+        Query query = tokens.isEmpty()
+                ? students.limit(SEARCH_LIMIT)
+                : students.whereArrayContains("searchKeys", tokens.get(0)).limit(SEARCH_LIMIT);
 
         query.get()
                 .addOnSuccessListener(qs -> {
+                    if (generation != searchGeneration) return;
                     showLoading(false);
+                    studentsContainer.removeAllViews();
                     List<DocumentSnapshot> docs = qs.getDocuments();
                     if (docs.isEmpty()) {
-                        tvError.setText("No students found.");
+                        tvError.setText(tokens.isEmpty() ? "No students found." : "No matching students.");
                         tvError.setVisibility(View.VISIBLE);
                         return;
                     }
@@ -123,27 +186,10 @@ public class AdminManageClearanceActivity extends AppCompatActivity {
                         String name = d.contains("displayName") ? d.getString("displayName") : d.getId();
                         String email = d.contains("email") ? d.getString("email") : "";
 
-                        if (!TextUtils.isEmpty(q) && !(name.toLowerCase().contains(q.toLowerCase()) || email.toLowerCase().contains(q.toLowerCase()))) {
-                            continue;
-                        }
+                        if (!matchesAllTokens(d, tokens)) continue;
 
                         any = true;
-                        View item = inflater.inflate(R.layout.item_student_clearance, studentsContainer, false);
-                        TextView tvName = item.findViewById(R.id.tvStudentName);
-                        TextView tvEmail = item.findViewById(R.id.tvStudentEmail);
-                        Button btnEdit = item.findViewById(R.id.btnEditClearance);
-                        Button btnUploadPermit = item.findViewById(R.id.btnUploadPermit);
-
-                        tvName.setText(name);
-                        tvEmail.setText(email);
-
-                        btnEdit.setOnClickListener(v -> openEditorForStudent(d.getId(), name));
-                        btnUploadPermit.setOnClickListener(v -> {
-                            editingUidForPermit = d.getId();
-                            pickImageLauncher.launch("image/*");
-                        });
-
-                        studentsContainer.addView(item);
+                        addStudentRow(inflater, d.getId(), name, email);
                     }
 
                     if (!any) {
@@ -152,13 +198,97 @@ public class AdminManageClearanceActivity extends AppCompatActivity {
                     }
                 })
                 .addOnFailureListener(e -> {
+                    if (generation != searchGeneration) return;
                     showLoading(false);
+                    studentsContainer.removeAllViews();
                     Log.e(TAG, "Failed to load students", e);
                     tvError.setText("Failed to load students: " + e.getMessage());
                     tvError.setVisibility(View.VISIBLE);
                 });
     }
 
+    private void addStudentRow(LayoutInflater inflater, String uid, String name, String email) {
+        View item = inflater.inflate(R.layout.item_student_clearance, studentsContainer, false);
+        TextView tvName = item.findViewById(R.id.tvStudentName);
+        TextView tvEmail = item.findViewById(R.id.tvStudentEmail);
+        Button btnEdit = item.findViewById(R.id.btnEditClearance);
+        Button btnUploadPermit = item.findViewById(R.id.btnUploadPermit);
+
+        tvName.setText(name);
+        tvEmail.setText(email);
+
+        btnEdit.setOnClickListener(v -> openEditorForStudent(uid, name));
+        btnUploadPermit.setOnClickListener(v -> {
+            editingUidForPermit = uid;
+            pickImageLauncher.launch("image/*");
+        });
+
+        studentsContainer.addView(item);
+    }
+
+    // Once the roster index is warm, searches never leave the device.
+    private void showIndexedResults(String q) {
+        showLoading(false);
+        studentsContainer.removeAllViews();
+        List<StudentSearchIndex.Student> hits = rosterIndex.search(q, SEARCH_LIMIT);
+        if (hits.isEmpty()) {
+            tvError.setText("No matching students.");
+            tvError.setVisibility(View.VISIBLE);
+            return;
+        }
+        LayoutInflater inflater = LayoutInflater.from(this);
+        for (StudentSearchIndex.Student st : hits) addStudentRow(inflater, st.uid, st.name, st.email);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        listenRoster();
+    }
+
+    @Override
+    protected void onStop() {
+        if (rosterReg != null) {
+            rosterReg.remove();
+            rosterReg = null;
+        }
+        super.onStop();
+    }
+
+    /**
+     * Keeps rosterIndex current from the students listener. The first callback comes from the
+     * local cache when there is one; after that only changed students arrive.
+     */
+    private void listenRoster() {
+        if (rosterReg != null) return;
+        rosterAwaitingFirst = true;
+        rosterReg = db.collection("users").whereEqualTo("role", "student")
+                .addSnapshotListener(MetadataChanges.EXCLUDE, (qs, e) -> {
+                    if (e != null) {
+                        // search keeps using the server query
+                        Log.w(TAG, "Roster listener failed", e);
+                        return;
+                    }
+                    if (qs == null) return;
+                    // a new registration replays the whole roster; students removed while
+                    // stopped would otherwise linger
+                    if (rosterAwaitingFirst) rosterIndex.clear();
+                    rosterAwaitingFirst = false;
+                    rosterIndex.apply(qs.getDocumentChanges());
+                });
+    }
+
+    // The server matched tokens[0]; the remaining words must be prefixes in searchKeys too.
+    private boolean matchesAllTokens(DocumentSnapshot d, List<String> tokens) {
+        if (tokens.size() <= 1) return true;
+        Object keys = d.get("searchKeys");
+        if (!(keys instanceof List)) return false;
+        for (int i = 1; i < tokens.size(); i++) {
+            if (!((List<?>) keys).contains(tokens.get(i))) return false;
+        }
+        return true;
+    }
+
     private void openEditorForStudent(String uid, String displayName) {
         showLoading(true);
         db.collection("users").document(uid).get()
@@ -307,98 +437,53 @@ public class AdminManageClearanceActivity extends AppCompatActivity {
             Toast.makeText(this, "Missing user or image", Toast.LENGTH_SHORT).show();
             return;
         }
-        showLoading(true);
-        try {
-            InputStream is = getContentResolver().openInputStream(imageUri);
-            byte[] bytes = readAllBytes(is);
-            is.close();
-
-            RequestBody fileBody = RequestBody.create(bytes, MediaType.parse("image/*"));
-            MultipartBody requestBody = new MultipartBody.Builder()
-                    .setType(MultipartBody.FORM)
-                    .addFormDataPart("file", "permit.jpg", fileBody)
-                    .addFormDataPart("upload_preset", CLOUDINARY_UPLOAD_PRESET)
-                    .build();
-
-            Request request = new Request.Builder()
-                    .url(CLOUDINARY_UPLOAD_URL)
-                    .post(requestBody)
-                    .build();
-
-            httpClient.newCall(request).enqueue(new Callback() {
-                @Override
-                public void onFailure(@NonNull Call call, @NonNull IOException e) {
-                    runOnUiThread(() -> {
-                        showLoading(false);
-                        Log.e(TAG, "Cloudinary upload failed", e);
-                        Toast.makeText(AdminManageClearanceActivity.this, "Permit upload failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                    });
-                }
-
-                @Override
-                public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
-                    String body = response.body() != null ? response.body().string() : null;
-                    if (!response.isSuccessful() || body == null) {
-                        runOnUiThread(() -> {
-                            showLoading(false);
-                            Log.e(TAG, "Upload error: " + response.code() + " body: " + body);
-                            Toast.makeText(AdminManageClearanceActivity.this, "Upload failed: " + response.code(), Toast.LENGTH_LONG).show();
-                        });
-                        return;
+        showUploadProgress(0);
+        // decode, downscale, encode and upload all happen off the main thread
+        PermitImageUploader.upload(this, httpClient, CLOUDINARY_UPLOAD_URL, CLOUDINARY_UPLOAD_PRESET, imageUri,
+                new PermitImageUploader.Listener() {
+                    @Override
+                    public void onProgress(int percent) {
+                        showUploadProgress(percent);
                     }
-                    String secureUrl = parseSecureUrlFromCloudinaryResponse(body);
-                    if (secureUrl == null) {
-                        runOnUiThread(() -> {
-                            showLoading(false);
-                            Log.e(TAG, "No secure_url in response: " + body);
-                            Toast.makeText(AdminManageClearanceActivity.this, "Upload succeeded but response invalid", Toast.LENGTH_LONG).show();
-                        });
-                        return;
+
+                    @Override
+                    public void onSuccess(String secureUrl) {
+                        Map<String,Object> update = new HashMap<>();
+                        update.put("clearance.permitUrl", secureUrl);
+                        update.put("clearance.permitReady", true);
+                        update.put("clearance.updatedAt", Timestamp.now());
+
+                        db.collection("users").document(uid).update(update)
+                                .addOnSuccessListener(aVoid -> {
+                                    hideUploadProgress();
+                                    Toast.makeText(AdminManageClearanceActivity.this, "Permit uploaded & saved.", Toast.LENGTH_SHORT).show();
+                                })
+                                .addOnFailureListener(e -> {
+                                    hideUploadProgress();
+                                    Log.e(TAG, "Failed to save permit URL to Firestore", e);
+                                    Toast.makeText(AdminManageClearanceActivity.this, "Upload OK but saving failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                                });
                     }
 
-                    Map<String,Object> update = new HashMap<>();
-                    update.put("clearance.permitUrl", secureUrl);
-                    update.put("clearance.permitReady", true);
-                    update.put("clearance.updatedAt", Timestamp.now());
-
-                    db.collection("users").document(uid).update(update)
-                            .addOnSuccessListener(aVoid -> runOnUiThread(() -> {
-                                showLoading(false);
-                                Toast.makeText(AdminManageClearanceActivity.this, "Permit uploaded & saved.", Toast.LENGTH_SHORT).show();
-                            }))
-                            .addOnFailureListener(e -> runOnUiThread(() -> {
-                                showLoading(false);
-                                Log.e(TAG, "Failed to save permit URL to Firestore", e);
-                                Toast.makeText(AdminManageClearanceActivity.this, "Upload OK but saving failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                            }));
-                }
-            });
-        } catch (Exception ex) {
-            showLoading(false);
-            Log.e(TAG, "Failed to read image", ex);
-            Toast.makeText(this, "Failed to read image: " + ex.getMessage(), Toast.LENGTH_LONG).show();
-        }
+                    @Override
+                    public void onError(Exception e) {
+                        hideUploadProgress();
+                        Log.e(TAG, "Permit upload failed", e);
+                        Toast.makeText(AdminManageClearanceActivity.this, "Permit upload failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                    }
+                });
     }
 
-    // crude extraction - use proper JSON parsing if you like (Gson)
-    private String parseSecureUrlFromCloudinaryResponse(String json) {
-        String key = "\"secure_url\":\"";
-        int idx = json.indexOf(key);
-        if (idx < 0) return null;
-        int start = idx + key.length();
-        int end = json.indexOf('"', start);
-        if (end < 0) return null;
-        return json.substring(start, end).replace("\\/", "/");
+    private void showUploadProgress(int percent) {
+        progressPermitUpload.setVisibility(View.VISIBLE);
+        progressPermitUpload.setProgress(percent);
+        tvPermitUploadStatus.setVisibility(View.VISIBLE);
+        tvPermitUploadStatus.setText(percent == 0 ? "Preparing permit image..." : "Uploading permit " + percent + "%");
     }
 
-    private byte[] readAllBytes(InputStream is) throws IOException {
-        java.io.ByteArrayOutputStream buffer = new java.io.ByteArrayOutputStream();
-        int nRead;
-        byte[] data = new byte[16384];
-        while ((nRead = is.read(data, 0, data.length)) != -1) {
-            buffer.write(data, 0, nRead);
-        }
-        return buffer.toByteArray();
+    private void hideUploadProgress() {
+        progressPermitUpload.setVisibility(View.GONE);
+        tvPermitUploadStatus.setVisibility(View.GONE);
     }
 
     private void showLoading(boolean loading) {
@@ -0,0 +1,103 @@
+package com.example.sjpiicdapp;
+
+import android.os.SystemClock;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.AggregateField;
+import com.google.firebase.firestore.AggregateQuery;
+import com.google.firebase.firestore.AggregateQuerySnapshot;
+import com.google.firebase.firestore.AggregateSource;
+import com.google.firebase.firestore.Query;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Server-side count()/sum() aggregations with a short in-memory TTL cache.
+ *
+ * An aggregation is billed as one read per 1000 index entries and returns a single number,
+ * instead of downloading every matching document. Results are cached per key for ttlMs;
+ * concurrent requests for the same key share one query.
+ */
+public class AggregationService {
+    public static final long DEFAULT_TTL_MS = 30 * 1000L;
+
+    private static AggregationService instance;
+
+    private static class Entry {
+        final String key;
+        final long value;
+        final long expiresAt;
+
+        Entry(String key, long value, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long ttlMs;
+    private final Map<String, Entry> cache = new HashMap<>();
+    private final Map<String, Task<Long>> inFlight = new HashMap<>();
+
+    public AggregationService(long ttlMs) {
+        this.ttlMs = ttlMs;
+    }
+
+    public static synchronized AggregationService getInstance() {
+        if (instance == null) instance = new AggregationService(DEFAULT_TTL_MS);
+        return instance;
+    }
+
+    /** Number of documents matching {@code query}. */
+    public Task<Long> count(String key, Query query) {
+        return cached(key, "count:" + key, query.count(), snap -> snap.getCount());
+    }
+
+    /** Sum of a numeric field over the documents matching {@code query}; missing values count as 0. */
+    public Task<Long> sum(String key, Query query, String field) {
+        AggregateField.SumAggregateField sum = AggregateField.sum(field);
+        return cached(key, "sum:" + field + ":" + key, query.aggregate(sum), snap -> {
+            Long v = snap.getLong(sum);
+            return v != null ? v : 0L;
+        });
+    }
+
+    /** Drops every cached result whose key starts with {@code prefix} (e.g. after a write). */
+    public synchronized void invalidate(String prefix) {
+        Iterator<Entry> it = cache.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().key.startsWith(prefix)) it.remove();
+        }
+    }
+
+    private interface Extract {
+        long from(AggregateQuerySnapshot snap);
+    }
+
+    private synchronized Task<Long> cached(String key, String cacheKey, AggregateQuery aggregate, Extract extract) {
+        long now = SystemClock.elapsedRealtime();
+        Entry hit = cache.get(cacheKey);
+        if (hit != null && hit.expiresAt > now) return Tasks.forResult(hit.value);
+
+        Task<Long> pending = inFlight.get(cacheKey);
+        if (pending != null) return pending;
+
+        Task<Long> task = aggregate.get(AggregateSource.SERVER).continueWith(t -> {
+            if (!t.isSuccessful()) throw t.getException();
+            long value = extract.from(t.getResult());
+            synchronized (AggregationService.this) {
+                cache.put(cacheKey, new Entry(key, value, SystemClock.elapsedRealtime() + ttlMs));
+            }
+            return value;
+        }).addOnCompleteListener(t -> {
+            synchronized (AggregationService.this) {
+                inFlight.remove(cacheKey);
+            }
+        });
+        inFlight.put(cacheKey, task);
+        return task;
+    }
+}
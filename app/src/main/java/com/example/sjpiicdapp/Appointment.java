@@ -0,0 +1,153 @@
+package com.example.sjpiicdapp;
+
+import androidx.annotation.Nullable;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Immutable appointment as shown in MyAppointmentsActivity. Parsed once per snapshot; the
+ * display strings are built here so binding a row is only setText calls, and rows do not
+ * keep the DocumentSnapshot alive.
+ */
+public final class Appointment {
+
+    public enum Status {
+        PENDING, APPROVED, PAID, REJECTED, CANCELLED, UNKNOWN;
+
+        /** Shared row text, so known statuses cost no string per appointment. */
+        final String text = "Status: " + name();
+
+        static Status parse(@Nullable String raw) {
+            if (raw == null) return UNKNOWN;
+            for (Status s : values()) {
+                if (s.name().equalsIgnoreCase(raw)) return s;
+            }
+            return UNKNOWN;
+        }
+    }
+
+    public enum Payment {
+        PAY_AT_SCHOOL("Pay at School (Cashier)"),
+        E_WALLET("E-Wallet / Bank Transfer"),
+        OTHER(null);
+
+        final String label;
+
+        Payment(String label) {
+            this.label = label;
+        }
+
+        static Payment parse(@Nullable String raw) {
+            // missing field = the default payment method at booking time
+            if (raw == null) return PAY_AT_SCHOOL;
+            for (Payment p : values()) {
+                if (p != OTHER && p.name().equals(raw)) return p;
+            }
+            return OTHER;
+        }
+    }
+
+    public final String id;
+    @Nullable
+    public final String date;
+    @Nullable
+    public final String window;
+    public final Status status;
+    public final Payment payment;
+    /** Booking still waiting in PendingBookingStore (not on the server yet). */
+    public final boolean pending;
+    /** createdAt in epoch ms (queued time for pending rows); 0 when unknown. */
+    public final long createdAtMs;
+
+    public final String dateWindowText;
+    public final String statusText;
+    public final String paymentText;
+
+    private Appointment(String id, @Nullable String date, @Nullable String window, Status status,
+                        String statusText, Payment payment, String paymentLabel, boolean pending, long createdAtMs) {
+        this.id = id;
+        this.date = date;
+        this.window = window;
+        this.status = status;
+        this.payment = payment;
+        this.pending = pending;
+        this.createdAtMs = createdAtMs;
+        this.dateWindowText = date != null && !date.isEmpty()
+                ? date + " - " + (window != null ? window : "")
+                : "No appointment date set";
+        this.statusText = statusText;
+        this.paymentText = paymentLabel;
+    }
+
+    public static Appointment from(DocumentSnapshot doc) {
+        return parse(doc.getId(), doc.getString("date"), doc.getString("window"),
+                doc.getString("status"), doc.getString("paymentMethod"), createdAtMs(doc.get("createdAt")));
+    }
+
+    static Appointment parse(String id, @Nullable String date, @Nullable String window,
+                             @Nullable String rawStatus, @Nullable String rawPayment, long createdAtMs) {
+        Status status = Status.parse(rawStatus);
+        Payment payment = Payment.parse(rawPayment);
+        return new Appointment(id, date, window, status, statusText(status, rawStatus),
+                payment, paymentLabel(payment, rawPayment), false, createdAtMs);
+    }
+
+    public static Appointment fromPending(PendingBookingStore.Entry entry) {
+        boolean failed = PendingBookingStore.STATE_FAILED.equals(entry.state);
+        return new Appointment(entry.requestId, entry.date, entry.window, Status.PENDING,
+                failed ? "Status: Not booked (" + entry.error + ")" : "Status: Pending sync",
+                Payment.PAY_AT_SCHOOL, Payment.PAY_AT_SCHOOL.label, true, entry.createdAtMs);
+    }
+
+    // client bookings store a Timestamp, the functions an ISO-8601 string (getCurrentTimestamp)
+    static long createdAtMs(@Nullable Object raw) {
+        if (raw instanceof Timestamp) return ((Timestamp) raw).toDate().getTime();
+        if (raw instanceof String) {
+            SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+            iso.setTimeZone(TimeZone.getTimeZone("UTC"));
+            try {
+                return iso.parse((String) raw).getTime();
+            } catch (ParseException e) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+
+    private static String statusText(Status status, @Nullable String raw) {
+        if (status != Status.UNKNOWN) return status.text;
+        return "Status: " + (raw != null ? raw : "Unknown");
+    }
+
+    private static String paymentLabel(Payment payment, @Nullable String raw) {
+        if (payment != Payment.OTHER) return payment.label;
+        // fallback: show the raw code but make it nicer
+        return raw.replace('_', ' ').toUpperCase(Locale.US);
+    }
+
+    /** A booking on the server that still counts (same rule as BookingTransaction.isActive). */
+    boolean isActive() {
+        return !pending && status != Status.REJECTED && status != Status.CANCELLED && status != Status.UNKNOWN;
+    }
+
+    /** Holds its day in users/{uid}.activeDays. */
+    boolean holdsDay() {
+        return isActive() && date != null;
+    }
+
+    /** Display content only, for DiffUtil. */
+    boolean sameContent(Appointment o) {
+        return pending == o.pending
+                && status == o.status
+                && payment == o.payment
+                && dateWindowText.equals(o.dateWindowText)
+                && statusText.equals(o.statusText)
+                && paymentText.equals(o.paymentText);
+    }
+}
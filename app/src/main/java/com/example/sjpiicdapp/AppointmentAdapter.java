@@ -0,0 +1,107 @@
+package com.example.sjpiicdapp;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rows for MyAppointmentsActivity, bound from precomputed {@link Appointment} fields. Items are
+ * diffed by appointment id, so after a cancel or reschedule only the rows that actually changed
+ * are rebound. Click handlers are attached once per ViewHolder and resolve the row by adapter
+ * position.
+ */
+public class AppointmentAdapter extends ListAdapter<Appointment, AppointmentAdapter.Holder> {
+
+    public interface Listener {
+        void onEdit(Appointment appt);
+
+        void onDelete(Appointment appt);
+    }
+
+    private static final DiffUtil.ItemCallback<Appointment> DIFF = new DiffUtil.ItemCallback<Appointment>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Appointment a, @NonNull Appointment b) {
+            return a.id.equals(b.id);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Appointment a, @NonNull Appointment b) {
+            return a.sameContent(b);
+        }
+    };
+
+    private final Listener listener;
+    // doc id -> stable RecyclerView id
+    private final Map<String, Long> stableIds = new HashMap<>();
+
+    public AppointmentAdapter(Listener listener) {
+        super(DIFF);
+        this.listener = listener;
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        String id = getItem(position).id;
+        Long stable = stableIds.get(id);
+        if (stable == null) {
+            stable = (long) stableIds.size();
+            stableIds.put(id, stable);
+        }
+        return stable;
+    }
+
+    @NonNull
+    @Override
+    public Holder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View item = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_appointment, parent, false);
+        Holder h = new Holder(item);
+        h.btnEdit.setOnClickListener(v -> {
+            int pos = h.getBindingAdapterPosition();
+            if (pos != RecyclerView.NO_POSITION) listener.onEdit(getItem(pos));
+        });
+        h.btnDelete.setOnClickListener(v -> {
+            int pos = h.getBindingAdapterPosition();
+            if (pos != RecyclerView.NO_POSITION) listener.onDelete(getItem(pos));
+        });
+        return h;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull Holder h, int position) {
+        Appointment appt = getItem(position);
+        h.tvDateWindow.setText(appt.dateWindowText);
+        h.tvStatus.setText(appt.statusText);
+        h.tvPaymentMethod.setText(appt.paymentText);
+        h.itemView.setAlpha(appt.pending ? 0.6f : 1f);
+        h.btnEdit.setVisibility(appt.pending ? View.GONE : View.VISIBLE);
+        h.btnDelete.setEnabled(true);
+    }
+
+    static class Holder extends RecyclerView.ViewHolder {
+        final TextView tvDateWindow;
+        final TextView tvStatus;
+        final TextView tvPaymentMethod;
+        final ImageView btnEdit;
+        final ImageView btnDelete;
+
+        Holder(@NonNull View item) {
+            super(item);
+            tvDateWindow = item.findViewById(R.id.tvDateWindow);
+            tvStatus = item.findViewById(R.id.tvStatus);
+            tvPaymentMethod = item.findViewById(R.id.tvPaymentMethod);
+            btnEdit = item.findViewById(R.id.btnEdit);
+            btnDelete = item.findViewById(R.id.btnDelete);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.sjpiicdapp;
 
+import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -16,7 +17,12 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.MetadataChanges;
+import com.google.firebase.firestore.Query;
 
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -25,13 +31,22 @@ import java.util.TreeMap;
 public class AppointmentCapacityActivity extends AppCompatActivity {
     private static final String TAG = "AppointmentCapacity";
     private static final int DAILY_CAPACITY = 400;
+    // window of days shown: recent history plus upcoming bookings
+    private static final int DAYS_BACK = 30;
+    private static final int DAYS_AHEAD = 180;
+    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+    // aggregations are never cached by Firestore, so the last range total is kept here
+    private static final String PREFS = "capacity_summary";
 
     private LinearLayout capacityContainer;
     private ProgressBar progressBar;
     private TextView tvError;
+    private TextView tvSummary;
     private ScrollView scrollView;
     private FirebaseFirestore db;
     private Button btnRefresh;
+    private SharedPreferences summaryPrefs;
+    private ListenerRegistration rollupReg;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -42,29 +57,79 @@ public class AppointmentCapacityActivity extends AppCompatActivity {
         capacityContainer = findViewById(R.id.capacityContainer1);
         progressBar = findViewById(R.id.progressBarCapacity1);
         tvError = findViewById(R.id.tvCapacityError1);
+        tvSummary = findViewById(R.id.tvCapacitySummary1);
         scrollView = findViewById(R.id.scrollCapacity1);
         btnRefresh = findViewById(R.id.btnRefreshCapacity1);
 
         db = FirebaseFirestore.getInstance();
+        summaryPrefs = getSharedPreferences(PREFS, MODE_PRIVATE);
 
-        btnRefresh.setOnClickListener(v -> loadCapacity());
+        btnRefresh.setOnClickListener(v -> {
+            AggregationService.getInstance().invalidate("slots:");
+            loadCapacity();
+        });
+    }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
         loadCapacity();
     }
 
+    @Override
+    protected void onStop() {
+        if (rollupReg != null) {
+            rollupReg.remove();
+            rollupReg = null;
+        }
+        super.onStop();
+    }
+
     private void loadCapacity() {
+        if (rollupReg != null) rollupReg.remove();
         showLoading(true);
         tvError.setVisibility(View.GONE);
-        capacityContainer.removeAllViews();
 
-        // Query all slot documents and aggregate by "date" (yyyy-MM-dd)
-        db.collection("slots")
-                .get()
-                .addOnSuccessListener(qs -> {
+        // capacityDaily/{date} is maintained by the onSlotWritten function: one doc per day,
+        // so the screen reads only the days in range instead of every slot document.
+        Calendar c = Calendar.getInstance();
+        c.add(Calendar.DAY_OF_YEAR, -DAYS_BACK);
+        String from = DATE_FORMAT.format(c.getTime());
+        c.add(Calendar.DAY_OF_YEAR, DAYS_BACK + DAYS_AHEAD);
+        String to = DATE_FORMAT.format(c.getTime());
+
+        loadRangeTotal(from, to);
+
+        // The listener's first snapshot is the local cache (instant on a repeat visit, and what
+        // is shown offline); rollup changes then arrive as they happen. Metadata changes are
+        // included so a server answer that matches an empty cache still replaces the offline note.
+        rollupReg = db.collection("capacityDaily")
+                .whereGreaterThanOrEqualTo("date", from)
+                .whereLessThanOrEqualTo("date", to)
+                .orderBy("date")
+                .addSnapshotListener(MetadataChanges.INCLUDE, (qs, e) -> {
+                    if (e != null) {
+                        showLoading(false);
+                        Log.e(TAG, "Failed to load capacity rollups", e);
+                        tvError.setText("Failed to load capacity: " + e.getMessage());
+                        tvError.setVisibility(View.VISIBLE);
+                        return;
+                    }
+                    if (qs == null) return;
                     showLoading(false);
+                    tvError.setVisibility(View.GONE);
+                    capacityContainer.removeAllViews();
+
+                    // an empty cache answer only means this range was never loaded here (offline);
+                    // the server snapshot replaces this note
+                    if (qs.isEmpty() && qs.getMetadata().isFromCache()) {
+                        tvError.setText("No saved data for these dates; it updates when you are online.");
+                        tvError.setVisibility(View.VISIBLE);
+                        return;
+                    }
 
                     List<DocumentSnapshot> docs = qs.getDocuments();
-                    if (docs == null || docs.isEmpty()) {
+                    if (docs.isEmpty()) {
                         tvError.setText("No bookings found.");
                         tvError.setVisibility(View.VISIBLE);
                         return;
@@ -72,28 +137,9 @@ public class AppointmentCapacityActivity extends AppCompatActivity {
 
                     // TreeMap to sort by date string natural order (yyyy-MM-dd sorts lexicographically)
                     Map<String, Integer> totals = new TreeMap<>();
-
                     for (DocumentSnapshot d : docs) {
-                        if (d == null) continue;
-                        String date = d.contains("date") && d.get("date") != null ? d.getString("date") : null;
-                        if (date == null) continue;
-
-                        // try Long first; if null attempt to read Double
-                        Integer bc = 0;
-                        try {
-                            Long bcLong = d.contains("bookedCount") ? d.getLong("bookedCount") : null;
-                            if (bcLong != null) bc = bcLong.intValue();
-                            else {
-                                Double bd = d.contains("bookedCount") ? d.getDouble("bookedCount") : null;
-                                if (bd != null) bc = bd.intValue();
-                            }
-                        } catch (Exception ex) {
-                            Log.w(TAG, "Failed to parse bookedCount for doc " + d.getId(), ex);
-                        }
-
-                        Integer cur = totals.get(date);
-                        if (cur == null) cur = 0;
-                        totals.put(date, cur + bc);
+                        Long booked = d.getLong("bookedCount");
+                        totals.put(d.getId(), booked != null ? booked.intValue() : 0);
                     }
 
                     // Remove dates with zero bookings (you wanted to hide empty rows)
@@ -106,15 +152,33 @@ public class AppointmentCapacityActivity extends AppCompatActivity {
                     }
 
                     renderCapacityList(totals);
-                })
-                .addOnFailureListener(e -> {
-                    showLoading(false);
-                    Log.e(TAG, "Failed to load slots", e);
-                    tvError.setText("Failed to load capacity: " + e.getMessage());
-                    tvError.setVisibility(View.VISIBLE);
                 });
     }
 
+    // Range total straight from the slots with a sum() aggregation: one number, not every slot doc.
+    // Also covers days whose rollup has not been backfilled yet. The last total for the range is
+    // shown first (marked as saved) and replaced once the server answers.
+    private void loadRangeTotal(String from, String to) {
+        String key = from + ":" + to;
+        long saved = summaryPrefs.getLong(key, -1L);
+        if (saved >= 0) {
+            tvSummary.setText(String.format(Locale.getDefault(), "%d booked from %s to %s (saved)", saved, from, to));
+            tvSummary.setVisibility(View.VISIBLE);
+        }
+
+        Query slotsInRange = db.collection("slots")
+                .whereGreaterThanOrEqualTo("date", from)
+                .whereLessThanOrEqualTo("date", to);
+        AggregationService.getInstance().sum("slots:" + key, slotsInRange, "bookedCount")
+                .addOnSuccessListener(total -> {
+                    tvSummary.setText(String.format(Locale.getDefault(), "%d booked from %s to %s", total, from, to));
+                    tvSummary.setVisibility(View.VISIBLE);
+                    // the range moves daily, so only the current one is kept
+                    summaryPrefs.edit().clear().putLong(key, total).apply();
+                })
+                .addOnFailureListener(e -> Log.w(TAG, "Range total failed", e));
+    }
+
     private void renderCapacityList(@NonNull Map<String, Integer> totals) {
         capacityContainer.removeAllViews();
         LayoutInflater inflater = LayoutInflater.from(this);
@@ -12,9 +12,9 @@ import androidx.appcompat.app.AppCompatActivity;
 import com.google.firebase.auth.AuthResult;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseAuthException;
-import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.functions.FirebaseFunctions;
+import com.google.firebase.functions.FirebaseFunctionsException;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -46,33 +46,12 @@ public class AuthLoginActivity extends AppCompatActivity {
             }
 
             // Determine if identifier looks like email
+            StepTimer trace = new StepTimer("login");
             if (identifier.contains("@")) {
                 // treat as email
-                signInWithEmail(identifier, pw, roleWanted);
+                signInWithEmail(identifier, pw, roleWanted, null, trace);
             } else {
-                // treat as username -> use callable function
-                // Direct Firestore lookup instead of functions (usernames are public-read per your rules)
-                FirebaseFirestore.getInstance().collection("usernames").document(identifier)
-                        .get()
-                        .addOnSuccessListener(doc -> {
-                            if (!doc.exists()) {
-                                Toast.makeText(this, "Could not find that username.", Toast.LENGTH_LONG).show();
-                                return;
-                            }
-                            String email = doc.getString("email");
-                            if (email != null && !email.isEmpty()) {
-                                signInWithEmail(email, pw, roleWanted);
-                            } else {
-                                // defensive: some older username docs may not have email yet
-                                Toast.makeText(this, "Username exists but no email associated. Contact admin.", Toast.LENGTH_LONG).show();
-                            }
-                        })
-                        .addOnFailureListener(e -> {
-                            Log.e(TAG, "username lookup failed", e);
-                            Toast.makeText(this, "Error looking up username: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                        });
-
-
+                signInWithUsername(identifier, pw, roleWanted, trace);
             }
         });
 
@@ -83,53 +62,128 @@ public class AuthLoginActivity extends AppCompatActivity {
         });
     }
 
-    // helper: sign in and redirect by role
-    private void signInWithEmail(String email, String pw, String roleWanted) {
+    // Returning users: email from the local cache, so Auth is the first network call.
+    // Otherwise one getEmailForUsername round trip (the usernames collection stays server-side).
+    private void signInWithUsername(String username, String pw, String roleWanted, StepTimer trace) {
+        String cached = UsernameEmailCache.get(this, username);
+        if (cached != null) {
+            trace.mark("emailCache");
+            signInWithEmail(cached, pw, roleWanted, username, trace);
+        } else {
+            lookupEmailThenSignIn(username, pw, roleWanted, trace, null, null);
+        }
+    }
+
+    // staleEmail / signInError: set when a cached email just failed to sign in
+    private void lookupEmailThenSignIn(String username, String pw, String roleWanted, StepTimer trace,
+                                       String staleEmail, Exception signInError) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("username", UsernameEmailCache.key(username));
+        FirebaseFunctions.getInstance().getHttpsCallable("getEmailForUsername")
+                .call(payload)
+                .addOnSuccessListener(result -> {
+                    trace.mark("getEmailForUsername");
+                    Object data = result.getData();
+                    Object email = data instanceof Map ? ((Map<?, ?>) data).get("email") : null;
+                    if (email == null || email.toString().isEmpty()) {
+                        trace.finish("no-email");
+                        Toast.makeText(this, "Username exists but no email associated. Contact admin.", Toast.LENGTH_LONG).show();
+                        return;
+                    }
+                    UsernameEmailCache.put(this, username, email.toString());
+                    if (email.toString().equals(staleEmail)) {
+                        // the cached email was right, so the password was not
+                        showSignInError(signInError, trace);
+                        return;
+                    }
+                    signInWithEmail(email.toString(), pw, roleWanted, null, trace);
+                })
+                .addOnFailureListener(e -> {
+                    trace.mark("getEmailForUsername");
+                    trace.finish("lookup-error");
+                    Log.e(TAG, "username lookup failed", e);
+                    if (e instanceof FirebaseFunctionsException
+                            && ((FirebaseFunctionsException) e).getCode() == FirebaseFunctionsException.Code.NOT_FOUND) {
+                        Toast.makeText(this, "Could not find that username.", Toast.LENGTH_LONG).show();
+                    } else {
+                        Toast.makeText(this, "Error looking up username: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                    }
+                });
+    }
+
+    // helper: sign in and redirect by role. cachedFor is the username when email came from the cache.
+    private void signInWithEmail(String email, String pw, String roleWanted, String cachedFor, StepTimer trace) {
         FirebaseAuth.getInstance().signInWithEmailAndPassword(email, pw)
                 .addOnSuccessListener(authResult -> {
+                    trace.mark("signIn");
                     if (authResult == null || authResult.getUser() == null) {
+                        trace.finish("no-user");
                         Toast.makeText(this, "Sign in failed (no user)", Toast.LENGTH_LONG).show();
                         return;
                     }
-                    String uid = authResult.getUser().getUid();
-                    // read role from users/{uid}
-                    FirebaseFirestore.getInstance().collection("users").document(uid)
-                            .get()
-                            .addOnSuccessListener(doc -> {
-                                String docRole = doc.exists() ? doc.getString("role") : null;
-                                if (roleWanted != null && !roleWanted.equals(docRole)) {
-                                    FirebaseAuth.getInstance().signOut();
-                                    Toast.makeText(this, "Account does not have that role.", Toast.LENGTH_LONG).show();
-                                    return;
-                                }
-                                if ("admin".equals(docRole)) {
-                                    startActivity(new Intent(this, AdminDashboardActivity.class));
-                                } else {
-                                    startActivity(new Intent(this, DashboardActivity.class));
-                                }
-                                finish();
-                            })
-                            .addOnFailureListener(e -> {
-                                Log.e(TAG, "Failed reading user doc after sign-in", e);
-                                // fallback to student dashboard
-                                startActivity(new Intent(this, DashboardActivity.class));
-                                finish();
-                            });
+                    resolveRoleAndOpen(authResult.getUser(), roleWanted, trace);
                 })
                 .addOnFailureListener(e -> {
-                    Log.e(TAG, "signIn failed", e);
-                    Log.e(TAG, "signIn error class: " + e.getClass().getName() + " message: " + e.getMessage());
-                    if (e instanceof com.google.firebase.auth.FirebaseAuthInvalidCredentialsException) {
-                        Log.e(TAG, "Invalid credentials (check password).");
-                    }
-                    if (e instanceof com.google.firebase.auth.FirebaseAuthException) {
-                        Log.e(TAG, "auth code: " + ((com.google.firebase.auth.FirebaseAuthException)e).getErrorCode());
+                    trace.mark("signIn");
+                    if (cachedFor != null) {
+                        // the username may point at a different email now: ask the server once
+                        UsernameEmailCache.remove(this, cachedFor);
+                        lookupEmailThenSignIn(cachedFor, pw, roleWanted, trace, email, e);
+                        return;
                     }
-                    Toast.makeText(this, "Sign in failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                    showSignInError(e, trace);
                 });
 
     }
 
+    // Just signed in: the new token's claim decides, never a role cached from an earlier session
+    // (it may belong to an account whose role has since changed).
+    private void resolveRoleAndOpen(FirebaseUser user, String roleWanted, StepTimer trace) {
+        RoleResolver.Callback open = new RoleResolver.Callback() {
+            @Override
+            public void onRole(String role) {
+                trace.mark("role");
+                if (roleWanted != null && !roleWanted.equals(role)) {
+                    trace.finish("wrong-role");
+                    FirebaseAuth.getInstance().signOut();
+                    Toast.makeText(AuthLoginActivity.this, "Account does not have that role.", Toast.LENGTH_LONG).show();
+                    return;
+                }
+                trace.finish("ok");
+                if ("admin".equals(role)) {
+                    startActivity(new Intent(AuthLoginActivity.this, AdminDashboardActivity.class));
+                } else {
+                    startActivity(new Intent(AuthLoginActivity.this, DashboardActivity.class));
+                }
+                finish();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                trace.mark("role");
+                trace.finish("role-error");
+                Log.e(TAG, "Failed resolving role after sign-in", e);
+                // fallback to student dashboard
+                startActivity(new Intent(AuthLoginActivity.this, DashboardActivity.class));
+                finish();
+            }
+        };
+        RoleResolver.resolveFresh(this, user, roleWanted, open);
+    }
+
+    private void showSignInError(Exception e, StepTimer trace) {
+        trace.finish("auth-error");
+        Log.e(TAG, "signIn failed", e);
+        Log.e(TAG, "signIn error class: " + e.getClass().getName() + " message: " + e.getMessage());
+        if (e instanceof com.google.firebase.auth.FirebaseAuthInvalidCredentialsException) {
+            Log.e(TAG, "Invalid credentials (check password).");
+        }
+        if (e instanceof com.google.firebase.auth.FirebaseAuthException) {
+            Log.e(TAG, "auth code: " + ((com.google.firebase.auth.FirebaseAuthException)e).getErrorCode());
+        }
+        Toast.makeText(this, "Sign in failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
+    }
+
     // small utility: return id if R.id.name exists otherwise fallbackId
     private int getIdIfExists(String name, int fallbackId) {
         try {
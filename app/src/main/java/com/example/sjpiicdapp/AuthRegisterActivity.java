@@ -2,34 +2,40 @@ package com.example.sjpiicdapp;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
-import com.google.firebase.Timestamp;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
-import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.Transaction;
+import com.google.firebase.functions.FirebaseFunctions;
+import com.google.firebase.functions.FirebaseFunctionsException;
 
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Registration activity:
- * - Student flow: free registration, username required, reserved via Firestore transaction (collection "usernames")
- * - Admin flow: requires invite code (ADMIN_INVITE_CODE)
+ * - Student flow: free registration, username required; the registerStudent callable reserves it
+ *   (collection "usernames") and writes the profile in one transaction
+ * - Admin flow: requires an invite code, checked by the registerAdmin callable (the security
+ *   rules do not let a user give their own profile the admin role)
  *
  * After successful registration we DO NOT auto-sign-in the user; we sign them out so they must explicitly log in.
  */
 public class AuthRegisterActivity extends AppCompatActivity {
     private static final String TAG = "AuthRegisterActivity";
-    private static final String ADMIN_INVITE_CODE = "ADMIN-INVITE-2025";
+    private static final long CONFIRM_DEBOUNCE_MS = 400;
 
     private EditText etName;
     private EditText etUsername;
@@ -37,12 +43,19 @@ public class AuthRegisterActivity extends AppCompatActivity {
     private EditText etPassword;
     private EditText etInvite;
     private Button btnRegister;
+    private TextView tvUsernameStatus;
 
     private FirebaseAuth auth;
     private FirebaseFirestore db;
 
     private boolean adminFlow = false;
 
+    private UsernameAvailability availability;
+    private final Handler confirmHandler = new Handler(Looper.getMainLooper());
+    private final Runnable confirmRunnable = this::confirmUsername;
+    // username the server said is taken; registration stops before creating the account
+    private String takenUsername;
+
     @Override
     protected void onCreate(Bundle s) {
         super.onCreate(s);
@@ -54,6 +67,7 @@ public class AuthRegisterActivity extends AppCompatActivity {
         etPassword = findViewById(R.id.etPassword);
         etInvite = findViewById(R.id.etInvite);
         btnRegister = findViewById(R.id.btnRegister);
+        tvUsernameStatus = findViewById(R.id.tvUsernameStatus);
 
         auth = FirebaseAuth.getInstance();
         db = FirebaseFirestore.getInstance();
@@ -70,9 +84,90 @@ public class AuthRegisterActivity extends AppCompatActivity {
             if (etUsername != null) etUsername.setVisibility(android.view.View.VISIBLE);
         }
 
+        if (!adminFlow && etUsername != null) {
+            availability = new UsernameAvailability(this, db);
+            availability.sync(this::showUsernameStatus);
+            etUsername.addTextChangedListener(new TextWatcher() {
+                @Override
+                public void beforeTextChanged(CharSequence s, int start, int count, int after) { }
+
+                @Override
+                public void onTextChanged(CharSequence s, int start, int before, int count) { }
+
+                @Override
+                public void afterTextChanged(Editable s) {
+                    showUsernameStatus();
+                }
+            });
+        }
+
         btnRegister.setOnClickListener(v -> attemptRegister());
     }
 
+    @Override
+    protected void onDestroy() {
+        confirmHandler.removeCallbacks(confirmRunnable);
+        super.onDestroy();
+    }
+
+    // Every keystroke: answered from the local filter. Only "maybe taken" (or no filter yet)
+    // asks the server, once typing pauses.
+    private void showUsernameStatus() {
+        if (availability == null || tvUsernameStatus == null) return;
+        confirmHandler.removeCallbacks(confirmRunnable);
+        String username = UsernameAvailability.normalize(safe(etUsername));
+        if (username.isEmpty()) {
+            tvUsernameStatus.setVisibility(android.view.View.GONE);
+            return;
+        }
+        tvUsernameStatus.setVisibility(android.view.View.VISIBLE);
+        switch (availability.check(username)) {
+            case INVALID:
+                setUsernameStatus("3-30 characters: letters, numbers, . _ -", false);
+                break;
+            case RESERVED:
+                setUsernameStatus("That username is reserved", false);
+                break;
+            case FREE:
+                setUsernameStatus("Username available", true);
+                break;
+            default:
+                if (username.equals(takenUsername)) {
+                    setUsernameStatus("Username already taken", false);
+                } else {
+                    setUsernameStatus("Checking username...", true);
+                    confirmHandler.postDelayed(confirmRunnable, CONFIRM_DEBOUNCE_MS);
+                }
+        }
+    }
+
+    private void confirmUsername() {
+        final String typed = UsernameAvailability.normalize(safe(etUsername));
+        availability.confirm(typed, new UsernameAvailability.ConfirmCallback() {
+            @Override
+            public void onResult(String username, boolean available) {
+                if (!available) takenUsername = username;
+                // the user may have kept typing
+                if (!username.equals(UsernameAvailability.normalize(safe(etUsername)))) return;
+                setUsernameStatus(available ? "Username available" : "Username already taken", available);
+            }
+
+            @Override
+            public void onError(String username, Exception e) {
+                Log.w(TAG, "checkUsername failed for " + username, e);
+                // no verdict; registerStudent still rejects a taken name
+                if (username.equals(UsernameAvailability.normalize(safe(etUsername)))) {
+                    tvUsernameStatus.setVisibility(android.view.View.GONE);
+                }
+            }
+        });
+    }
+
+    private void setUsernameStatus(String text, boolean ok) {
+        tvUsernameStatus.setText(text);
+        tvUsernameStatus.setTextColor(ok ? 0xFFA5D6A7 : 0xFFEF9A9A);
+    }
+
     private void attemptRegister() {
         final String name = safe(etName);
         final String usernameRaw = safe(etUsername);
@@ -89,16 +184,18 @@ public class AuthRegisterActivity extends AppCompatActivity {
         if (TextUtils.isEmpty(email)) { toast("Email required"); return; }
         if (TextUtils.isEmpty(password) || password.length() < 6) { toast("Password required (min 6 chars)"); return; }
 
-        final String role = adminFlow ? "admin" : "student";
-
         if (adminFlow) {
-            if (!ADMIN_INVITE_CODE.equals(inviteProvided)) {
-                toast("Invalid admin invite code");
+            if (TextUtils.isEmpty(inviteProvided)) {
+                toast("Admin invite code required");
                 return;
             }
         }
 
         final String username = usernameRaw == null ? "" : usernameRaw.trim().toLowerCase();
+        if (!adminFlow && username.equals(takenUsername)) {
+            toast("Username already taken");
+            return;
+        }
 
         btnRegister.setEnabled(false);
         btnRegister.setText("Registering...");
@@ -107,19 +204,17 @@ public class AuthRegisterActivity extends AppCompatActivity {
         auth.createUserWithEmailAndPassword(email, password)
                 .addOnSuccessListener(result -> {
                     if (result == null || result.getUser() == null) {
-                        handleFailureCleanup(null, username, new Exception("Auth creation failed (no user)"));
+                        handleFailureCleanup(null, new Exception("Auth creation failed (no user)"));
                         return;
                     }
                     final String uid = result.getUser().getUid();
                     Log.i(TAG, "Auth created uid=" + uid);
 
-                    // If student and username required -> reserve username with Firestore transaction
-                    if (!adminFlow && !TextUtils.isEmpty(username)) {
-                        reserveUsernameTx(username, uid, email, () -> writeUserDocAndFinish(uid, name, email, role, username),
-                                e -> handleFailureCleanup(uid, username, e));
+                    // Students: one registerStudent call reserves the username and writes the profile atomically
+                    if (adminFlow) {
+                        registerAdmin(uid, name, email, inviteProvided);
                     } else {
-                        // admin or no username: just write user doc
-                        writeUserDocAndFinish(uid, name, email, role, TextUtils.isEmpty(username) ? null : username);
+                        registerStudent(uid, name, email, username);
                     }
                 })
                 .addOnFailureListener(e -> {
@@ -132,81 +227,77 @@ public class AuthRegisterActivity extends AppCompatActivity {
                 });
     }
 
-    // Reserve username using a transaction on collection "usernames"
-// Document id = username. If it exists -> fail. Otherwise set { uid, email, createdAt }.
-    private void reserveUsernameTx(final String username, final String uid, final String email, final Runnable onSuccess, final com.google.android.gms.tasks.OnFailureListener onFailure) {
-        final String docId = username;
-        final com.google.firebase.firestore.DocumentReference ref = db.collection("usernames").document(docId);
+    // Server side, one transaction: usernames/{username} + users/{uid} (with activeAppointments)
+    // and the role claim. Nothing is left behind on failure, so only the auth user needs cleanup.
+    private void registerStudent(final String uid, final String name, final String email, final String username) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("name", name);
+        payload.put("username", username);
 
-        db.runTransaction((Transaction.Function<Void>) transaction -> {
-            DocumentSnapshot snap = transaction.get(ref);
-            if (snap.exists()) {
-                throw new RuntimeException("USERNAME_TAKEN");
-            }
-            Map<String, Object> payload = new HashMap<>();
-            payload.put("uid", uid);
-            payload.put("email", email);        // <- new: store email so clients can look it up
-            payload.put("createdAt", Timestamp.now());
-            transaction.set(ref, payload);
-            return null;
-        }).addOnSuccessListener(aVoid -> {
-            Log.i(TAG, "reserveUsernameTx success for " + username);
-            onSuccess.run();
-        }).addOnFailureListener(e -> {
-            Log.w(TAG, "reserveUsernameTx failed for " + username, e);
-            onFailure.onFailure(e instanceof Exception ? (Exception) e : new Exception(e));
-        });
+        final StepTimer trace = new StepTimer("registerStudent");
+        FirebaseFunctions.getInstance().getHttpsCallable("registerStudent")
+                .call(payload)
+                .addOnSuccessListener(result -> {
+                    trace.finish("ok");
+                    Log.i(TAG, "registerStudent success for " + username);
+                    finishRegistration("student", email, username);
+                })
+                .addOnFailureListener(e -> {
+                    trace.finish("error");
+                    Log.w(TAG, "registerStudent failed for " + username, e);
+                    if (e instanceof FirebaseFunctionsException
+                            && ((FirebaseFunctionsException) e).getCode() == FirebaseFunctionsException.Code.ALREADY_EXISTS) {
+                        takenUsername = username;
+                        handleFailureCleanup(uid, new Exception("Username already taken"));
+                    } else {
+                        handleFailureCleanup(uid, e);
+                    }
+                });
     }
 
+    // Server side: checks the invite code, writes users/{uid} with role admin and sets the claim.
+    private void registerAdmin(final String uid, final String name, final String email, final String inviteCode) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("name", name);
+        payload.put("inviteCode", inviteCode);
 
-    // Release username - used on cleanup (best-effort)
-    private void releaseUsername(String username) {
-        if (TextUtils.isEmpty(username)) return;
-        db.collection("usernames").document(username)
-                .delete()
-                .addOnSuccessListener(aVoid -> Log.i(TAG, "Released username " + username))
-                .addOnFailureListener(e -> Log.w(TAG, "Failed to release username " + username, e));
-    }
-
-    // Write user profile doc, then sign out so user must explicitly log in
-    // Write user profile doc, then sign out so user must explicitly log in
-    private void writeUserDocAndFinish(final String uid, final String name, final String email, final String role, final String username) {
-        Map<String, Object> u = new HashMap<>();
-        u.put("uid", uid); // helpful to store uid as well
-        u.put("name", name);
-        u.put("email", email);
-        u.put("role", role);
-        if (!TextUtils.isEmpty(username)) u.put("username", username);
-// NEW: initialize activeAppointments to 0 for new users
-        u.put("activeAppointments", 0);
-        u.put("createdAt", Timestamp.now());
-
-
-        // <-- FIXED: write to "users" collection, NOT "usernames"
-        db.collection("users").document(uid)
-                .set(u)
-                .addOnSuccessListener(aVoid -> {
-                    // sign out (newly created user is signed in by createUserWithEmailAndPassword)
-                    auth.signOut();
-                    btnRegister.setEnabled(true);
-                    btnRegister.setText("Create Account");
-                    toast("Account created. Please sign in.");
-
-                    // Redirect to login screen for that role
-                    Intent i = new Intent(AuthRegisterActivity.this, AuthLoginActivity.class);
-                    i.putExtra("role", role);
-                    i.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_NEW_TASK);
-                    startActivity(i);
-                    finish();
+        final StepTimer trace = new StepTimer("registerAdmin");
+        FirebaseFunctions.getInstance().getHttpsCallable("registerAdmin")
+                .call(payload)
+                .addOnSuccessListener(result -> {
+                    trace.finish("ok");
+                    Log.i(TAG, "registerAdmin success for uid=" + uid);
+                    finishRegistration("admin", email, null);
                 })
                 .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to write user doc for uid=" + uid, e);
-                    // cleanup: release username (if created) and attempt to delete auth user
-                    releaseUsername(username);
-                    attemptDeleteAuthUser(uid, e);
+                    trace.finish("error");
+                    Log.w(TAG, "registerAdmin failed for uid=" + uid, e);
+                    if (e instanceof FirebaseFunctionsException
+                            && ((FirebaseFunctionsException) e).getCode() == FirebaseFunctionsException.Code.PERMISSION_DENIED) {
+                        handleFailureCleanup(uid, new Exception("Invalid admin invite code"));
+                    } else {
+                        handleFailureCleanup(uid, e);
+                    }
                 });
     }
 
+    private void finishRegistration(final String role, final String email, final String username) {
+        // the login right after this can skip the username lookup
+        if (!TextUtils.isEmpty(username)) UsernameEmailCache.put(this, username, email);
+        // sign out (newly created user is signed in by createUserWithEmailAndPassword)
+        auth.signOut();
+        btnRegister.setEnabled(true);
+        btnRegister.setText("Create Account");
+        toast("Account created. Please sign in.");
+
+        // Redirect to login screen for that role
+        Intent i = new Intent(AuthRegisterActivity.this, AuthLoginActivity.class);
+        i.putExtra("role", role);
+        i.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_NEW_TASK);
+        startActivity(i);
+        finish();
+    }
+
 
     // Attempt to delete the created auth user (must be signed in as that user)
     private void attemptDeleteAuthUser(final String uid, final Exception original) {
@@ -235,10 +326,7 @@ public class AuthRegisterActivity extends AppCompatActivity {
     }
 
     // general cleanup wrapper used earlier
-    private void handleFailureCleanup(final String uidToDelete, final String usernameToRelease, final Exception original) {
-        if (!TextUtils.isEmpty(usernameToRelease)) {
-            releaseUsername(usernameToRelease);
-        }
+    private void handleFailureCleanup(final String uidToDelete, final Exception original) {
         if (!TextUtils.isEmpty(uidToDelete)) {
             attemptDeleteAuthUser(uidToDelete, original);
         } else {
@@ -3,8 +3,9 @@ package com.example.sjpiicdapp;
 import android.app.DatePickerDialog;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
-import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.DatePicker;
 import android.widget.Spinner;
@@ -16,17 +17,23 @@ import androidx.appcompat.app.AppCompatActivity;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
 import com.google.firebase.functions.FirebaseFunctions;
+import com.google.firebase.functions.FirebaseFunctionsException;
 import com.google.firebase.functions.HttpsCallableResult;
 
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
-import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 
 public class BookingActivity extends AppCompatActivity {
     private static final String TAG = "BookingActivity";
+    static final String[] TIME_WINDOWS = {"09:00-10:00", "10:00-11:00", "11:00-12:00", "13:00-14:00", "14:00-15:00"};
+    private static final long TOKEN_REFRESH_MARGIN_MS = 5 * 60 * 1000L;
+    private static final long QUEUE_POLL_MIN_MS = 1000L;
+    private static final long QUEUE_POLL_MAX_MS = 5000L;
 
     private TextView tvWelcomeBooking;
     private Button btnPickDate;
@@ -40,6 +47,19 @@ public class BookingActivity extends AppCompatActivity {
     private String selectedDate;
     private String selectedWindow;
 
+    // live seats-left per window for the picked date (a few dates cached with their listeners)
+    private SlotAvailabilityCache availability;
+    private WindowAvailabilityAdapter windowAdapter;
+
+    // waiting room: config/bookingQueue.enabled turns it on during booking surges
+    private boolean queueEnabled = false;
+    private ListenerRegistration queueConfigRegistration;
+
+    // config/booking.strategy picks the booking path (see BookingStrategies)
+    private String configuredStrategy = ClientTransactionBookingStrategy.NAME;
+    private ListenerRegistration strategyConfigRegistration;
+    private final Handler queueHandler = new Handler(Looper.getMainLooper());
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -74,18 +94,63 @@ public class BookingActivity extends AppCompatActivity {
         tvWelcomeBooking.setText("Welcome, " + (nameOrEmail != null ? nameOrEmail : "Student"));
 
         loadWindows();
+        watchBookingConfig();
 
         btnPickDate.setOnClickListener(v -> showDatePicker());
         btnConfirm.setOnClickListener(v -> attemptBooking());
     }
 
     private void loadWindows() {
-        ArrayAdapter<String> adapter = new ArrayAdapter<>(
-                this,
-                android.R.layout.simple_spinner_item,
-                new String[]{"09:00-10:00", "10:00-11:00", "11:00-12:00", "13:00-14:00", "14:00-15:00"});
-        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-        spinnerWindows.setAdapter(adapter);
+        windowAdapter = new WindowAvailabilityAdapter(this, TIME_WINDOWS);
+        spinnerWindows.setAdapter(windowAdapter);
+        availability = new SlotAvailabilityCache(db, 5);
+    }
+
+    private void watchAvailability(String date) {
+        windowAdapter.setAvailability(null);
+        availability.watch(date, (d, remaining) -> {
+            if (!d.equals(selectedDate)) return;
+            windowAdapter.setAvailability(remaining);
+            // move off a window that just filled up
+            int pos = spinnerWindows.getSelectedItemPosition();
+            if (pos >= 0 && !windowAdapter.isEnabled(pos)) {
+                for (int i = 0; i < windowAdapter.getCount(); i++) {
+                    if (windowAdapter.isEnabled(i)) {
+                        spinnerWindows.setSelection(i);
+                        break;
+                    }
+                }
+            }
+        });
+    }
+
+    private void watchBookingConfig() {
+        queueConfigRegistration = db.collection("config").document("bookingQueue")
+                .addSnapshotListener((snap, e) -> {
+                    if (e != null) {
+                        Log.w(TAG, "bookingQueue config listener failed", e);
+                        return;
+                    }
+                    queueEnabled = snap != null && Boolean.TRUE.equals(snap.getBoolean("enabled"));
+                });
+        strategyConfigRegistration = db.collection("config").document("booking")
+                .addSnapshotListener((snap, e) -> {
+                    if (e != null) {
+                        Log.w(TAG, "booking config listener failed", e);
+                        return;
+                    }
+                    String strategy = snap != null ? snap.getString("strategy") : null;
+                    configuredStrategy = strategy != null ? strategy : ClientTransactionBookingStrategy.NAME;
+                });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (availability != null) availability.clear();
+        if (queueConfigRegistration != null) queueConfigRegistration.remove();
+        if (strategyConfigRegistration != null) strategyConfigRegistration.remove();
+        queueHandler.removeCallbacksAndMessages(null);
     }
 
     private void showDatePicker() {
@@ -97,6 +162,7 @@ public class BookingActivity extends AppCompatActivity {
                     SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
                     selectedDate = sdf.format(chosen.getTime());
                     btnPickDate.setText(selectedDate);
+                    watchAvailability(selectedDate);
                 },
                 c.get(Calendar.YEAR), c.get(Calendar.MONTH), c.get(Calendar.DAY_OF_MONTH));
         dp.show();
@@ -116,6 +182,11 @@ public class BookingActivity extends AppCompatActivity {
             return;
         }
 
+        if (windowAdapter.isFull(selectedWindow)) {
+            Toast.makeText(this, "Selected slot is full.", Toast.LENGTH_LONG).show();
+            return;
+        }
+
         FirebaseUser currentUser = auth.getCurrentUser();
         if (currentUser == null) {
             Toast.makeText(this, "You must sign in before booking", Toast.LENGTH_LONG).show();
@@ -123,209 +194,96 @@ public class BookingActivity extends AppCompatActivity {
             finish();
             return;
         }
-        final String uid = currentUser.getUid();
 
-        // Disable UI while checking
+        // Disable UI while booking
         btnConfirm.setEnabled(false);
-        btnConfirm.setText("Checking...");
-
-        // Refresh the auth token before proceeding
-        currentUser.getIdToken(true)
-                .addOnSuccessListener(getTokenResult -> {
-                    Log.i(TAG, "Token refreshed successfully");
-                    // Now proceed with duplicate check
-                    performDuplicateCheck(uid);
-                })
-                .addOnFailureListener(e -> {
-                    btnConfirm.setEnabled(true);
-                    btnConfirm.setText("Confirm Booking");
-                    Log.e(TAG, "Failed to refresh token", e);
-                    Toast.makeText(BookingActivity.this, "Authentication error. Please sign in again.", Toast.LENGTH_LONG).show();
-
-                    // Sign out and redirect to login
-                    auth.signOut();
-                    startActivity(new Intent(this, AuthLoginActivity.class));
-                    finish();
-                });
+        if (queueEnabled) {
+            btnConfirm.setText("Joining queue...");
+            waitForAdmission(() -> startBooking(currentUser));
+        } else {
+            startBooking(currentUser);
+        }
     }
 
-    private void performDuplicateCheck(String uid) {
-        // Pre-flight duplicate check
-        db.collection("appointments")
-                .whereEqualTo("userId", uid)
-                .whereEqualTo("date", selectedDate)
-                .get()
-                .addOnSuccessListener(querySnapshot -> {
-                    boolean foundNonRejected = false;
-                    boolean foundSameSlotNonRejected = false;
-
-                    for (com.google.firebase.firestore.DocumentSnapshot doc : querySnapshot.getDocuments()) {
-                        String status = doc.contains("status") ? doc.getString("status") : null;
-                        String window = doc.contains("window") ? doc.getString("window") : null;
-
-                        boolean isRejected = "REJECTED".equalsIgnoreCase(status);
-
-                        if (!isRejected) {
-                            foundNonRejected = true;
-                        }
-
-                        if (!isRejected && window != null && window.equals(selectedWindow)) {
-                            foundSameSlotNonRejected = true;
-                        }
-                    }
-
-                    if (foundSameSlotNonRejected) {
-                        btnConfirm.setEnabled(true);
-                        btnConfirm.setText("Confirm Booking");
-                        Toast.makeText(this, "You already have an appointment for this exact time slot.", Toast.LENGTH_LONG).show();
-                        return;
-                    }
-
-                    if (foundNonRejected) {
-                        btnConfirm.setEnabled(true);
-                        btnConfirm.setText("Confirm Booking");
-                        Toast.makeText(this, "You already have an appointment on " + selectedDate + ". Please reschedule or choose another date.", Toast.LENGTH_LONG).show();
+    // Booking-rush waiting room: poll joinBookingQueue until our ticket is admitted.
+    // The button shows our place in line instead of spinning on a contended transaction.
+    private void waitForAdmission(Runnable onAdmitted) {
+        functions.getHttpsCallable("joinBookingQueue")
+                .call()
+                .addOnSuccessListener((HttpsCallableResult result) -> {
+                    if (isFinishing()) return;
+                    Map<?, ?> status = result.getData() instanceof Map ? (Map<?, ?>) result.getData() : null;
+                    if (status == null || Boolean.TRUE.equals(status.get("admitted"))) {
+                        onAdmitted.run();
                         return;
                     }
-
-                    // No conflicting appointment found - call backend function
-                    callCreateAppointmentViaTransaction(selectedDate, selectedWindow);
+                    long position = status.get("position") instanceof Number ? ((Number) status.get("position")).longValue() : 0;
+                    long eta = status.get("etaSeconds") instanceof Number ? ((Number) status.get("etaSeconds")).longValue() : 1;
+                    btnConfirm.setText(String.format(Locale.getDefault(), "In queue: #%d (~%ds)", position, eta));
+                    long pollMs = Math.max(QUEUE_POLL_MIN_MS, Math.min(QUEUE_POLL_MAX_MS, eta * 1000L));
+                    queueHandler.postDelayed(() -> waitForAdmission(onAdmitted), pollMs);
                 })
                 .addOnFailureListener(e -> {
                     btnConfirm.setEnabled(true);
                     btnConfirm.setText("Confirm Booking");
-                    Log.e(TAG, "Pre-flight duplicate check failed", e);
-                    Toast.makeText(BookingActivity.this, "Failed to check existing appointments: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                    Log.e(TAG, "joinBookingQueue failed", e);
+                    Toast.makeText(this, "Could not join the booking queue: " + e.getMessage(), Toast.LENGTH_LONG).show();
                 });
     }
 
-    private void callCreateAppointment(String date, String timeWindow) {
-        Map<String, Object> payload = new HashMap<>();
-        payload.put("date", date);
-        payload.put("window", timeWindow);
+    private void startBooking(FirebaseUser currentUser) {
+        btnConfirm.setText("Booking...");
 
-        functions.getHttpsCallable("createAppointment")
-                .call(payload)
-                .addOnSuccessListener((HttpsCallableResult result) -> {
-                    String apptId = null;
-                    Object data = result.getData();
-                    if (data instanceof Map) {
-                        Object id = ((Map) data).get("appointmentId");
-                        if (id != null) apptId = id.toString();
+        // One network round trip: the duplicate / per-day checks run inside the transaction.
+        // The cached ID token is only force-refreshed when it is about to expire.
+        final StepTimer trace = new StepTimer("booking");
+        currentUser.getIdToken(false)
+                .addOnSuccessListener(tokenResult -> {
+                    long expiresInMs = tokenResult.getExpirationTimestamp() * 1000L - System.currentTimeMillis();
+                    if (expiresInMs > TOKEN_REFRESH_MARGIN_MS) {
+                        trace.mark("token");
+                        callCreateAppointmentWithStrategy(selectedDate, selectedWindow, trace, false);
+                    } else {
+                        refreshTokenThenBook(currentUser, trace);
                     }
+                })
+                .addOnFailureListener(e -> refreshTokenThenBook(currentUser, trace));
+    }
 
-                    btnConfirm.setEnabled(true);
-                    btnConfirm.setText("Confirm Booking");
-                    Toast.makeText(this, "Booked successfully! ID: " + (apptId != null ? apptId : "unknown"), Toast.LENGTH_LONG).show();
-
-                    Intent i = new Intent(this, MyAppointmentsActivity.class);
-                    if (apptId != null) i.putExtra("appointmentId", apptId);
-                    startActivity(i);
-                    finish();
+    // Forced refresh, used when the cached token is near expiry or a booking came back UNAUTHENTICATED.
+    private void refreshTokenThenBook(FirebaseUser currentUser, StepTimer trace) {
+        currentUser.getIdToken(true)
+                .addOnSuccessListener(getTokenResult -> {
+                    trace.mark("tokenRefresh");
+                    Log.i(TAG, "Token refreshed successfully");
+                    callCreateAppointmentWithStrategy(selectedDate, selectedWindow, trace, true);
                 })
                 .addOnFailureListener(e -> {
+                    trace.finish("auth-error");
                     btnConfirm.setEnabled(true);
                     btnConfirm.setText("Confirm Booking");
-                    Log.e(TAG, "createAppointment failed", e);
+                    Log.e(TAG, "Failed to refresh token", e);
+                    Toast.makeText(BookingActivity.this, "Authentication error. Please sign in again.", Toast.LENGTH_LONG).show();
 
-                    if (e instanceof com.google.firebase.functions.FirebaseFunctionsException) {
-                        com.google.firebase.functions.FirebaseFunctionsException ffe = (com.google.firebase.functions.FirebaseFunctionsException) e;
-                        Log.e(TAG, "Functions error code: " + ffe.getCode());
-                        Log.e(TAG, "Functions error message: " + ffe.getMessage());
-                        Toast.makeText(this, "Booking failed: " + ffe.getCode().name(), Toast.LENGTH_LONG).show();
-                    } else {
-                        Toast.makeText(this, "Booking failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                    }
+                    // Sign out and redirect to login
+                    auth.signOut();
+                    startActivity(new Intent(this, AuthLoginActivity.class));
+                    finish();
                 });
     }
 
-    private void callCreateAppointmentViaTransaction(String date, String timeWindow) {
-        final FirebaseFirestore fs = db;
-        final String uid = auth.getCurrentUser().getUid();
-        final String slotId = date + "_" + timeWindow;
-        final String apptId = uid + "_" + slotId;
-        final com.google.firebase.firestore.DocumentReference apptRef = fs.collection("appointments").document(apptId);
-        final com.google.firebase.firestore.DocumentReference slotRef = fs.collection("slots").document(slotId);
-        final com.google.firebase.firestore.DocumentReference userRef = fs.collection("users").document(uid);
+    private void callCreateAppointmentWithStrategy(String date, String timeWindow, StepTimer trace, boolean tokenRefreshed) {
+        final FirebaseUser currentUser = auth.getCurrentUser();
+        final String uid = currentUser.getUid();
+        final boolean consumeTicket = queueEnabled;
+        final BookingStrategy strategy = BookingStrategies.choose(this, db, functions, configuredStrategy);
 
         btnConfirm.setEnabled(false);
         btnConfirm.setText("Booking...");
 
-        fs.runTransaction((com.google.firebase.firestore.Transaction.Function<Void>) transaction -> {
-            // 1) existing appointment
-            com.google.firebase.firestore.DocumentSnapshot apptSnap = transaction.get(apptRef);
-            if (apptSnap.exists()) {
-                String existingStatus = apptSnap.contains("status") ? apptSnap.getString("status") : null;
-                if (existingStatus != null && !existingStatus.equalsIgnoreCase("REJECTED")
-                        && !existingStatus.equalsIgnoreCase("CANCELLED")) {
-                    throw new RuntimeException("ALREADY_EXISTS");
-                }
-            }
-
-            // 2) user activeAppointments
-            com.google.firebase.firestore.DocumentSnapshot userSnap = transaction.get(userRef);
-            long active = 0;
-            if (userSnap.exists() && userSnap.contains("activeAppointments")) {
-                Object o = userSnap.get("activeAppointments");
-                if (o instanceof Number) active = ((Number) o).longValue();
-            }
-            final long MAX = 5;
-            if (active >= MAX) {
-                throw new RuntimeException("USER_LIMIT");
-            }
-
-            // 3) slot check
-            com.google.firebase.firestore.DocumentSnapshot slotSnap = transaction.get(slotRef);
-            long bookedCount = 0;
-            long capacity = 400; // default
-            if (slotSnap.exists()) {
-                Object bc = slotSnap.get("bookedCount");
-                Object cap = slotSnap.get("capacity");
-                if (bc instanceof Number) bookedCount = ((Number) bc).longValue();
-                if (cap instanceof Number) capacity = ((Number) cap).longValue();
-            }
-
-            if (bookedCount >= capacity) {
-                throw new RuntimeException("SLOT_FULL");
-            }
-
-            // 4) create appointment
-            Map<String, Object> apptData = new HashMap<>();
-            apptData.put("userId", uid);
-            apptData.put("date", date);
-            apptData.put("window", timeWindow);
-            apptData.put("status", "PENDING");
-            apptData.put("paymentMethod", "PAY_AT_SCHOOL");
-            apptData.put("createdAt", com.google.firebase.Timestamp.now());
-            // mark as client-created (so server triggers can still ignore if needed)
-            apptData.put("createdByClient", true);
-
-            transaction.set(apptRef, apptData);
-
-            // 5) create/update slot
-            if (!slotSnap.exists()) {
-                Map<String, Object> slotData = new HashMap<>();
-                slotData.put("date", date);
-                slotData.put("window", timeWindow);
-                slotData.put("capacity", capacity);
-                slotData.put("bookedCount", 1);
-                slotData.put("createdAt", com.google.firebase.Timestamp.now());
-                transaction.set(slotRef, slotData);
-            } else {
-                transaction.update(slotRef, "bookedCount", bookedCount + 1, "updatedAt", com.google.firebase.Timestamp.now());
-            }
-
-            // 6) increment user's activeAppointments
-            if (!userSnap.exists()) {
-                Map<String, Object> newUser = new HashMap<>();
-                newUser.put("activeAppointments", 1);
-                transaction.set(userRef, newUser, com.google.firebase.firestore.SetOptions.merge());
-            } else {
-                transaction.update(userRef, "activeAppointments", active + 1);
-            }
-
-            return null;
-        }).addOnSuccessListener(aVoid -> {
+        BookingStrategies.book(strategy, uid, date, timeWindow, consumeTicket).addOnSuccessListener(apptId -> {
+            trace.mark(strategy.name());
+            trace.finish("ok");
             btnConfirm.setEnabled(true);
             btnConfirm.setText("Confirm Booking");
             Toast.makeText(this, "Booked successfully!", Toast.LENGTH_LONG).show();
@@ -333,12 +291,32 @@ public class BookingActivity extends AppCompatActivity {
             startActivity(i);
             finish();
         }).addOnFailureListener(e -> {
+            trace.mark(strategy.name());
+            if (!tokenRefreshed && isUnauthenticated(e)) {
+                // stale credentials: refresh once and retry
+                refreshTokenThenBook(currentUser, trace);
+                return;
+            }
+            if (isOffline(e)) {
+                // offline / flaky network: hand the request to the background worker instead of
+                // making the student retry by hand
+                trace.finish("queued");
+                PendingBookingStore.Entry entry = new PendingBookingStore(this).add(uid, date, timeWindow);
+                BookingSyncWorker.enqueue(this, entry);
+                Toast.makeText(this, "You're offline. Your booking will be sent when the connection is back.", Toast.LENGTH_LONG).show();
+                startActivity(new Intent(this, MyAppointmentsActivity.class));
+                finish();
+                return;
+            }
+            trace.finish("failed");
             btnConfirm.setEnabled(true);
             btnConfirm.setText("Confirm Booking");
-            Log.e(TAG, "Transaction failed", e);
+            Log.e(TAG, "Booking failed via " + strategy.name(), e);
             String msg = e.getMessage() != null ? e.getMessage() : e.toString();
             if (msg.contains("ALREADY_EXISTS")) {
                 Toast.makeText(this, "You already have an appointment for this slot.", Toast.LENGTH_LONG).show();
+            } else if (msg.contains("SAME_DAY")) {
+                Toast.makeText(this, "You already have an appointment on " + date + ". Please reschedule or choose another date.", Toast.LENGTH_LONG).show();
             } else if (msg.contains("USER_LIMIT")) {
                 Toast.makeText(this, "You reached the maximum number of active appointments.", Toast.LENGTH_LONG).show();
             } else if (msg.contains("SLOT_FULL")) {
@@ -349,4 +327,23 @@ public class BookingActivity extends AppCompatActivity {
         });
     }
 
-}
\ No newline at end of file
+    private static boolean isOffline(Exception e) {
+        if (e instanceof FirebaseFunctionsException) {
+            FirebaseFunctionsException.Code code = ((FirebaseFunctionsException) e).getCode();
+            return code == FirebaseFunctionsException.Code.UNAVAILABLE
+                    || code == FirebaseFunctionsException.Code.DEADLINE_EXCEEDED;
+        }
+        if (!(e instanceof FirebaseFirestoreException)) return false;
+        FirebaseFirestoreException.Code code = ((FirebaseFirestoreException) e).getCode();
+        return code == FirebaseFirestoreException.Code.UNAVAILABLE
+                || code == FirebaseFirestoreException.Code.DEADLINE_EXCEEDED;
+    }
+
+    private static boolean isUnauthenticated(Exception e) {
+        if (e instanceof FirebaseFunctionsException) {
+            return ((FirebaseFunctionsException) e).getCode() == FirebaseFunctionsException.Code.UNAUTHENTICATED;
+        }
+        return e instanceof FirebaseFirestoreException
+                && ((FirebaseFirestoreException) e).getCode() == FirebaseFirestoreException.Code.UNAUTHENTICATED;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.sjpiicdapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.functions.FirebaseFunctions;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Picks the BookingStrategy and keeps per-strategy latency / failure metrics.
+ *
+ * Precedence: debug override (debug builds only, set from TransactionStatsActivity), then
+ * config/booking.strategy ("transaction" | "callable"), then the client transaction.
+ */
+public final class BookingStrategies {
+    private static final String PREFS = "booking_debug";
+    private static final String KEY_STRATEGY = "strategy";
+    public static final String AUTO = "auto";
+    private static final String[] DEBUG_CHOICES = {AUTO, ClientTransactionBookingStrategy.NAME, CallableBookingStrategy.NAME};
+
+    private static final Map<String, LatencyStats> metrics = new LinkedHashMap<>();
+
+    private BookingStrategies() {
+    }
+
+    public static BookingStrategy choose(Context context, FirebaseFirestore db, FirebaseFunctions functions,
+                                         String configured) {
+        String name = BuildConfig.DEBUG ? debugOverride(context) : AUTO;
+        if (AUTO.equals(name)) name = configured;
+        if (CallableBookingStrategy.NAME.equals(name)) return new CallableBookingStrategy(functions);
+        return new ClientTransactionBookingStrategy(db);
+    }
+
+    public static String debugOverride(Context context) {
+        return prefs(context).getString(KEY_STRATEGY, AUTO);
+    }
+
+    /** Cycles auto -> transaction -> callable and returns the new value. */
+    public static String cycleDebugOverride(Context context) {
+        String current = debugOverride(context);
+        int next = 0;
+        for (int i = 0; i < DEBUG_CHOICES.length; i++) {
+            if (DEBUG_CHOICES[i].equals(current)) next = (i + 1) % DEBUG_CHOICES.length;
+        }
+        prefs(context).edit().putString(KEY_STRATEGY, DEBUG_CHOICES[next]).apply();
+        return DEBUG_CHOICES[next];
+    }
+
+    /** Runs the booking and records its latency and outcome under the strategy's name. */
+    public static Task<String> book(BookingStrategy strategy, String uid, String date, String window,
+                                    boolean consumeTicket) {
+        final long start = SystemClock.elapsedRealtime();
+        return strategy.book(uid, date, window, consumeTicket)
+                .addOnCompleteListener(task -> record(strategy.name(),
+                        SystemClock.elapsedRealtime() - start, task.isSuccessful()));
+    }
+
+    private static synchronized void record(String name, long ms, boolean ok) {
+        LatencyStats stats = metrics.get(name);
+        if (stats == null) {
+            stats = new LatencyStats(1000);
+            metrics.put(name, stats);
+        }
+        stats.record(ms, ok);
+    }
+
+    public static synchronized String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, LatencyStats> e : metrics.entrySet()) {
+            sb.append("  ").append(e.getKey()).append("  ").append(e.getValue().summary()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public static synchronized void clear() {
+        metrics.clear();
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
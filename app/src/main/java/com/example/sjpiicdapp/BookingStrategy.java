@@ -0,0 +1,17 @@
+package com.example.sjpiicdapp;
+
+import com.google.android.gms.tasks.Task;
+
+/**
+ * One way of creating an appointment. Implementations resolve to the appointment id and
+ * fail with the same RuntimeException codes as BookingTransaction (ALREADY_EXISTS, SAME_DAY,
+ * USER_LIMIT, SLOT_FULL) so BookingActivity handles both paths identically.
+ *
+ * @see BookingStrategies for how the active strategy is picked.
+ */
+public interface BookingStrategy {
+    /** Short id used in config/booking.strategy, debug prefs and metrics. */
+    String name();
+
+    Task<String> book(String uid, String date, String window, boolean consumeTicket);
+}
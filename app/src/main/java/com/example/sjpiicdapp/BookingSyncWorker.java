@@ -0,0 +1,239 @@
+package com.example.sjpiicdapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.Source;
+import com.google.firebase.functions.FirebaseFunctions;
+import com.google.firebase.functions.FirebaseFunctionsException;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends one queued booking (PendingBookingStore) once the device is online.
+ *
+ * Runs the same transaction as BookingActivity in idempotent mode: if an earlier attempt
+ * committed but the reply was lost, the appointment already exists under the same id and
+ * the retry simply succeeds. Network errors and contention are retried with exponential
+ * backoff plus a random pause on every retry; business rejections (slot full, daily limit,
+ * ...) are final. While the booking
+ * waiting room is on, the worker joins it first and books with the ticket.
+ */
+public class BookingSyncWorker extends Worker {
+    private static final String TAG = "BookingSyncWorker";
+    public static final String WORK_TAG = "booking-sync";
+    private static final String KEY_REQUEST_ID = "requestId";
+    private static final String KEY_UID = "uid";
+    private static final String KEY_DATE = "date";
+    private static final String KEY_WINDOW = "window";
+    private static final long BACKOFF_SECONDS = 15;
+    private static final long MAX_JITTER_MS = 5000;
+    private static final int MAX_ATTEMPTS = 8;
+    /** Longer waits give the thread back and come back through WorkManager's backoff. */
+    private static final long MAX_QUEUE_WAIT_MS = 60 * 1000L;
+
+    public BookingSyncWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * One unique work per request id, so tapping Confirm twice offline still sends once. The
+     * booking travels in the input data too, so the work can restore a lost store entry.
+     */
+    public static void enqueue(Context context, PendingBookingStore.Entry entry) {
+        String requestId = entry.requestId;
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        // WorkManager's backoff has no jitter of its own; a random start delay keeps a
+        // classroom of phones regaining Wi-Fi together from retrying in lockstep
+        long jitterMs = (long) (new Random().nextDouble() * MAX_JITTER_MS);
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(BookingSyncWorker.class)
+                .setConstraints(constraints)
+                .setInitialDelay(jitterMs, TimeUnit.MILLISECONDS)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_SECONDS, TimeUnit.SECONDS)
+                .setInputData(new Data.Builder()
+                        .putString(KEY_REQUEST_ID, requestId)
+                        .putString(KEY_UID, entry.uid)
+                        .putString(KEY_DATE, entry.date)
+                        .putString(KEY_WINDOW, entry.window)
+                        .build())
+                .addTag(WORK_TAG)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork("booking-" + requestId, ExistingWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        String requestId = getInputData().getString(KEY_REQUEST_ID);
+        PendingBookingStore store = new PendingBookingStore(getApplicationContext());
+        PendingBookingStore.Entry entry = requestId != null ? store.get(requestId) : null;
+        if (entry != null && PendingBookingStore.STATE_FAILED.equals(entry.state)) {
+            return Result.success();
+        }
+        if (entry == null) {
+            // the entry only goes once the booking is confirmed or the student dismissed the
+            // queued row (which cancels this work); anything else still has to be booked
+            if (requestId == null || isStopped()) return Result.success();
+            try {
+                if (isConfirmed(FirebaseFirestore.getInstance(), requestId,
+                        getInputData().getString(KEY_DATE), getInputData().getString(KEY_WINDOW))) {
+                    return Result.success();
+                }
+            } catch (ExecutionException | java.util.concurrent.TimeoutException e) {
+                Log.w(TAG, "could not check booking " + requestId + ", will retry", e);
+                return Result.retry();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Result.retry();
+            }
+            entry = restore(store, requestId);
+            if (entry == null) {
+                Log.w(TAG, "booking " + requestId + " left the store unconfirmed and cannot be restored");
+                return Result.success();
+            }
+        }
+
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null || !user.getUid().equals(entry.uid)) {
+            store.markFailed(requestId, "SIGNED_OUT");
+            return Result.failure();
+        }
+
+        try {
+            // WorkManager's backoff is the same for every phone; a random pause before each retry
+            // keeps a classroom that failed together from coming back together
+            long pauseMs = retryJitterMs(getRunAttemptCount(), new Random().nextDouble());
+            if (pauseMs > 0) {
+                Thread.sleep(pauseMs);
+                if (isStopped()) return Result.retry();
+            }
+            FirebaseFirestore db = FirebaseFirestore.getInstance();
+            // while the waiting room is on, firestore.rules only accept a booking that uses a ticket
+            boolean consumeTicket = Boolean.TRUE.equals(Tasks.await(
+                    db.collection("config").document("bookingQueue").get(), 30, TimeUnit.SECONDS).getBoolean("enabled"));
+            if (consumeTicket && !waitForAdmission()) {
+                Log.i(TAG, "booking " + requestId + " not admitted yet, will retry");
+                return Result.retry();
+            }
+            Tasks.await(BookingTransaction.run(db,
+                    entry.uid, entry.date, entry.window, true, consumeTicket), 30, TimeUnit.SECONDS);
+            store.remove(requestId);
+            Log.i(TAG, "synced booking " + requestId + " after " + (getRunAttemptCount() + 1) + " attempt(s)");
+            return Result.success();
+        } catch (ExecutionException e) {
+            Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            if (isTransient(cause) && getRunAttemptCount() + 1 < MAX_ATTEMPTS) {
+                Log.w(TAG, "booking " + requestId + " failed, will retry", cause);
+                return Result.retry();
+            }
+            Log.e(TAG, "booking " + requestId + " rejected", cause);
+            store.markFailed(requestId, rejectionCode(cause));
+            return Result.failure();
+        } catch (java.util.concurrent.TimeoutException e) {
+            return getRunAttemptCount() + 1 < MAX_ATTEMPTS ? Result.retry() : fail(store, requestId, "TIMEOUT");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Result.retry();
+        }
+    }
+
+    /**
+     * Random pause before run attempt {@code runAttempt} (0 = first run, which already had its
+     * start delay): up to MAX_JITTER_MS on the first retry, doubling up to 8x like the backoff.
+     */
+    static long retryJitterMs(int runAttempt, double random) {
+        if (runAttempt <= 0) return 0;
+        long bound = MAX_JITTER_MS << Math.min(runAttempt - 1, 3);
+        return (long) (random * bound);
+    }
+
+    // This booking on the server (the cache may be stale): active under the request id and still
+    // on the queued date / window. A booking rescheduled away keeps the id but is not this one.
+    private static boolean isConfirmed(FirebaseFirestore db, String requestId, String date, String window)
+            throws ExecutionException, InterruptedException, java.util.concurrent.TimeoutException {
+        DocumentSnapshot snap = Tasks.await(
+                db.collection("appointments").document(requestId).get(Source.SERVER), 30, TimeUnit.SECONDS);
+        if (date == null || window == null) return BookingTransaction.isActive(snap);
+        return BookingTransaction.holdsSlot(snap, date, window);
+    }
+
+    // Re-adds the entry from the work's input data; null for work enqueued without it.
+    private PendingBookingStore.Entry restore(PendingBookingStore store, String requestId) {
+        Data input = getInputData();
+        String uid = input.getString(KEY_UID);
+        String date = input.getString(KEY_DATE);
+        String window = input.getString(KEY_WINDOW);
+        if (uid == null || date == null || window == null) return null;
+        PendingBookingStore.Entry entry = store.add(uid, date, window);
+        return requestId.equals(entry.requestId) ? entry : null;
+    }
+
+    // Joins the waiting room like BookingActivity does; waits out a short queue in place.
+    private static boolean waitForAdmission()
+            throws ExecutionException, InterruptedException, java.util.concurrent.TimeoutException {
+        Object data = Tasks.await(FirebaseFunctions.getInstance().getHttpsCallable("joinBookingQueue").call(),
+                30, TimeUnit.SECONDS).getData();
+        Map<?, ?> status = data instanceof Map ? (Map<?, ?>) data : null;
+        if (status == null || Boolean.TRUE.equals(status.get("admitted"))) return true;
+        Object admitAt = status.get("admitAtMs");
+        if (!(admitAt instanceof Number)) return false;
+        long waitMs = ((Number) admitAt).longValue() - System.currentTimeMillis();
+        if (waitMs > MAX_QUEUE_WAIT_MS) return false;
+        if (waitMs > 0) Thread.sleep(waitMs);
+        return true;
+    }
+
+    private static Result fail(PendingBookingStore store, String requestId, String code) {
+        store.markFailed(requestId, code);
+        return Result.failure();
+    }
+
+    /** Errors worth retrying: no connection, timeouts and transaction contention. */
+    public static boolean isTransient(Exception e) {
+        if (BookingTransaction.isRejection(e)) return false;
+        if (e.getCause() instanceof Exception && BookingTransaction.isRejection((Exception) e.getCause())) return false;
+        if (e instanceof FirebaseFunctionsException) {
+            // joining the waiting room
+            FirebaseFunctionsException.Code code = ((FirebaseFunctionsException) e).getCode();
+            return code == FirebaseFunctionsException.Code.UNAVAILABLE
+                    || code == FirebaseFunctionsException.Code.DEADLINE_EXCEEDED
+                    || code == FirebaseFunctionsException.Code.INTERNAL;
+        }
+        if (!(e instanceof FirebaseFirestoreException)) return false;
+        FirebaseFirestoreException.Code code = ((FirebaseFirestoreException) e).getCode();
+        return code == FirebaseFirestoreException.Code.UNAVAILABLE
+                || code == FirebaseFirestoreException.Code.DEADLINE_EXCEEDED
+                || code == FirebaseFirestoreException.Code.ABORTED;
+    }
+
+    private static String rejectionCode(Exception e) {
+        String msg = e.getMessage() != null ? e.getMessage() : "";
+        for (String code : new String[]{"ALREADY_EXISTS", "SAME_DAY", "USER_LIMIT", "SLOT_FULL"}) {
+            if (msg.contains(code)) return code;
+        }
+        return msg.isEmpty() ? e.getClass().getSimpleName() : msg;
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.sjpiicdapp;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Transaction;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The client-side booking transaction, shared by BookingActivity (interactive) and
+ * BookingSyncWorker (offline retries).
+ *
+ * Failure reasons are thrown as RuntimeException messages: ALREADY_EXISTS, SAME_DAY,
+ * USER_LIMIT and SLOT_FULL (the latter from SlotShards).
+ *
+ * The one-appointment-per-day rule reads users/{uid}.activeDays (see functions/activeDays.js).
+ * For users not yet marked activeDaysIndexed the map may miss appointments booked before it
+ * existed, so when it has no active entry for the day the transaction stops with DAY_CHECK,
+ * the day is checked with the old userId + date query, and the transaction runs once more.
+ */
+public final class BookingTransaction {
+    public static final long MAX_ACTIVE_APPOINTMENTS = 5;
+    /** Internal: the per-day rule needs the query fallback; never surfaces from run(). */
+    static final String DAY_CHECK = "DAY_CHECK";
+
+    private BookingTransaction() {
+    }
+
+    /** Appointment ids are deterministic (uid_date_window), which also makes them the idempotency key. */
+    public static String appointmentId(String uid, String date, String window) {
+        return uid + "_" + SlotShards.slotId(date, window);
+    }
+
+    /**
+     * @param idempotent when true an active appointment with the same id, date and window counts
+     *                   as success (a retry of a booking whose commit already landed) instead of
+     *                   ALREADY_EXISTS. One rescheduled away from this slot keeps the id but is
+     *                   another booking, so it is still ALREADY_EXISTS.
+     * @param consumeTicket delete the caller's waiting-room ticket (bookingTickets/{uid}).
+     */
+    public static Task<Void> run(FirebaseFirestore fs, String uid, String date, String window,
+                                 boolean idempotent, boolean consumeTicket) {
+        final String apptId = appointmentId(uid, date, window);
+        return attempt(fs, uid, date, window, idempotent, consumeTicket, false).continueWithTask(t -> {
+            if (t.isSuccessful() || !hasReason(t.getException(), DAY_CHECK)) return t;
+            return fs.collection("appointments")
+                    .whereEqualTo("userId", uid)
+                    .whereEqualTo("date", date)
+                    .get()
+                    .continueWithTask(q -> {
+                        if (!q.isSuccessful()) return Tasks.forException(q.getException());
+                        for (DocumentSnapshot d : q.getResult().getDocuments()) {
+                            if (!d.getId().equals(apptId) && isActive(d)) {
+                                return Tasks.forException(new RuntimeException("SAME_DAY"));
+                            }
+                        }
+                        return attempt(fs, uid, date, window, idempotent, consumeTicket, true);
+                    });
+        });
+    }
+
+    private static Task<Void> attempt(FirebaseFirestore fs, String uid, String date, String window,
+                                      boolean idempotent, boolean consumeTicket, boolean dayChecked) {
+        final String apptId = appointmentId(uid, date, window);
+        final DocumentReference apptRef = fs.collection("appointments").document(apptId);
+        final DocumentReference userRef = fs.collection("users").document(uid);
+
+        List<String> keys = Arrays.asList(apptRef.getPath(), userRef.getPath(),
+                "slots/" + SlotShards.slotId(date, window));
+        return TransactionProfiler.run(fs, "booking", keys, (Transaction.Function<Void>) transaction -> {
+            // 1) existing appointment for this exact slot (ids are uid_date_window -> point read)
+            DocumentSnapshot apptSnap = transaction.get(apptRef);
+            if (isActive(apptSnap)) {
+                if (idempotent && holdsSlot(apptSnap, date, window)) return null;
+                throw new RuntimeException("ALREADY_EXISTS");
+            }
+
+            // 2) user activeAppointments + one-appointment-per-day rule.
+            // users/{uid}.activeDays maps date -> appointment id, so the per-day check rides on the
+            // user read we need anyway; the referenced appointment is only read when an entry exists
+            // (it may since have been cancelled, rejected or moved to another date).
+            DocumentSnapshot userSnap = transaction.get(userRef);
+            long active = 0;
+            if (userSnap.exists() && userSnap.contains("activeAppointments")) {
+                Object o = userSnap.get("activeAppointments");
+                if (o instanceof Number) active = ((Number) o).longValue();
+            }
+            if (active >= MAX_ACTIVE_APPOINTMENTS) {
+                throw new RuntimeException("USER_LIMIT");
+            }
+            Object activeDays = userSnap.exists() ? userSnap.get("activeDays") : null;
+            Object sameDayId = activeDays instanceof Map ? ((Map<?, ?>) activeDays).get(date) : null;
+            if (sameDayId instanceof String && !sameDayId.equals(apptId)) {
+                DocumentSnapshot other = transaction.get(fs.collection("appointments").document((String) sameDayId));
+                if (isActive(other) && date.equals(other.getString("date"))) {
+                    throw new RuntimeException("SAME_DAY");
+                }
+            }
+            if (!dayChecked && !Boolean.TRUE.equals(userSnap.getBoolean("activeDaysIndexed"))) {
+                // appointments booked before the index may be missing from the map
+                throw new RuntimeException(DAY_CHECK);
+            }
+
+            // 3) claim a seat on one of the slot's counter shards (throws SLOT_FULL)
+            int shard = SlotShards.claimSeat(transaction, fs, date, window);
+
+            // 4) create appointment
+            Map<String, Object> apptData = new HashMap<>();
+            apptData.put("userId", uid);
+            apptData.put("date", date);
+            apptData.put("window", window);
+            apptData.put("status", "PENDING");
+            apptData.put("paymentMethod", "PAY_AT_SCHOOL");
+            apptData.put("createdAt", Timestamp.now());
+            // mark as client-created (so server triggers can still ignore if needed)
+            apptData.put("createdByClient", true);
+            // remember which shard holds the seat so cancel/reschedule can give it back
+            apptData.put("slotShard", shard);
+
+            transaction.set(apptRef, apptData);
+            // consume the waiting-room ticket that admitted this booking
+            if (consumeTicket) {
+                transaction.delete(fs.collection("bookingTickets").document(uid));
+            }
+
+            // 5) increment user's activeAppointments and remember the booked day
+            Map<String, Object> userUpdate = new HashMap<>();
+            userUpdate.put("activeAppointments", active + 1);
+            userUpdate.put("activeDays", Collections.singletonMap(date, apptId));
+            transaction.set(userRef, userUpdate, SetOptions.merge());
+
+            return null;
+        });
+    }
+
+    // REJECTED / CANCELLED appointments do not block a new booking
+    static boolean isActive(DocumentSnapshot appt) {
+        if (!appt.exists()) return false;
+        String status = appt.getString("status");
+        return status != null && !status.equalsIgnoreCase("REJECTED") && !status.equalsIgnoreCase("CANCELLED");
+    }
+
+    /** This very booking: active and still on the date / window its id was made from. */
+    static boolean holdsSlot(DocumentSnapshot appt, String date, String window) {
+        return isActive(appt) && date.equals(appt.getString("date")) && window.equals(appt.getString("window"));
+    }
+
+    /** Business-rule rejections; anything else (network, contention) is worth retrying. */
+    public static boolean isRejection(Exception e) {
+        String msg = e != null && e.getMessage() != null ? e.getMessage() : "";
+        return msg.contains("ALREADY_EXISTS") || msg.contains("SAME_DAY")
+                || msg.contains("USER_LIMIT") || msg.contains("SLOT_FULL");
+    }
+
+    // the SDK may wrap what the transaction function threw
+    private static boolean hasReason(Exception e, String reason) {
+        if (e == null) return false;
+        if (e.getMessage() != null && e.getMessage().contains(reason)) return true;
+        Throwable cause = e.getCause();
+        return cause != null && cause.getMessage() != null && cause.getMessage().contains(reason);
+    }
+}
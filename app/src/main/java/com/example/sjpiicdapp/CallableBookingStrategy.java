@@ -0,0 +1,64 @@
+package com.example.sjpiicdapp;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.functions.FirebaseFunctions;
+import com.google.firebase.functions.FirebaseFunctionsException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Books through the createAppointment callable: one request, the transaction runs next to
+ * Firestore. Function errors are mapped onto BookingTransaction's codes.
+ */
+public class CallableBookingStrategy implements BookingStrategy {
+    public static final String NAME = "callable";
+
+    private final FirebaseFunctions functions;
+
+    public CallableBookingStrategy(FirebaseFunctions functions) {
+        this.functions = functions;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Task<String> book(String uid, String date, String window, boolean consumeTicket) {
+        // the server consumes the waiting-room ticket itself
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("date", date);
+        payload.put("window", window);
+
+        return functions.getHttpsCallable("createAppointment")
+                .call(payload)
+                .continueWithTask(task -> {
+                    if (!task.isSuccessful()) {
+                        return Tasks.forException(mapError(task.getException()));
+                    }
+                    Object data = task.getResult().getData();
+                    Object id = data instanceof Map ? ((Map<?, ?>) data).get("appointmentId") : null;
+                    return Tasks.forResult(id != null ? id.toString() : BookingTransaction.appointmentId(uid, date, window));
+                });
+    }
+
+    private static Exception mapError(Exception e) {
+        if (!(e instanceof FirebaseFunctionsException)) return e;
+        FirebaseFunctionsException ffe = (FirebaseFunctionsException) e;
+        String msg = ffe.getMessage() != null ? ffe.getMessage() : "";
+        switch (ffe.getCode()) {
+            case ALREADY_EXISTS:
+                return new RuntimeException("ALREADY_EXISTS", e);
+            case RESOURCE_EXHAUSTED:
+                return new RuntimeException(msg.contains("slot is full") ? "SLOT_FULL" : "USER_LIMIT", e);
+            case FAILED_PRECONDITION:
+                // also used when the waiting room has not admitted the caller
+                return msg.contains("on this date") ? new RuntimeException("SAME_DAY", e) : e;
+            default:
+                return e;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.sjpiicdapp;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+/** Books with the client-side Firestore transaction (one round trip per read, plus commit). */
+public class ClientTransactionBookingStrategy implements BookingStrategy {
+    public static final String NAME = "transaction";
+
+    private final FirebaseFirestore db;
+
+    public ClientTransactionBookingStrategy(FirebaseFirestore db) {
+        this.db = db;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Task<String> book(String uid, String date, String window, boolean consumeTicket) {
+        final String apptId = BookingTransaction.appointmentId(uid, date, window);
+        return BookingTransaction.run(db, uid, date, window, false, consumeTicket)
+                .onSuccessTask(aVoid -> Tasks.forResult(apptId));
+    }
+}
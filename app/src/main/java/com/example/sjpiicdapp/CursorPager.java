@@ -0,0 +1,57 @@
+package com.example.sjpiicdapp;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.Query;
+
+import java.util.List;
+
+/**
+ * Pages through an ordered query with startAfter(lastDoc).limit(pageSize), so every page
+ * costs pageSize reads at most no matter how many documents match.
+ */
+public class CursorPager {
+    public interface Callback {
+        void onPage(CursorPager pager, List<DocumentSnapshot> page);
+
+        void onError(CursorPager pager, Exception e);
+    }
+
+    private final Query query;
+    private final int pageSize;
+    private DocumentSnapshot last;
+    private boolean loading;
+    private boolean exhausted;
+
+    public CursorPager(Query orderedQuery, int pageSize) {
+        this.query = orderedQuery;
+        this.pageSize = pageSize;
+    }
+
+    /** Starts loading the next page; false if a page is already in flight or there are no more. */
+    public boolean loadNext(Callback callback) {
+        if (loading || exhausted) return false;
+        loading = true;
+        Query page = last == null ? query.limit(pageSize) : query.startAfter(last).limit(pageSize);
+        page.get()
+                .addOnSuccessListener(qs -> {
+                    loading = false;
+                    List<DocumentSnapshot> docs = qs.getDocuments();
+                    if (!docs.isEmpty()) last = docs.get(docs.size() - 1);
+                    exhausted = docs.size() < pageSize;
+                    callback.onPage(this, docs);
+                })
+                .addOnFailureListener(e -> {
+                    loading = false;
+                    callback.onError(this, e);
+                });
+        return true;
+    }
+
+    public boolean isLoading() {
+        return loading;
+    }
+
+    public boolean isExhausted() {
+        return exhausted;
+    }
+}
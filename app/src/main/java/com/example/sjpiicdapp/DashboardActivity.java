@@ -16,6 +16,7 @@ public class DashboardActivity extends AppCompatActivity {
     protected void onCreate(Bundle s) {
         super.onCreate(s);
         setContentView(R.layout.activity_dashboard);
+        StartupTrace.firstScreen(this, "dashboard");
 
         TextView tvWelcome = findViewById(R.id.tvWelcome);
         CardView cardBook = findViewById(R.id.cardBook);
@@ -42,6 +43,8 @@ public class DashboardActivity extends AppCompatActivity {
         cardDailyCapacity.setOnClickListener(v -> startActivity(new Intent(this, AppointmentCapacityActivity.class)));
 
         btnSignOut.setOnClickListener(v -> {
+            FirebaseUser current = FirebaseAuth.getInstance().getCurrentUser();
+            if (current != null) RoleResolver.forget(this, current.getUid());
             FirebaseAuth.getInstance().signOut();
             Intent i = new Intent(this, HomeActivity.class);
             i.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
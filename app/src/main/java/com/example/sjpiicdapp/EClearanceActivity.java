@@ -1,16 +1,16 @@
 package com.example.sjpiicdapp;
 
-import android.app.DownloadManager;
-import android.content.Context;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Environment;
 import android.provider.Settings;
+import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.CheckBox;
+import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.ProgressBar;
 import android.widget.ScrollView;
@@ -25,7 +25,10 @@ import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.MetadataChanges;
 
+import java.io.File;
 import java.util.Map;
 
 public class EClearanceActivity extends AppCompatActivity {
@@ -41,6 +44,7 @@ public class EClearanceActivity extends AppCompatActivity {
 
     private FirebaseFirestore db;
     private FirebaseUser user;
+    private ListenerRegistration clearanceReg;
 
     // requirement lists (keeps order)
     private static final String[] PRELIM_REQS = {"Accounting Office"};
@@ -55,6 +59,10 @@ public class EClearanceActivity extends AppCompatActivity {
 
     // cached permit info from last loaded doc
     private String cachedPermitUrl = null;
+    private ImageView ivPermit;
+    private PermitCache permitCache;
+    // local copy of the permit currently shown; what "Save to Downloads" exports
+    private File permitFile = null;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -78,6 +86,8 @@ public class EClearanceActivity extends AppCompatActivity {
         tvFinalStatus = findViewById(R.id.tvFinalStatus);
 
         scrollView = findViewById(R.id.scrollEC);
+        ivPermit = findViewById(R.id.ivPermit);
+        permitCache = new PermitCache(this);
 
         db = FirebaseFirestore.getInstance();
         user = FirebaseAuth.getInstance().getCurrentUser();
@@ -86,7 +96,7 @@ public class EClearanceActivity extends AppCompatActivity {
         btnPrelim.setOnClickListener(v -> showTab(Tab.PRELIM));
         btnMidterm.setOnClickListener(v -> showTab(Tab.MIDTERM));
         btnFinal.setOnClickListener(v -> showTab(Tab.FINAL));
-        btnRefresh.setOnClickListener(v -> loadClearance());
+        btnRefresh.setOnClickListener(v -> listenClearance());
         btnDownloadPermit.setOnClickListener(v -> {
             if (cachedPermitUrl == null || cachedPermitUrl.isEmpty()) {
                 Toast.makeText(this, "No permit available", Toast.LENGTH_SHORT).show();
@@ -102,9 +112,21 @@ public class EClearanceActivity extends AppCompatActivity {
 
         // default tab
         showTab(Tab.PRELIM);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        listenClearance();
+    }
 
-        // initial load
-        loadClearance();
+    @Override
+    protected void onStop() {
+        if (clearanceReg != null) {
+            clearanceReg.remove();
+            clearanceReg = null;
+        }
+        super.onStop();
     }
 
     private enum Tab { PRELIM, MIDTERM, FINAL }
@@ -131,22 +153,51 @@ public class EClearanceActivity extends AppCompatActivity {
         }
     }
 
-    private void loadClearance() {
+    /** What one clearance snapshot shows. */
+    enum SnapshotState {
+        /** Not in the cache, which says nothing about the server: keep waiting. */
+        WAIT,
+        /** The server has no record. */
+        MISSING,
+        /** Cached copy, shown with a note until the server confirms it. */
+        SAVED_COPY,
+        LIVE;
+
+        static SnapshotState of(boolean exists, boolean fromCache) {
+            if (!exists) return fromCache ? WAIT : MISSING;
+            return fromCache ? SAVED_COPY : LIVE;
+        }
+    }
+
+    /**
+     * Listens on /clearances/{uid}. The first snapshot comes from the local Firestore cache, so a
+     * repeat visit renders at once and works offline; the server copy replaces it when it
+     * arrives. Metadata changes are included only to clear the "saved copy" note.
+     */
+    private void listenClearance() {
         if (user == null) {
             Toast.makeText(this, "Please sign in", Toast.LENGTH_SHORT).show();
             return;
         }
+        if (clearanceReg != null) clearanceReg.remove();
         progressBar.setVisibility(View.VISIBLE);
         tvError.setVisibility(View.GONE);
-        btnDownloadPermit.setVisibility(View.GONE);
-        cachedPermitUrl = null;
 
         // read from /clearances/{uid} — matches your earlier code/rules
-        db.collection("clearances").document(user.getUid())
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
+        clearanceReg = db.collection("clearances").document(user.getUid())
+                .addSnapshotListener(MetadataChanges.INCLUDE, (documentSnapshot, e) -> {
+                    if (e != null) {
+                        progressBar.setVisibility(View.GONE);
+                        tvError.setText("Failed to load clearance: " + e.getMessage());
+                        tvError.setVisibility(View.VISIBLE);
+                        return;
+                    }
+                    if (documentSnapshot == null) return;
+                    SnapshotState state = SnapshotState.of(documentSnapshot.exists(),
+                            documentSnapshot.getMetadata().isFromCache());
+                    if (state == SnapshotState.WAIT) return;
                     progressBar.setVisibility(View.GONE);
-                    if (!documentSnapshot.exists()) {
+                    if (state == SnapshotState.MISSING) {
                         tvError.setText("No clearance record found.");
                         tvError.setVisibility(View.VISIBLE);
                         // make sure checkboxes are all unchecked
@@ -156,14 +207,19 @@ public class EClearanceActivity extends AppCompatActivity {
                         tvPrelimStatus.setText("Not Cleared");
                         tvMidtermStatus.setText("Not Cleared");
                         tvFinalStatus.setText("Not Cleared");
+                        btnDownloadPermit.setVisibility(View.GONE);
+                        ivPermit.setVisibility(View.GONE);
+                        cachedPermitUrl = null;
+                        permitFile = null;
                         return;
                     }
+                    if (state == SnapshotState.SAVED_COPY) {
+                        tvError.setText("Showing saved copy; it updates when you are online.");
+                        tvError.setVisibility(View.VISIBLE);
+                    } else {
+                        tvError.setVisibility(View.GONE);
+                    }
                     applyDocument(documentSnapshot);
-                })
-                .addOnFailureListener(e -> {
-                    progressBar.setVisibility(View.GONE);
-                    tvError.setText("Failed to load clearance: " + e.getMessage());
-                    tvError.setVisibility(View.VISIBLE);
                 });
     }
 
@@ -194,11 +250,38 @@ public class EClearanceActivity extends AppCompatActivity {
             else if (o instanceof String) permitReady = Boolean.parseBoolean((String) o);
         }
 
+        String previousUrl = cachedPermitUrl;
         cachedPermitUrl = permitUrl;
 
         // show Download button only if admin flagged permitReady and final is fully cleared and permitUrl exists
         boolean shouldShowDownload = permitReady && permitUrl != null && !permitUrl.isEmpty() && "Cleared".equals(finalStatus);
         btnDownloadPermit.setVisibility(shouldShowDownload ? View.VISIBLE : View.GONE);
+        if (shouldShowDownload) {
+            // the listener fires again for the server copy; keep the permit already on screen
+            if (!permitUrl.equals(previousUrl) || permitFile == null) showPermit(permitUrl);
+        } else {
+            ivPermit.setVisibility(View.GONE);
+            permitFile = null;
+        }
+    }
+
+    // Cached copy renders at once (works offline); a changed permit replaces it after revalidation.
+    private void showPermit(String url) {
+        permitCache.show(url, new PermitCache.Callback() {
+            @Override
+            public void onPermit(File file, Bitmap bitmap, boolean fromNetwork) {
+                if (!url.equals(cachedPermitUrl)) return; // clearance reloaded meanwhile
+                permitFile = file;
+                ivPermit.setImageBitmap(bitmap);
+                ivPermit.setVisibility(View.VISIBLE);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "Failed to load permit", e);
+                Toast.makeText(EClearanceActivity.this, "Could not load permit: " + e.getMessage(), Toast.LENGTH_LONG).show();
+            }
+        });
     }
 
     private void applyClears(Map<String, Object> map, LinearLayout container, String[] offices) {
@@ -240,7 +323,7 @@ public class EClearanceActivity extends AppCompatActivity {
             return;
         }
 
-        // On Android Q+ (API 29+), DownloadManager can write to Downloads without WRITE_EXTERNAL_STORAGE permission.
+        // On Android Q+ (API 29+), MediaStore can write to Downloads without WRITE_EXTERNAL_STORAGE permission.
         // For older devices we request WRITE_EXTERNAL_STORAGE if not granted.
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
             if (ActivityCompat.checkSelfPermission(this, android.Manifest.permission.WRITE_EXTERNAL_STORAGE)
@@ -254,29 +337,25 @@ public class EClearanceActivity extends AppCompatActivity {
         enqueueDownload(url);
     }
 
+    // Exports the locally cached permit; no second download, no duplicate copies per tap.
     private void enqueueDownload(String url) {
-        try {
-            Uri downloadUri = Uri.parse(url);
-            String fileName = "permit_" + (user != null ? user.getUid() : System.currentTimeMillis()) + ".jpg";
-            DownloadManager.Request request = new DownloadManager.Request(downloadUri);
-            request.setTitle("e-Clearance Permit");
-            request.setDescription("Downloading permit image");
-            request.setNotificationVisibility(DownloadManager.Request.VISIBILITY_VISIBLE_NOTIFY_COMPLETED);
-            request.setAllowedOverMetered(true);
-            request.setAllowedOverRoaming(true);
-            // destination: Downloads folder
-            request.setDestinationInExternalPublicDir(Environment.DIRECTORY_DOWNLOADS, fileName);
-
-            DownloadManager dm = (DownloadManager) getSystemService(Context.DOWNLOAD_SERVICE);
-            if (dm != null) {
-                dm.enqueue(request);
-                Toast.makeText(this, "Downloading permit to Downloads...", Toast.LENGTH_SHORT).show();
-            } else {
-                Toast.makeText(this, "Download manager unavailable", Toast.LENGTH_SHORT).show();
-            }
-        } catch (Exception ex) {
-            Toast.makeText(this, "Failed to start download: " + ex.getMessage(), Toast.LENGTH_LONG).show();
+        if (permitFile == null) {
+            Toast.makeText(this, "Permit is still loading, try again in a moment.", Toast.LENGTH_SHORT).show();
+            return;
         }
+        String fileName = "permit_" + (user != null ? user.getUid() : System.currentTimeMillis()) + ".jpg";
+        permitCache.export(permitFile, fileName, new PermitCache.ExportCallback() {
+            @Override
+            public void onExported(String path) {
+                Toast.makeText(EClearanceActivity.this, "Permit saved to " + path, Toast.LENGTH_LONG).show();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "Permit export failed", e);
+                Toast.makeText(EClearanceActivity.this, "Failed to save permit: " + e.getMessage(), Toast.LENGTH_LONG).show();
+            }
+        });
     }
 
     // handle runtime permission result (WRITE_EXTERNAL_STORAGE for pre-Q)
@@ -10,7 +10,6 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
-import com.google.firebase.firestore.FirebaseFirestore;
 
 public class HomeActivity extends AppCompatActivity {
     private Button btnGetStarted;
@@ -20,6 +19,7 @@ public class HomeActivity extends AppCompatActivity {
     protected void onCreate(Bundle s) {
         super.onCreate(s);
         setContentView(R.layout.activity_main); // your home layout
+        StartupTrace.firstScreen(this, "home");
 
         btnGetStarted = findViewById(R.id.btnGetStarted);
         btnLoginTop = findViewById(R.id.btnLoginTop);
@@ -29,7 +29,7 @@ public class HomeActivity extends AppCompatActivity {
             FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
             if (user != null) {
                 // user already signed in -> redirect based on role
-                redirectByRole(user.getUid());
+                redirectByRole(user);
             } else {
                 // no user -> go to student login/choice
                 Intent i = new Intent(this, AuthChoiceActivity.class);
@@ -69,24 +69,26 @@ public class HomeActivity extends AppCompatActivity {
         }
     }
 
-    private void redirectByRole(String uid) {
-        // fetch role from users collection. If missing or failure -> student dashboard fallback.
-        FirebaseFirestore.getInstance().collection("users").document(uid)
-                .get()
-                .addOnSuccessListener(doc -> {
-                    String role = doc.exists() ? doc.getString("role") : null;
-                    if ("admin".equals(role)) {
-                        startActivity(new Intent(this, AdminDashboardActivity.class));
-                    } else {
-                        startActivity(new Intent(this, DashboardActivity.class));
-                    }
-                    finish();
-                })
-                .addOnFailureListener(e -> {
-                    // fallback to student dashboard
-                    Toast.makeText(this, "Could not determine role, opening student dashboard.", Toast.LENGTH_SHORT).show();
-                    startActivity(new Intent(this, DashboardActivity.class));
-                    finish();
-                });
+    private void redirectByRole(FirebaseUser user) {
+        // role from the ID token claim (no Firestore round trip); student dashboard fallback
+        RoleResolver.resolveFresh(this, user, null, new RoleResolver.Callback() {
+            @Override
+            public void onRole(String role) {
+                if ("admin".equals(role)) {
+                    startActivity(new Intent(HomeActivity.this, AdminDashboardActivity.class));
+                } else {
+                    startActivity(new Intent(HomeActivity.this, DashboardActivity.class));
+                }
+                finish();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                // fallback to student dashboard
+                Toast.makeText(HomeActivity.this, "Could not determine role, opening student dashboard.", Toast.LENGTH_SHORT).show();
+                startActivity(new Intent(HomeActivity.this, DashboardActivity.class));
+                finish();
+            }
+        });
     }
 }
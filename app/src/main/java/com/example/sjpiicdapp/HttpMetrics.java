@@ -0,0 +1,189 @@
+package com.example.sjpiicdapp;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Per-call timing of the shared OkHttpClient (see MyApp.httpClient): DNS, TCP connect, TLS,
+ * time to first byte, body transfer and total, aggregated per phase in LatencyStats. A call on
+ * a pooled connection has no DNS/connect/TLS phases and is counted as reused; a response from
+ * the disk cache never touches the network and is counted as a cache hit. Shown on the
+ * debug TransactionStatsActivity.
+ */
+public final class HttpMetrics {
+    private static final String TAG = "HttpMetrics";
+    private static final int MAX_SAMPLES = 500;
+
+    static final String DNS = "dns";
+    static final String CONNECT = "connect";
+    static final String TLS = "tls";
+    static final String TTFB = "ttfb";
+    static final String TRANSFER = "transfer";
+    static final String TOTAL = "total";
+
+    private static final Map<String, LatencyStats> phases = new LinkedHashMap<>();
+    private static long calls;
+    private static long reusedConnections;
+    private static long cacheHits;
+
+    public static final EventListener.Factory FACTORY = call -> new CallTimer();
+
+    private HttpMetrics() {
+    }
+
+    private static synchronized void record(String phase, long ms, boolean ok) {
+        LatencyStats stats = phases.get(phase);
+        if (stats == null) {
+            stats = new LatencyStats(MAX_SAMPLES);
+            phases.put(phase, stats);
+        }
+        stats.record(ms, ok);
+    }
+
+    private static synchronized void recordCall(boolean connected, boolean cached) {
+        calls++;
+        if (cached) cacheHits++;
+        else if (!connected) reusedConnections++;
+    }
+
+    public static synchronized String report() {
+        if (calls == 0) return "";
+        StringBuilder sb = new StringBuilder();
+        sb.append("  calls=").append(calls)
+                .append(" reused connections=").append(reusedConnections)
+                .append(" cache hits=").append(cacheHits).append('\n');
+        for (Map.Entry<String, LatencyStats> e : phases.entrySet()) {
+            sb.append("  ").append(e.getKey()).append(' ').append(e.getValue().summary()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public static synchronized void clear() {
+        phases.clear();
+        calls = 0;
+        reusedConnections = 0;
+        cacheHits = 0;
+    }
+
+    /** One instance per call; OkHttp delivers a call's events on one thread at a time. */
+    private static final class CallTimer extends EventListener {
+        private long callStart;
+        private long dnsStart;
+        private long connectStart;
+        private long tlsStart;
+        private long requestSent;
+        private long bodyStart;
+        private boolean connected;
+        private boolean cached;
+
+        private static long now() {
+            return System.nanoTime();
+        }
+
+        private static long ms(long from) {
+            return (System.nanoTime() - from) / 1_000_000;
+        }
+
+        @Override
+        public void callStart(@NonNull Call call) {
+            callStart = now();
+        }
+
+        @Override
+        public void dnsStart(@NonNull Call call, @NonNull String domainName) {
+            dnsStart = now();
+        }
+
+        @Override
+        public void dnsEnd(@NonNull Call call, @NonNull String domainName, @NonNull List<InetAddress> addresses) {
+            record(DNS, ms(dnsStart), true);
+        }
+
+        @Override
+        public void connectStart(@NonNull Call call, @NonNull InetSocketAddress address, @NonNull Proxy proxy) {
+            connectStart = now();
+            connected = true;
+        }
+
+        @Override
+        public void secureConnectStart(@NonNull Call call) {
+            tlsStart = now();
+        }
+
+        @Override
+        public void secureConnectEnd(@NonNull Call call, Handshake handshake) {
+            record(TLS, ms(tlsStart), true);
+        }
+
+        @Override
+        public void connectEnd(@NonNull Call call, @NonNull InetSocketAddress address, @NonNull Proxy proxy, Protocol protocol) {
+            record(CONNECT, ms(connectStart), true);
+        }
+
+        @Override
+        public void connectFailed(@NonNull Call call, @NonNull InetSocketAddress address, @NonNull Proxy proxy,
+                                  Protocol protocol, @NonNull IOException ioe) {
+            record(CONNECT, ms(connectStart), false);
+        }
+
+        @Override
+        public void requestHeadersEnd(@NonNull Call call, @NonNull Request request) {
+            requestSent = now();
+        }
+
+        @Override
+        public void requestBodyEnd(@NonNull Call call, long byteCount) {
+            // uploads: the clock starts once the last body byte is written
+            requestSent = now();
+        }
+
+        @Override
+        public void responseHeadersStart(@NonNull Call call) {
+            record(TTFB, ms(requestSent), true);
+        }
+
+        @Override
+        public void cacheHit(@NonNull Call call, @NonNull Response response) {
+            cached = true;
+            Log.d(TAG, "served from HTTP cache: " + call.request().url());
+        }
+
+        @Override
+        public void responseBodyStart(@NonNull Call call) {
+            bodyStart = now();
+        }
+
+        @Override
+        public void responseBodyEnd(@NonNull Call call, long byteCount) {
+            record(TRANSFER, ms(bodyStart), true);
+        }
+
+        @Override
+        public void callEnd(@NonNull Call call) {
+            record(TOTAL, ms(callStart), true);
+            recordCall(connected, cached);
+        }
+
+        @Override
+        public void callFailed(@NonNull Call call, @NonNull IOException ioe) {
+            record(TOTAL, ms(callStart), false);
+            recordCall(connected, cached);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.sjpiicdapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Bounded sample of latencies (ms) with nearest-rank percentiles.
+ * Keeps the most recent maxSamples values; not thread-safe, callers synchronize.
+ */
+public class LatencyStats {
+    private final int maxSamples;
+    private final List<Long> samples = new ArrayList<>();
+    private long count;
+    private long failures;
+
+    public LatencyStats(int maxSamples) {
+        this.maxSamples = maxSamples;
+    }
+
+    public void record(long ms, boolean ok) {
+        count++;
+        if (!ok) failures++;
+        samples.add(ms);
+        if (samples.size() > maxSamples) samples.remove(0);
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long failures() {
+        return failures;
+    }
+
+    public double failureRate() {
+        return count == 0 ? 0 : (double) failures / count;
+    }
+
+    /** p in 0..100; 0 when there are no samples. */
+    public long percentile(double p) {
+        if (samples.isEmpty()) return 0;
+        List<Long> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted);
+        int idx = (int) Math.ceil(p / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, idx)));
+    }
+
+    public String summary() {
+        return String.format(Locale.US, "n=%d fail=%.1f%% p50=%dms p95=%dms p99=%dms",
+                count, failureRate() * 100, percentile(50), percentile(95), percentile(99));
+    }
+}
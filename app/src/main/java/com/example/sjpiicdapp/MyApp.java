@@ -1,35 +1,110 @@
 package com.example.sjpiicdapp;
 
 import android.app.Application;
+import android.content.Context;
 import android.util.Log;
+
 import com.google.firebase.FirebaseApp;
+import com.google.firebase.analytics.FirebaseAnalytics;
 import com.google.firebase.appcheck.FirebaseAppCheck;
 import com.google.firebase.appcheck.debug.DebugAppCheckProviderFactory;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.PersistentCacheIndexManager;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
 
 /**
- * Minimal Application: initialize Firebase only (NO emulator code).
+ * Application: runs startup through StartupCoordinator (NO emulator code), and owns the one
+ * process-wide OkHttpClient.
  */
 public class MyApp extends Application {
     private static final String TAG = "MyApp";
 
+    private static final long HTTP_CACHE_BYTES = 20L * 1024 * 1024;
+    private static final int MAX_REQUESTS = 16;
+    private static final int MAX_REQUESTS_PER_HOST = 4;
+
+    static final String FIREBASE = "firebase";
+    static final String APP_CHECK = "appCheck";
+    static final String FIRESTORE = "firestore";
+    static final String ANALYTICS = "analytics";
+
+    private OkHttpClient httpClient;
+    private StartupCoordinator startup;
+
+    /**
+     * Shared client: one connection pool, dispatcher and TLS session cache for the whole app,
+     * so repeated permit uploads / downloads reuse warm connections. Responses (permit images)
+     * are cached on disk under cacheDir/http. Call timings go to HttpMetrics.
+     */
+    public static OkHttpClient httpClient(Context context) {
+        return ((MyApp) context.getApplicationContext()).httpClient();
+    }
+
+    public synchronized OkHttpClient httpClient() {
+        if (httpClient == null) {
+            Dispatcher dispatcher = new Dispatcher();
+            dispatcher.setMaxRequests(MAX_REQUESTS);
+            dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+            httpClient = new OkHttpClient.Builder()
+                    .dispatcher(dispatcher)
+                    .connectionPool(new ConnectionPool(5, 5, TimeUnit.MINUTES))
+                    .cache(new Cache(new File(getCacheDir(), "http"), HTTP_CACHE_BYTES))
+                    .connectTimeout(15, TimeUnit.SECONDS)
+                    .readTimeout(30, TimeUnit.SECONDS)
+                    // permit uploads are written in one request body
+                    .writeTimeout(60, TimeUnit.SECONDS)
+                    .eventListenerFactory(HttpMetrics.FACTORY)
+                    .build();
+        }
+        return httpClient;
+    }
+
+    /** The app's startup graph; screens wait on background nodes with whenReady(). */
+    public static StartupCoordinator startup(Context context) {
+        return ((MyApp) context.getApplicationContext()).startup;
+    }
+
     @Override
     public void onCreate() {
         super.onCreate();
-        FirebaseApp.initializeApp(this);
-
-        if (BuildConfig.DEBUG) {
-            FirebaseAppCheck firebaseAppCheck = FirebaseAppCheck.getInstance();
-            firebaseAppCheck.installAppCheckProviderFactory(
-                    DebugAppCheckProviderFactory.getInstance()
-            );
-            Log.d("MyApp", "App Check: Debug provider installed");
-        }
+        StartupTrace.mark("applicationStart");
 
-        try {
-            FirebaseApp.initializeApp(this);
-            Log.i(TAG, "Firebase initialized (production mode)");
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to initialize Firebase", e);
-        }
+        // FirebaseApp and App Check run before the first frame; everything else is background or lazy.
+        // Functions, Storage and the shared OkHttpClient have no node: created at first use.
+        startup = new StartupCoordinator(this)
+                .onMain(FIREBASE, app -> {
+                    // FirebaseInitProvider normally did this already; this is then a cheap no-op
+                    if (FirebaseApp.initializeApp(app) == null) {
+                        throw new IllegalStateException("Firebase options missing (google-services.json)");
+                    }
+                })
+                // Firestore, Functions and Storage attach App Check tokens to their requests, and
+                // screens create those clients directly, so the provider is in place before any
+                // activity starts. Installing only registers the factory; tokens are fetched off main.
+                .onMain(APP_CHECK, app -> {
+                    if (BuildConfig.DEBUG) {
+                        FirebaseAppCheck.getInstance().installAppCheckProviderFactory(
+                                DebugAppCheckProviderFactory.getInstance());
+                        Log.d(TAG, "App Check: Debug provider installed");
+                    }
+                }, FIREBASE)
+                // opens the local cache off the main thread; the splash's prefetch waits for this.
+                // Screens render their listeners' first snapshot from that cache, so let the SDK
+                // index it for the queries it sees instead of scanning whole collections offline.
+                .inBackground(FIRESTORE, app -> {
+                    PersistentCacheIndexManager indexes = FirebaseFirestore.getInstance().getPersistentCacheIndexManager();
+                    if (indexes != null) indexes.enableIndexAutoCreation();
+                }, APP_CHECK)
+                // collection is off in the manifest until here, so Analytics does no startup work
+                .inBackground(ANALYTICS, app -> FirebaseAnalytics.getInstance(app).setAnalyticsCollectionEnabled(true), FIREBASE);
+        startup.start();
+        StartupTrace.mark("application");
     }
 }
@@ -2,25 +2,27 @@ package com.example.sjpiicdapp;
 
 import android.app.DatePickerDialog;
 import android.app.AlertDialog;
-import android.content.Intent;
 import android.os.Bundle;
 import android.util.Log;
-import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
-import android.widget.ImageButton;
-import android.widget.LinearLayout;
 import android.widget.ProgressBar;
-import android.widget.ScrollView;
 import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
-import com.google.firebase.Timestamp;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentChange;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.FirebaseFirestoreException;
@@ -28,60 +30,80 @@ import com.google.firebase.firestore.Transaction;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.MetadataChanges;
 import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.WriteBatch;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
-public class MyAppointmentsActivity extends AppCompatActivity {
+public class MyAppointmentsActivity extends AppCompatActivity implements AppointmentAdapter.Listener {
     private static final String TAG = "MyAppointmentActivity";
-    public static final String EXTRA_APPT_ID = "APPT_ID"; // legacy key, supported for compatibility
     private interface OnFailure {
         void onFailure(Exception e);
     }
 
-    private LinearLayout appointmentContainer;
+    private RecyclerView recyclerAppointments;
+    private AppointmentAdapter adapter;
     private ProgressBar progressBar;
     private TextView tvError;
-    private ScrollView scrollView;
     private FirebaseFirestore db;
-    private String prettyPaymentMethod(String code) {
-        if (code == null) return "Unknown";
-        switch (code) {
-            case "E_WALLET":
-                return "E-Wallet / Bank Transfer";
-            case "PAY_AT_SCHOOL":
-                return "Pay at School (Cashier)";
-            default:
-                // fallback: show the raw code but make it nicer
-                return code.replace('_', ' ').toUpperCase();
-        }
-    }
-
-
-    private void deleteAppointmentWithSlotUpdate(DocumentSnapshot apptDoc, Runnable onSuccess, java.util.function.Consumer<Exception> onFailure) {
-        if (apptDoc == null) {
-            onFailure.accept(new IllegalArgumentException("Appointment doc is null"));
+    private PendingBookingStore pendingStore;
+    private Button btnShowHistory;
+
+    private static final int PAGE_SIZE = 20;
+    // start fetching the next page when this many rows are left below the fold
+    private static final int PREFETCH_DISTANCE = 5;
+    private String currentUid;
+    private Query upcomingQuery;
+    private ListenerRegistration upcomingReg;
+    private int upcomingLimit = PAGE_SIZE;
+    private boolean upcomingExhausted;
+    private boolean upcomingAwaitingFirst;
+    private CursorPager historyPager;
+    private boolean showHistory = false;
+    // parsed once per snapshot; rows never hold the DocumentSnapshot itself
+    private final List<Appointment> upcoming = new ArrayList<>();
+    private final List<Appointment> history = new ArrayList<>();
+
+    private void deleteAppointmentWithSlotUpdate(Appointment appt, Runnable onSuccess, java.util.function.Consumer<Exception> onFailure) {
+        if (appt == null) {
+            onFailure.accept(new IllegalArgumentException("Appointment is null"));
             return;
         }
 
-        String apptId = apptDoc.getId();
+        String apptId = appt.id;
         FirebaseFirestore db = FirebaseFirestore.getInstance();
         CollectionReference apptsRef = db.collection("appointments");
         DocumentReference apptRef = apptsRef.document(apptId);
 
-        // The onAppointmentDeleted cloud function will handle decrementing the slot.
-        // We just need to delete the appointment document.
-        apptRef.delete()
+        // The onAppointmentDeleted cloud function gives the seat back to its slot shard.
+        // An active appointment is the only one on its day, so its activeDays entry goes in the
+        // same batch (works offline too); onAppointmentActiveDay does the same server-side.
+        WriteBatch batch = db.batch();
+        batch.delete(apptRef);
+        if (appt.holdsDay() && currentUid != null) {
+            batch.set(db.collection("users").document(currentUid),
+                    java.util.Collections.singletonMap("activeDays",
+                            java.util.Collections.singletonMap(appt.date, FieldValue.delete())),
+                    com.google.firebase.firestore.SetOptions.merge());
+        }
+        batch.commit()
                 .addOnSuccessListener(aVoid -> onSuccess.run())
                 .addOnFailureListener(onFailure::accept);
     }
 
     private void rescheduleAppointmentTransaction(
-            @NonNull com.google.firebase.firestore.DocumentSnapshot apptDoc,
+            @NonNull Appointment appt,
             @NonNull String newDate,
             @NonNull String newWindow,
             @NonNull Runnable onSuccess,
@@ -89,14 +111,14 @@ public class MyAppointmentsActivity extends AppCompatActivity {
 
         FirebaseFirestore db = FirebaseFirestore.getInstance();
 
-        if (apptDoc == null || !apptDoc.exists()) {
+        if (appt == null) {
             onFailure.onFailure(new IllegalArgumentException("Appointment missing"));
             return;
         }
 
-        final String apptId = apptDoc.getId();
-        final String oldDate = apptDoc.contains("date") ? apptDoc.getString("date") : null;
-        final String oldWindow = apptDoc.contains("window") ? apptDoc.getString("window") : null;
+        final String apptId = appt.id;
+        final String oldDate = appt.date;
+        final String oldWindow = appt.window;
 
         if (oldDate == null || oldWindow == null) {
             onFailure.onFailure(new IllegalStateException("Appointment has no date/window"));
@@ -112,15 +134,46 @@ public class MyAppointmentsActivity extends AppCompatActivity {
             return;
         }
 
-        final DocumentReference apptRef = db.collection("appointments").document(apptId);
-        final DocumentReference newSlotRef = db.collection("slots").document(newSlotId);
+        // Users not yet activeDaysIndexed may have appointments the map misses: the attempt stops
+        // with DAY_CHECK, the new date is checked with the userId + date query, and it runs again.
+        rescheduleAttempt(db, apptId, oldDate, newDate, newWindow, false).continueWithTask(t -> {
+            if (t.isSuccessful() || !isReason(t.getException(), BookingTransaction.DAY_CHECK) || currentUid == null) return t;
+            return db.collection("appointments")
+                    .whereEqualTo("userId", currentUid)
+                    .whereEqualTo("date", newDate)
+                    .get()
+                    .continueWithTask(q -> {
+                        if (!q.isSuccessful()) return Tasks.forException(q.getException());
+                        for (DocumentSnapshot d : q.getResult().getDocuments()) {
+                            if (!d.getId().equals(apptId) && BookingTransaction.isActive(d)) {
+                                return Tasks.forException(new FirebaseFirestoreException("SAME_DAY",
+                                        FirebaseFirestoreException.Code.ABORTED));
+                            }
+                        }
+                        return rescheduleAttempt(db, apptId, oldDate, newDate, newWindow, true);
+                    });
+        }).addOnSuccessListener(aVoid -> {
+            Log.i(TAG, "Reschedule transaction success for apptId=" + apptId);
+            onSuccess.run();
+        }).addOnFailureListener(e -> {
+            Log.e(TAG, "Reschedule failed", e);
+            onFailure.onFailure((Exception) e);
+        });
+    }
 
-        final long MAX_CAPACITY = 400L;
+    private static boolean isReason(@Nullable Exception e, String reason) {
+        return e instanceof FirebaseFirestoreException && reason.equals(e.getMessage());
+    }
+
+    private Task<Void> rescheduleAttempt(FirebaseFirestore db, String apptId, String oldDate,
+                                         String newDate, String newWindow, boolean dayChecked) {
+        final String newSlotId = newDate + "_" + newWindow;
+        final DocumentReference apptRef = db.collection("appointments").document(apptId);
 
-        db.runTransaction((Transaction.Function<Void>) transaction -> {
+        return TransactionProfiler.run(db, "reschedule", Arrays.asList(apptRef.getPath(), "slots/" + newSlotId),
+                (Transaction.Function<Void>) transaction -> {
             // ---- 1) ALL READS FIRST (important) ----
             com.google.firebase.firestore.DocumentSnapshot freshAppt = transaction.get(apptRef);
-            com.google.firebase.firestore.DocumentSnapshot newSlotSnap = transaction.get(newSlotRef);
 
             // Validate appointment still exists
             if (!freshAppt.exists()) {
@@ -128,38 +181,62 @@ public class MyAppointmentsActivity extends AppCompatActivity {
                 throw new FirebaseFirestoreException("APPOINTMENT_MISSING", FirebaseFirestoreException.Code.ABORTED);
             }
 
-            // Extract new slot counts
-            long newBooked = 0L;
-            long newCapacity = MAX_CAPACITY;
-            boolean newExists = newSlotSnap.exists();
-            if (newExists) {
-                Long nb = newSlotSnap.getLong("bookedCount");
-                Long nc = newSlotSnap.getLong("capacity");
-                if (nb != null) newBooked = nb;
-                if (nc != null) newCapacity = nc;
+            // One appointment per day: the owner's activeDays entry for the new date must not point
+            // at another active appointment on that date (same check as BookingTransaction.attempt).
+            String ownerUid = freshAppt.getString("userId");
+            DocumentReference ownerRef = ownerUid != null ? db.collection("users").document(ownerUid) : null;
+            if (ownerRef != null) {
+                DocumentSnapshot ownerSnap = transaction.get(ownerRef);
+                Object activeDays = ownerSnap.exists() ? ownerSnap.get("activeDays") : null;
+                Object sameDayId = activeDays instanceof Map ? ((Map<?, ?>) activeDays).get(newDate) : null;
+                if (sameDayId instanceof String && !sameDayId.equals(apptId)) {
+                    DocumentSnapshot other = transaction.get(db.collection("appointments").document((String) sameDayId));
+                    if (BookingTransaction.isActive(other) && newDate.equals(other.getString("date"))) {
+                        throw new FirebaseFirestoreException("SAME_DAY", FirebaseFirestoreException.Code.ABORTED);
+                    }
+                }
+                if (!dayChecked && !oldDate.equals(newDate)
+                        && !Boolean.TRUE.equals(ownerSnap.getBoolean("activeDaysIndexed"))) {
+                    throw new FirebaseFirestoreException(BookingTransaction.DAY_CHECK, FirebaseFirestoreException.Code.ABORTED);
+                }
             }
 
-            // ---- 2) Business rules / validation (still no writes) ----
-            if (newBooked >= newCapacity) {
+            // ---- 2) Take a seat on the new slot's shards, like a booking (reads, then writes the shard) ----
+            // The parent slot's bookedCount is only a trigger-maintained mirror, so it is not checked here.
+            int newShard;
+            try {
+                newShard = SlotShards.claimSeat(transaction, db, newDate, newWindow);
+            } catch (RuntimeException e) {
+                if (!"SLOT_FULL".equals(e.getMessage())) throw e;
                 // signal caller that the new slot is full
                 throw new FirebaseFirestoreException("NEW_SLOT_FULL", FirebaseFirestoreException.Code.ABORTED);
             }
 
             // ---- 3) ALL WRITES AFTER ALL READS ----
-            // Update appointment doc. The onAppointmentUpdated cloud function will handle slot changes.
+            // Update appointment doc. seatSlotId tells onAppointmentUpdated the new seat is already
+            // taken, so it only gives the old one back.
             Map<String, Object> apptUpdates = new HashMap<>();
             apptUpdates.put("date", newDate);
             apptUpdates.put("window", newWindow);
+            apptUpdates.put("slotShard", newShard);
+            apptUpdates.put("seatSlotId", newSlotId);
             apptUpdates.put("updatedAt", FieldValue.serverTimestamp());
             transaction.update(apptRef, apptUpdates);
 
+            // Move the owner's per-day index (used by BookingActivity's one-per-day check) to the new date.
+            if (ownerRef != null) {
+                Map<String, Object> days = new HashMap<>();
+                // an active appointment is the only one on its day, so the old entry is this one
+                if (!oldDate.equals(newDate) && BookingTransaction.isActive(freshAppt)) {
+                    days.put(oldDate, FieldValue.delete());
+                }
+                days.put(newDate, apptId);
+                transaction.set(ownerRef,
+                        java.util.Collections.singletonMap("activeDays", days),
+                        com.google.firebase.firestore.SetOptions.merge());
+            }
+
             return null;
-        }).addOnSuccessListener(aVoid -> {
-            Log.i(TAG, "Reschedule transaction success for apptId=" + apptId);
-            onSuccess.run();
-        }).addOnFailureListener(e -> {
-            Log.e(TAG, "Reschedule failed", e);
-            onFailure.onFailure((Exception) e);
         });
     }
 
@@ -170,52 +247,45 @@ public class MyAppointmentsActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_my_appointment);
 
-        appointmentContainer = findViewById(R.id.appointmentContainer);
+        recyclerAppointments = findViewById(R.id.recyclerAppointments);
         progressBar = findViewById(R.id.progressBar);
         tvError = findViewById(R.id.tvError);
-        scrollView = findViewById(R.id.scrollView);
 
-        db = FirebaseFirestore.getInstance();
+        adapter = new AppointmentAdapter(this);
+        recyclerAppointments.setLayoutManager(new LinearLayoutManager(this));
+        recyclerAppointments.setAdapter(adapter);
+        recyclerAppointments.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView rv, int dx, int dy) {
+                onScrolledNearEnd(rv, dy);
+            }
+        });
 
-        // read either key: "appointmentId" (from BookingActivity) or legacy EXTRA_APPT_ID
-        Intent intent = getIntent();
-        String apptId = null;
-        if (intent != null) {
-            apptId = intent.getStringExtra("appointmentId");
-            if (apptId == null) apptId = intent.getStringExtra(EXTRA_APPT_ID);
-        }
+        btnShowHistory = findViewById(R.id.btnShowHistory);
+        btnShowHistory.setOnClickListener(v -> {
+            showHistory = true;
+            showAppointments();
+            loadNextPage();
+        });
 
-        if (apptId != null && !apptId.isEmpty()) {
-            // if we have a specific appointment id -> show single doc
-            loadSingleAppointment(apptId);
-        } else {
-            // otherwise show the list for the current user
-            loadUserAppointments();
-        }
+        db = FirebaseFirestore.getInstance();
+        pendingStore = new PendingBookingStore(this);
+
+        loadUserAppointments();
+        observePendingSync();
     }
 
-    private void loadSingleAppointment(String apptId) {
-        showLoading(true);
-        tvError.setVisibility(View.GONE);
-        appointmentContainer.removeAllViews();
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // re-attach after onStop; the first snapshot comes from cache, so this is cheap
+        if (upcomingQuery != null && upcomingReg == null) listenUpcoming();
+    }
 
-        db.collection("appointments").document(apptId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    showLoading(false);
-                    if (documentSnapshot.exists()) {
-                        renderAppointment(documentSnapshot);
-                    } else {
-                        tvError.setText("Appointment not found.");
-                        tvError.setVisibility(View.VISIBLE);
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    showLoading(false);
-                    tvError.setText("Failed to load appointment: " + e.getMessage());
-                    tvError.setVisibility(View.VISIBLE);
-                    Log.e(TAG, "Error loading appointment", e);
-                });
+    @Override
+    protected void onStop() {
+        stopListening();
+        super.onStop();
     }
 
     private void loadUserAppointments() {
@@ -226,242 +296,281 @@ public class MyAppointmentsActivity extends AppCompatActivity {
             return;
         }
 
-        final String uid = u.getUid();
+        currentUid = u.getUid();
         showLoading(true);
         tvError.setVisibility(View.GONE);
-        appointmentContainer.removeAllViews();
-
-        // Primary (expected) query: filter by userId and order by createdAt desc.
-        db.collection("appointments")
-                .whereEqualTo("userId", uid)
-                .orderBy("createdAt", Query.Direction.DESCENDING)
-                .get()
-                .addOnSuccessListener(querySnapshot -> {
-                    showLoading(false);
-                    List<DocumentSnapshot> docs = querySnapshot.getDocuments();
-                    if (docs.isEmpty()) {
-                        tvError.setText("No appointments found.");
-                        tvError.setVisibility(View.VISIBLE);
+        history.clear();
+
+        // Both queries need the userId+date composite indexes in firestore.indexes.json.
+        String today = new SimpleDateFormat("yyyy-MM-dd", Locale.US).format(new java.util.Date());
+        Query mine = db.collection("appointments").whereEqualTo("userId", currentUid);
+        // upcoming: soonest first, kept live by a snapshot listener
+        upcomingQuery = mine.whereGreaterThanOrEqualTo("date", today).orderBy("date");
+        upcomingLimit = PAGE_SIZE;
+        // history (on demand): most recent first, cursor-paged once, not live
+        historyPager = new CursorPager(mine.whereLessThan("date", today).orderBy("date", Query.Direction.DESCENDING), PAGE_SIZE);
+        listenUpcoming();
+    }
+
+    /**
+     * (Re)attaches the upcoming listener. The first snapshot is served from the local cache when
+     * there is one, then only the server's deltas arrive; metadata-only changes are excluded.
+     */
+    private void listenUpcoming() {
+        if (upcomingReg != null) upcomingReg.remove();
+        upcomingAwaitingFirst = true;
+        upcomingReg = upcomingQuery.limit(upcomingLimit)
+                .addSnapshotListener(MetadataChanges.EXCLUDE, (qs, e) -> {
+                    if (e != null) {
+                        onLoadError(e);
                         return;
                     }
-                    renderList(docs);
-                })
-                .addOnFailureListener(e -> {
+                    if (qs == null) return;
                     showLoading(false);
-                    Log.e(TAG, "Error loading appointments", e);
-
-                    // If Firestore says "requires an index", fallback to client-side approach
-                    if (e instanceof com.google.firebase.firestore.FirebaseFirestoreException
-                            && ((com.google.firebase.firestore.FirebaseFirestoreException) e).getCode()
-                            == com.google.firebase.firestore.FirebaseFirestoreException.Code.FAILED_PRECONDITION) {
-
-                            Toast.makeText(this, "Firestore index missing — using fallback (slower). Create composite index in Firebase Console for best performance.", Toast.LENGTH_LONG).show();
-                        // Fallback: query only by userId, then sort locally by createdAt
-                        db.collection("appointments")
-                                .whereEqualTo("userId", uid)
-                                .get()
-                                .addOnSuccessListener(fallbackSnapshot -> {
-                                    List<DocumentSnapshot> docs = fallbackSnapshot.getDocuments();
-                                    if (docs.isEmpty()) {
-                                        tvError.setText("No appointments found.");
-                                        tvError.setVisibility(View.VISIBLE);
-                                        return;
-                                    }
-                                    // sort docs by createdAt descending (documents may have createdAt as Timestamp)
-                                    docs.sort((a, b) -> {
-                                        Timestamp ta = a.getTimestamp("createdAt");
-                                        Timestamp tb = b.getTimestamp("createdAt");
-                                        if (ta == null && tb == null) return 0;
-                                        if (ta == null) return 1;
-                                        if (tb == null) return -1;
-                                        return tb.compareTo(ta); // descending
-                                    });
-                                    renderList(docs);
-                                })
-                                .addOnFailureListener(e2 -> {
-                                    Log.e(TAG, "Fallback load also failed", e2);
-                                    tvError.setText("Failed to load appointments: " + e2.getMessage());
-                                    tvError.setVisibility(View.VISIBLE);
-                                });
-
-                    } else {
-                        tvError.setText("Failed to load appointments: " + e.getMessage());
-                        tvError.setVisibility(View.VISIBLE);
-                    }
+                    // a new registration replays everything as ADDED
+                    if (upcomingAwaitingFirst) upcoming.clear();
+                    upcomingAwaitingFirst = false;
+                    applyChanges(upcoming, qs.getDocumentChanges());
+                    upcomingExhausted = upcoming.size() < upcomingLimit;
+                    showAppointments();
+                    // upcoming fits in the window: go straight on to history if it is shown
+                    if (upcomingExhausted && showHistory && history.isEmpty()) loadNextPage();
                 });
     }
 
-    private void renderList(@NonNull List<DocumentSnapshot> docs) {
-        appointmentContainer.removeAllViews();
-        LayoutInflater inflater = LayoutInflater.from(this);
-
-        for (DocumentSnapshot doc : docs) {
-            View item = inflater.inflate(R.layout.item_appointment, appointmentContainer, false);
+    private void stopListening() {
+        if (upcomingReg != null) {
+            upcomingReg.remove();
+            upcomingReg = null;
+        }
+    }
 
-            // --- find the UI controls using the correct types ---
-            TextView tvDateWindow = item.findViewById(R.id.tvDateWindow);
-            TextView tvStatus = item.findViewById(R.id.tvStatus);
-            TextView tvPaymentMethod = item.findViewById(R.id.tvPaymentMethod);
+    // Changes come ordered so that applying them one by one with old/new index stays consistent.
+    private static void applyChanges(List<Appointment> list, List<DocumentChange> changes) {
+        for (DocumentChange dc : changes) {
+            Appointment appt = dc.getType() != DocumentChange.Type.REMOVED ? Appointment.from(dc.getDocument()) : null;
+            applyChange(list, dc.getType(), dc.getOldIndex(), dc.getNewIndex(), appt);
+        }
+    }
 
-            // Buttons at bottom of item (you used ImageView in layout)
-            android.widget.ImageView btnEdit = item.findViewById(R.id.btnEdit);
-            android.widget.ImageView btnDelete = item.findViewById(R.id.btnDelete);
+    /** One DocumentChange; {@code appt} is the parsed document, null for REMOVED. */
+    static void applyChange(List<Appointment> list, DocumentChange.Type type, int oldIndex, int newIndex,
+                            @Nullable Appointment appt) {
+        switch (type) {
+            case ADDED:
+                list.add(newIndex, appt);
+                break;
+            case MODIFIED:
+                if (oldIndex == newIndex) {
+                    list.set(newIndex, appt);
+                } else {
+                    list.remove(oldIndex);
+                    list.add(newIndex, appt);
+                }
+                break;
+            case REMOVED:
+                list.remove(oldIndex);
+                break;
+        }
+    }
 
-            // safe-guard null checks
-            final String docId = doc.getId();
+    // Widen the upcoming window first; history pages only once the student asked for them.
+    private void loadNextPage() {
+        if (upcomingQuery == null || upcomingAwaitingFirst) return;
+        if (!upcomingExhausted) {
+            upcomingLimit += PAGE_SIZE;
+            listenUpcoming();
+        } else if (showHistory) {
+            historyPager.loadNext(pageCallback);
+        }
+    }
 
-            // populate fields
-            String date = doc.contains("date") ? doc.getString("date") : null;
-            String window = doc.contains("window") ? doc.getString("window") : null;
-            String status = doc.contains("status") ? doc.getString("status") : "Unknown";
-            String paymentCode = doc.contains("paymentMethod") ? doc.getString("paymentMethod") : "PAY_AT_SCHOOL";
+    private final CursorPager.Callback pageCallback = new CursorPager.Callback() {
+        @Override
+        public void onPage(CursorPager pager, List<DocumentSnapshot> page) {
+            if (pager != historyPager) return; // list was reloaded meanwhile
+            showLoading(false);
+            for (DocumentSnapshot d : page) history.add(Appointment.from(d));
+            showAppointments();
+        }
 
-            String friendly = prettyPaymentMethod(paymentCode);
-            tvPaymentMethod.setText(friendly);
+        @Override
+        public void onError(CursorPager pager, Exception e) {
+            if (pager != historyPager) return;
+            onLoadError(e);
+        }
+    };
+
+    private void onLoadError(Exception e) {
+        showLoading(false);
+        Log.e(TAG, "Error loading appointments", e);
+        if (e instanceof FirebaseFirestoreException
+                && ((FirebaseFirestoreException) e).getCode() == FirebaseFirestoreException.Code.FAILED_PRECONDITION) {
+            // no client-side fallback: downloading everything is exactly what paging avoids
+            tvError.setText("Appointments index is missing. Deploy firestore.indexes.json.");
+        } else {
+            tvError.setText("Failed to load appointments: " + e.getMessage());
+        }
+        tvError.setVisibility(View.VISIBLE);
+    }
 
-            if (date != null && !date.isEmpty()) {
-                tvDateWindow.setText(date + " - " + (window != null ? window : ""));
-                tvDateWindow.setVisibility(View.VISIBLE);
-            } else {
-                tvDateWindow.setText("No appointment date set");
-                tvDateWindow.setVisibility(View.VISIBLE);
+    // History is not live; drop a row locally once it was deleted or moved to another date.
+    private void dropFromHistory(String apptId) {
+        for (int i = 0; i < history.size(); i++) {
+            if (history.get(i).id.equals(apptId)) {
+                history.remove(i);
+                break;
             }
-            tvStatus.setText("Status: " + status);
-
-
-            // set tag so we can find later if needed
-            item.setTag(docId);
-
-            // DELETE handler
-            if (btnDelete != null) {
-                // inside renderList loop, when you build item view and have doc variable
-                btnDelete.setOnClickListener(v -> {
-                    new androidx.appcompat.app.AlertDialog.Builder(this)
-                            .setTitle("Delete Appointment")
-                            .setMessage("Are you sure you want to delete this appointment?")
-                            .setPositiveButton("Delete", (dialog, which) -> {
-                                btnDelete.setEnabled(false);
-                                deleteAppointmentWithSlotUpdate(doc, () -> {
-                                    Toast.makeText(this, "Appointment deleted", Toast.LENGTH_SHORT).show();
-                                    // refresh list
-                                    loadUserAppointments();
-                                }, e -> {
-                                    btnDelete.setEnabled(true);
-                                    Toast.makeText(this, "Delete failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                                    Log.e(TAG, "Delete failed", e);
-                                });
-                            })
-                            .setNegativeButton("Cancel", null)
-                            .show();
-                });
+        }
+        showAppointments();
+    }
 
-            }
+    private void onScrolledNearEnd(RecyclerView rv, int dy) {
+        if (dy <= 0 || currentUid == null) return;
+        LinearLayoutManager lm = (LinearLayoutManager) rv.getLayoutManager();
+        if (lm != null && lm.findLastVisibleItemPosition() >= adapter.getItemCount() - PREFETCH_DISTANCE) {
+            loadNextPage();
+        }
+    }
 
-            // EDIT / Reschedule handler
-            if (btnEdit != null) {
-                btnEdit.setOnClickListener(v -> {
-                    // build reschedule dialog (same pattern you used)
-                    View dialogView = getLayoutInflater().inflate(R.layout.dialog_reschedule, null);
-                    TextView tvCurrent = dialogView.findViewById(R.id.tvCurrentSchedule);
-                    Button btnPickDate = dialogView.findViewById(R.id.btnPickDate);
-                    Spinner spinnerSlots = dialogView.findViewById(R.id.spinnerTimeSlots);
-                    Button btnConfirm = dialogView.findViewById(R.id.btnConfirm);
-                    Button btnCancel  = dialogView.findViewById(R.id.btnCancel);
-
-                    // show current schedule
-                    String curDate = doc.contains("date") ? doc.getString("date") : "";
-                    String curWindow = doc.contains("window") ? doc.getString("window") : "";
-                    tvCurrent.setText((curDate != null ? curDate : "") + "\n" + (curWindow != null ? curWindow : ""));
-
-                    final String[] selectedDate = { curDate };
-                    final String[] selectedWindow = { curWindow };
-
-                    // wire date picker
-                    btnPickDate.setOnClickListener(x -> {
-                        showDatePicker(dateSelected -> {
-                            selectedDate[0] = dateSelected;
-                            btnPickDate.setText(dateSelected);
-                        });
-                    });
+    // Drops queued bookings the server has confirmed, then shows queued + loaded rows.
+    private void showAppointments() {
+        List<Appointment> loaded = new ArrayList<>(upcoming);
+        if (showHistory) loaded.addAll(history);
+
+        PendingBookingStore.Reconciled reconciled =
+                PendingBookingStore.reconcile(pendingStore.forUser(currentUid), loaded);
+        for (String requestId : reconciled.confirmed) pendingStore.remove(requestId);
+        List<Appointment> rows = reconciled.rows;
+
+        btnShowHistory.setVisibility(showHistory ? View.GONE : View.VISIBLE);
+        if (rows.isEmpty()) {
+            adapter.submitList(null);
+            tvError.setText(showHistory ? "No appointments found." : "No upcoming appointments.");
+            tvError.setVisibility(View.VISIBLE);
+            return;
+        }
+        tvError.setVisibility(View.GONE);
+        adapter.submitList(rows);
+    }
 
-                    // populate spinner
-                    java.util.List<String> windows = java.util.Arrays.asList(
-                            "09:00-10:00","10:00-11:00","11:00-12:00","13:00-14:00");
-                    ArrayAdapter<String> adapter = new ArrayAdapter<>(this,
-                            android.R.layout.simple_spinner_dropdown_item, windows);
-                    spinnerSlots.setAdapter(adapter);
-
-                    // initial selection
-                    if (curWindow != null) {
-                        int pos = adapter.getPosition(curWindow);
-                        if (pos >= 0) spinnerSlots.setSelection(pos);
+    // Reload when a queued booking finishes syncing (or is rejected) while this screen is open.
+    private void observePendingSync() {
+        final Set<UUID> finished = new HashSet<>();
+        final boolean[] first = { true };
+        WorkManager.getInstance(this)
+                .getWorkInfosByTagLiveData(BookingSyncWorker.WORK_TAG)
+                .observe(this, infos -> {
+                    boolean changed = false;
+                    for (WorkInfo info : infos) {
+                        if (info.getState().isFinished() && finished.add(info.getId())) changed = true;
                     }
-
-                    AlertDialog dialog = new AlertDialog.Builder(this)
-                            .setView(dialogView)
-                            .create();
-
-                    btnCancel.setOnClickListener(x -> dialog.dismiss());
-
-                    // when you have new selectedDate/new selectedWindow ready
-                    btnConfirm.setOnClickListener(x -> {
-                        String newDateSelected = selectedDate[0];
-                        String newWindowSelected = spinnerSlots.getSelectedItem().toString();
-                        btnConfirm.setEnabled(false);
-                        rescheduleAppointmentTransaction(doc, newDateSelected, newWindowSelected, () -> {
-                            Toast.makeText(this, "Rescheduled!", Toast.LENGTH_SHORT).show();
-                            dialog.dismiss();
-                            btnConfirm.setEnabled(true);
-                            loadUserAppointments();
-                        }, e -> {
-                            btnConfirm.setEnabled(true);
-                            String message = e.getMessage() != null ? e.getMessage() : e.toString();
-                            if (e instanceof FirebaseFirestoreException && ((FirebaseFirestoreException) e).getCode() == FirebaseFirestoreException.Code.ABORTED) {
-                                if (message.equals("NEW_SLOT_FULL")) {
-                                    Toast.makeText(this, "Cannot reschedule: selected slot is full.", Toast.LENGTH_LONG).show();
-                                } else {
-                                    Toast.makeText(this, "Reschedule failed: " + message, Toast.LENGTH_LONG).show();
-                                }
-                            } else {
-                                Toast.makeText(this, "Reschedule failed: " + message, Toast.LENGTH_LONG).show();
-                            }
-                            Log.e(TAG, "Reschedule failed", e);
-                        });
-                    });
-
-
-                    dialog.show();
+                    // the listener brings in synced bookings; re-render to drop or flag queued rows
+                    if (changed && !first[0]) showAppointments();
+                    first[0] = false;
                 });
-            }
+    }
 
-            // add the item to the container
-            appointmentContainer.addView(item);
+    @Override
+    public void onDelete(Appointment appt) {
+        if (appt.pending) {
+            WorkManager.getInstance(this).cancelUniqueWork("booking-" + appt.id);
+            pendingStore.remove(appt.id);
+            showAppointments();
+            return;
         }
+        new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle("Delete Appointment")
+                .setMessage("Are you sure you want to delete this appointment?")
+                .setPositiveButton("Delete", (dialog, which) -> {
+                    deleteAppointmentWithSlotUpdate(appt, () -> {
+                        Toast.makeText(this, "Appointment deleted", Toast.LENGTH_SHORT).show();
+                        // upcoming rows disappear through the listener
+                        dropFromHistory(appt.id);
+                    }, e -> {
+                        Toast.makeText(this, "Delete failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                        Log.e(TAG, "Delete failed", e);
+                    });
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
     }
 
+    @Override
+    public void onEdit(Appointment appt) {
+        if (appt.pending) return;
+        // build reschedule dialog (same pattern you used)
+        View dialogView = getLayoutInflater().inflate(R.layout.dialog_reschedule, null);
+        TextView tvCurrent = dialogView.findViewById(R.id.tvCurrentSchedule);
+        Button btnPickDate = dialogView.findViewById(R.id.btnPickDate);
+        Spinner spinnerSlots = dialogView.findViewById(R.id.spinnerTimeSlots);
+        Button btnConfirm = dialogView.findViewById(R.id.btnConfirm);
+        Button btnCancel  = dialogView.findViewById(R.id.btnCancel);
+
+        // show current schedule
+        String curDate = appt.date != null ? appt.date : "";
+        String curWindow = appt.window != null ? appt.window : "";
+        tvCurrent.setText((curDate != null ? curDate : "") + "\n" + (curWindow != null ? curWindow : ""));
+
+        final String[] selectedDate = { curDate };
+        final String[] selectedWindow = { curWindow };
+
+        // wire date picker
+        btnPickDate.setOnClickListener(x -> {
+            showDatePicker(dateSelected -> {
+                selectedDate[0] = dateSelected;
+                btnPickDate.setText(dateSelected);
+            });
+        });
 
-    private void renderAppointment(@NonNull DocumentSnapshot snap) {
-        LayoutInflater inflater = LayoutInflater.from(this);
-        View item = inflater.inflate(R.layout.item_appointment, appointmentContainer, false);
-
-        TextView tvDateWindow = item.findViewById(R.id.tvDateWindow);
-        TextView tvStatus = item.findViewById(R.id.tvStatus);
-        TextView tvPaymentMethod = item.findViewById(R.id.tvPaymentMethod);
-
-        String date = snap.contains("date") ? snap.getString("date") : "Unknown date";
-        String window = snap.contains("window") ? snap.getString("window") : "Unknown window";
-        String status = snap.contains("status") ? snap.getString("status") : "Unknown";
-        String paymentCode = snap.contains("paymentMethod") ? snap.getString("paymentMethod") : null;
-        String friendly = prettyPaymentMethod(paymentCode);
-        tvPaymentMethod.setText(friendly);
-
+        // populate spinner
+        java.util.List<String> windows = java.util.Arrays.asList(
+                "09:00-10:00","10:00-11:00","11:00-12:00","13:00-14:00");
+        ArrayAdapter<String> windowAdapter = new ArrayAdapter<>(this,
+                android.R.layout.simple_spinner_dropdown_item, windows);
+        spinnerSlots.setAdapter(windowAdapter);
+
+        // initial selection
+        if (curWindow != null) {
+            int pos = windowAdapter.getPosition(curWindow);
+            if (pos >= 0) spinnerSlots.setSelection(pos);
+        }
 
-        tvDateWindow.setText(date + " - " + window);
-        tvStatus.setText("Status: " + status);
-        tvPaymentMethod.setText("Payment: " + paymentCode);
+        AlertDialog dialog = new AlertDialog.Builder(this)
+                .setView(dialogView)
+                .create();
+
+        btnCancel.setOnClickListener(x -> dialog.dismiss());
+
+        // when you have new selectedDate/new selectedWindow ready
+        btnConfirm.setOnClickListener(x -> {
+            String newDateSelected = selectedDate[0];
+            String newWindowSelected = spinnerSlots.getSelectedItem().toString();
+            btnConfirm.setEnabled(false);
+            rescheduleAppointmentTransaction(appt, newDateSelected, newWindowSelected, () -> {
+                Toast.makeText(this, "Rescheduled!", Toast.LENGTH_SHORT).show();
+                dialog.dismiss();
+                btnConfirm.setEnabled(true);
+                dropFromHistory(appt.id);
+            }, e -> {
+                btnConfirm.setEnabled(true);
+                String message = e.getMessage() != null ? e.getMessage() : e.toString();
+                if (e instanceof FirebaseFirestoreException && ((FirebaseFirestoreException) e).getCode() == FirebaseFirestoreException.Code.ABORTED) {
+                    if (message.equals("NEW_SLOT_FULL")) {
+                        Toast.makeText(this, "Cannot reschedule: selected slot is full.", Toast.LENGTH_LONG).show();
+                    } else if (message.equals("SAME_DAY")) {
+                        Toast.makeText(this, "Cannot reschedule: you already have an appointment on that date.", Toast.LENGTH_LONG).show();
+                    } else {
+                        Toast.makeText(this, "Reschedule failed: " + message, Toast.LENGTH_LONG).show();
+                    }
+                } else {
+                    Toast.makeText(this, "Reschedule failed: " + message, Toast.LENGTH_LONG).show();
+                }
+                Log.e(TAG, "Reschedule failed", e);
+            });
+        });
 
-        appointmentContainer.removeAllViews();
-        appointmentContainer.addView(item);
+        dialog.show();
     }
 
     private void showLoading(boolean loading) {
@@ -0,0 +1,150 @@
+package com.example.sjpiicdapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Durable queue of booking requests that could not reach Firestore, persisted as JSON in
+ * SharedPreferences so they survive process death until BookingSyncWorker sends them.
+ *
+ * The request id is the deterministic appointment id (uid_date_window), so adding the same
+ * booking twice keeps a single entry and a retry can never create a second appointment.
+ */
+public class PendingBookingStore {
+    private static final String PREFS = "pending_bookings";
+    private static final String KEY_ENTRIES = "entries";
+
+    public static final String STATE_PENDING = "PENDING";
+    public static final String STATE_FAILED = "FAILED";
+
+    public static class Entry {
+        public String requestId;
+        public String uid;
+        public String date;
+        public String window;
+        public long createdAtMs;
+        public String state;
+        public String error;
+    }
+
+    /** What MyAppointmentsActivity shows for one student, and the entries the server confirmed. */
+    static final class Reconciled {
+        final List<Appointment> rows = new ArrayList<>();
+        final List<String> confirmed = new ArrayList<>();
+    }
+
+    private static final Object LOCK = new Object();
+    private final SharedPreferences prefs;
+    private final Gson gson = new Gson();
+
+    public PendingBookingStore(Context context) {
+        this.prefs = context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    public Entry add(String uid, String date, String window) {
+        Entry e = new Entry();
+        e.requestId = BookingTransaction.appointmentId(uid, date, window);
+        e.uid = uid;
+        e.date = date;
+        e.window = window;
+        e.createdAtMs = System.currentTimeMillis();
+        e.state = STATE_PENDING;
+        synchronized (LOCK) {
+            Map<String, Entry> all = load();
+            all.put(e.requestId, e);
+            save(all);
+        }
+        return e;
+    }
+
+    public Entry get(String requestId) {
+        synchronized (LOCK) {
+            return load().get(requestId);
+        }
+    }
+
+    /** Entries for one student, oldest first. */
+    public List<Entry> forUser(String uid) {
+        List<Entry> out = new ArrayList<>();
+        synchronized (LOCK) {
+            for (Entry e : load().values()) {
+                if (uid.equals(e.uid)) out.add(e);
+            }
+        }
+        return out;
+    }
+
+    public void markFailed(String requestId, String error) {
+        synchronized (LOCK) {
+            Map<String, Entry> all = load();
+            Entry e = all.get(requestId);
+            if (e == null) return;
+            e.state = STATE_FAILED;
+            e.error = error;
+            save(all);
+        }
+    }
+
+    public void remove(String requestId) {
+        synchronized (LOCK) {
+            Map<String, Entry> all = load();
+            if (all.remove(requestId) != null) save(all);
+        }
+    }
+
+    /**
+     * Matches queued entries (oldest first) against the loaded appointments. Only an active
+     * appointment under the same id, on the entry's date and window, created at or after the
+     * entry was queued confirms it (a reschedule keeps the id but moves the booking): a
+     * cancelled / rejected one is the booking being replaced (its row is hidden behind the
+     * queued one), and an older active one means the worker has not delivered this request yet.
+     */
+    static Reconciled reconcile(List<Entry> entries, List<Appointment> loaded) {
+        Map<String, Appointment> byId = new HashMap<>();
+        for (Appointment a : loaded) byId.put(a.id, a);
+
+        Reconciled out = new Reconciled();
+        Set<String> replaced = new HashSet<>();
+        for (Entry e : entries) {
+            Appointment a = byId.get(e.requestId);
+            if (a != null && a.isActive()) {
+                if (a.createdAtMs >= e.createdAtMs && e.date.equals(a.date) && e.window.equals(a.window)) {
+                    out.confirmed.add(e.requestId);
+                    continue;
+                }
+                // the loaded row already shows the booking; a failed entry stays visible so it can be dismissed
+                if (!STATE_FAILED.equals(e.state)) continue;
+            }
+            if (a != null && !a.isActive()) replaced.add(a.id);
+            // newest first, above the loaded rows
+            out.rows.add(0, Appointment.fromPending(e));
+        }
+        for (Appointment a : loaded) {
+            if (!replaced.contains(a.id)) out.rows.add(a);
+        }
+        return out;
+    }
+
+    private Map<String, Entry> load() {
+        String json = prefs.getString(KEY_ENTRIES, null);
+        if (json == null) return new LinkedHashMap<>();
+        Map<String, Entry> all = gson.fromJson(json, new TypeToken<LinkedHashMap<String, Entry>>() {}.getType());
+        return all != null ? all : new LinkedHashMap<>();
+    }
+
+    private void save(Map<String, Entry> all) {
+        // commit(): the worker may be killed right after a state change
+        prefs.edit().putString(KEY_ENTRIES, gson.toJson(all)).commit();
+    }
+}
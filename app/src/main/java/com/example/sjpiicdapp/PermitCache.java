@@ -0,0 +1,317 @@
+package com.example.sjpiicdapp;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * App-private permit image cache, so the permit shows instantly (and offline) at the gate.
+ *
+ * Images live in filesDir/permits named by the SHA-256 of their content; a small index in
+ * SharedPreferences maps each permit URL to its blob and the server's ETag / Last-Modified.
+ * show() renders the cached copy first, then revalidates with If-None-Match: a 304 costs no
+ * body, a 200 replaces the blob. Total size is capped at MAX_BYTES, least recently used first.
+ */
+public class PermitCache {
+    private static final String TAG = "PermitCache";
+    private static final String PREFS = "permit_cache";
+    private static final String KEY_ENTRIES = "entries";
+    private static final long MAX_BYTES = 10L * 1024 * 1024;
+    private static final int MAX_DECODE_EDGE_PX = 2048;
+
+    public interface Callback {
+        /** fromNetwork is false for the cached copy, true when revalidation brought new bytes. */
+        void onPermit(File file, Bitmap bitmap, boolean fromNetwork);
+
+        /** Only called when there is nothing cached to show. */
+        void onError(Exception e);
+    }
+
+    public static class Entry {
+        public String url;
+        public String blob;
+        public String etag;
+        public String lastModified;
+        public long usedAtMs;
+    }
+
+    private static final Object LOCK = new Object();
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler main = new Handler(Looper.getMainLooper());
+
+    private final Context context;
+    private final File dir;
+    private final SharedPreferences prefs;
+    private final OkHttpClient client;
+    private final Gson gson = new Gson();
+
+    public PermitCache(Context context) {
+        this.context = context.getApplicationContext();
+        this.dir = new File(this.context.getFilesDir(), "permits");
+        this.prefs = this.context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        // same pool and dispatcher as everything else, minus the generic HTTP cache:
+        // this class already keeps the bytes and does its own revalidation
+        this.client = MyApp.httpClient(this.context).newBuilder().cache(null).build();
+    }
+
+    /** Cached copy first (if any), then the revalidated one if it changed. Callbacks on main. */
+    public void show(String url, Callback callback) {
+        executor.execute(() -> {
+            File cached = cachedFile(url);
+            if (cached != null) {
+                Bitmap bmp = decode(cached);
+                if (bmp != null) main.post(() -> callback.onPermit(cached, bmp, false));
+            }
+            try {
+                File fresh = revalidate(url);
+                if (fresh != null) {
+                    Bitmap bmp = decode(fresh);
+                    if (bmp == null) throw new IOException("Permit is not a readable image");
+                    main.post(() -> callback.onPermit(fresh, bmp, true));
+                }
+            } catch (IOException e) {
+                if (cached == null) {
+                    main.post(() -> callback.onError(e));
+                } else {
+                    // offline or server trouble: the cached permit is still valid to show
+                    Log.w(TAG, "Revalidation failed, keeping cached permit", e);
+                }
+            }
+        });
+    }
+
+    @Nullable
+    public File cachedFile(String url) {
+        synchronized (LOCK) {
+            Map<String, Entry> all = load();
+            Entry e = all.get(url);
+            if (e == null) return null;
+            File f = new File(dir, e.blob);
+            if (!f.exists()) {
+                all.remove(url);
+                save(all);
+                return null;
+            }
+            e.usedAtMs = System.currentTimeMillis();
+            save(all);
+            return f;
+        }
+    }
+
+    /** Conditional GET; returns the new blob, or null when the server answered 304. */
+    @Nullable
+    private File revalidate(String url) throws IOException {
+        Entry known;
+        synchronized (LOCK) {
+            known = load().get(url);
+        }
+        Request.Builder rb = new Request.Builder().url(url);
+        if (known != null && new File(dir, known.blob).exists()) {
+            if (known.etag != null) rb.header("If-None-Match", known.etag);
+            if (known.lastModified != null) rb.header("If-Modified-Since", known.lastModified);
+        }
+
+        try (Response response = client.newCall(rb.build()).execute()) {
+            if (response.code() == 304) return null;
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) throw new IOException("Permit download failed: " + response.code());
+
+            if (!dir.exists() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+            File tmp = new File(dir, "download.tmp");
+            String hash;
+            try (InputStream in = body.byteStream(); OutputStream out = new FileOutputStream(tmp)) {
+                hash = copyHashing(in, out);
+            }
+            File blob = new File(dir, hash + ".img");
+            if (blob.exists()) {
+                // same bytes under a new URL or ETag: nothing new to store
+                //noinspection ResultOfMethodCallIgnored
+                tmp.delete();
+            } else if (!tmp.renameTo(blob)) {
+                throw new IOException("Cannot store permit");
+            }
+
+            Entry e = new Entry();
+            e.url = url;
+            e.blob = blob.getName();
+            e.etag = response.header("ETag");
+            e.lastModified = response.header("Last-Modified");
+            e.usedAtMs = System.currentTimeMillis();
+            synchronized (LOCK) {
+                Map<String, Entry> all = load();
+                all.put(url, e);
+                evict(all);
+                save(all);
+            }
+            // server without validators re-sent identical bytes: nothing to re-render
+            return known != null && blob.getName().equals(known.blob) ? null : blob;
+        }
+    }
+
+    private static String copyHashing(InputStream in, OutputStream out) throws IOException {
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buf = new byte[16384];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            sha.update(buf, 0, n);
+            out.write(buf, 0, n);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : sha.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    // Drops unreferenced blobs, then least recently used entries until under MAX_BYTES.
+    private void evict(Map<String, Entry> all) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        Set<String> referenced = new HashSet<>();
+        for (Entry e : all.values()) referenced.add(e.blob);
+        long total = 0;
+        for (File f : files) {
+            if (f.getName().endsWith(".tmp")) continue;
+            if (!referenced.contains(f.getName())) {
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+            } else {
+                total += f.length();
+            }
+        }
+
+        List<Entry> byAge = new ArrayList<>(all.values());
+        Collections.sort(byAge, (a, b) -> Long.compare(a.usedAtMs, b.usedAtMs));
+        // always keep the newest entry, even if it alone exceeds the cap
+        for (int i = 0; i < byAge.size() - 1 && total > MAX_BYTES; i++) {
+            Entry e = byAge.get(i);
+            all.remove(e.url);
+            if (!isReferenced(all, e.blob)) {
+                File f = new File(dir, e.blob);
+                total -= f.length();
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+            }
+        }
+    }
+
+    private static boolean isReferenced(Map<String, Entry> all, String blob) {
+        for (Entry o : all.values()) {
+            if (o.blob.equals(blob)) return true;
+        }
+        return false;
+    }
+
+    @Nullable
+    private static Bitmap decode(File f) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(f.getPath(), bounds);
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inSampleSize = PermitImageUploader.sampleSizeFor(bounds.outWidth, bounds.outHeight, MAX_DECODE_EDGE_PX);
+        return BitmapFactory.decodeFile(f.getPath(), opts);
+    }
+
+    public interface ExportCallback {
+        void onExported(String path);
+
+        void onError(Exception e);
+    }
+
+    /** exportToDownloads on the cache's background thread; callbacks on main. */
+    public void export(File source, String displayName, ExportCallback callback) {
+        executor.execute(() -> {
+            try {
+                String path = exportToDownloads(context, source, displayName);
+                main.post(() -> callback.onExported(path));
+            } catch (IOException e) {
+                main.post(() -> callback.onError(e));
+            }
+        });
+    }
+
+    /**
+     * Copies a cached permit into public Downloads. On Android 10+ this goes through
+     * MediaStore and needs no permission; below that the caller must hold WRITE_EXTERNAL_STORAGE.
+     */
+    public static String exportToDownloads(Context context, File source, String displayName) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            ContentResolver resolver = context.getContentResolver();
+            ContentValues values = new ContentValues();
+            values.put(MediaStore.Downloads.DISPLAY_NAME, displayName);
+            values.put(MediaStore.Downloads.MIME_TYPE, "image/jpeg");
+            Uri uri = resolver.insert(MediaStore.Downloads.EXTERNAL_CONTENT_URI, values);
+            if (uri == null) throw new IOException("Cannot create download entry");
+            try (InputStream in = new FileInputStream(source); OutputStream out = resolver.openOutputStream(uri)) {
+                if (out == null) throw new IOException("Cannot open download entry");
+                copy(in, out);
+            }
+            return Environment.DIRECTORY_DOWNLOADS + "/" + displayName;
+        }
+        File target = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS), displayName);
+        try (InputStream in = new FileInputStream(source); OutputStream out = new FileOutputStream(target)) {
+            copy(in, out);
+        }
+        return target.getAbsolutePath();
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buf = new byte[16384];
+        int n;
+        while ((n = in.read(buf)) != -1) out.write(buf, 0, n);
+    }
+
+    private Map<String, Entry> load() {
+        String json = prefs.getString(KEY_ENTRIES, null);
+        if (json == null) return new LinkedHashMap<>();
+        Map<String, Entry> all = gson.fromJson(json, new TypeToken<LinkedHashMap<String, Entry>>() {}.getType());
+        return all != null ? all : new LinkedHashMap<>();
+    }
+
+    private void save(Map<String, Entry> all) {
+        prefs.edit().putString(KEY_ENTRIES, gson.toJson(all)).apply();
+    }
+}
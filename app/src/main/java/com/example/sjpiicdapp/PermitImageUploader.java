@@ -0,0 +1,208 @@
+package com.example.sjpiicdapp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Permit photo upload off the main thread: decode with inSampleSize (never the full 12 MP
+ * bitmap), scale to at most MAX_EDGE_PX, re-encode as JPEG into the cache dir, then stream that
+ * file to Cloudinary in 8 KB chunks while reporting progress. Callbacks run on the main thread.
+ */
+public final class PermitImageUploader {
+
+    public interface Listener {
+        void onProgress(int percent);
+
+        void onSuccess(String secureUrl);
+
+        void onError(Exception e);
+    }
+
+    static final int MAX_EDGE_PX = 1600;
+    static final int JPEG_QUALITY = 80;
+    private static final int CHUNK_BYTES = 8192;
+    private static final MediaType JPEG = MediaType.parse("image/jpeg");
+
+    // one upload at a time is plenty for the admin screen
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler main = new Handler(Looper.getMainLooper());
+
+    private PermitImageUploader() {
+    }
+
+    public static void upload(Context context, OkHttpClient client, String uploadUrl, String uploadPreset,
+                              Uri source, Listener listener) {
+        final Context app = context.getApplicationContext();
+        executor.execute(() -> {
+            File encoded = null;
+            try {
+                encoded = encodeBounded(app, source);
+                MultipartBody body = new MultipartBody.Builder()
+                        .setType(MultipartBody.FORM)
+                        .addFormDataPart("file", "permit.jpg",
+                                new ProgressFileBody(encoded, p -> main.post(() -> listener.onProgress(p))))
+                        .addFormDataPart("upload_preset", uploadPreset)
+                        .build();
+                Request request = new Request.Builder().url(uploadUrl).post(body).build();
+
+                try (Response response = client.newCall(request).execute()) {
+                    String text = response.body() != null ? response.body().string() : null;
+                    if (!response.isSuccessful() || text == null) {
+                        throw new IOException("Upload failed: " + response.code() + " body: " + text);
+                    }
+                    String secureUrl = parseSecureUrl(text);
+                    if (secureUrl == null) throw new IOException("No secure_url in response: " + text);
+                    main.post(() -> listener.onSuccess(secureUrl));
+                }
+            } catch (Exception e) {
+                main.post(() -> listener.onError(e));
+            } finally {
+                if (encoded != null && !encoded.delete()) encoded.deleteOnExit();
+            }
+        });
+    }
+
+    /** Decodes at most ~2x MAX_EDGE_PX per side, then scales and rotates to the final size. */
+    static File encodeBounded(Context context, Uri source) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = open(context, source)) {
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) throw new IOException("Not an image");
+
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inSampleSize = sampleSizeFor(bounds.outWidth, bounds.outHeight, MAX_EDGE_PX);
+        Bitmap bitmap;
+        try (InputStream in = open(context, source)) {
+            bitmap = BitmapFactory.decodeStream(in, null, opts);
+        }
+        if (bitmap == null) throw new IOException("Could not decode image");
+
+        int degrees = exifRotation(context, source);
+        float scale = Math.min(1f, (float) MAX_EDGE_PX / Math.max(bitmap.getWidth(), bitmap.getHeight()));
+        if (scale < 1f || degrees != 0) {
+            Matrix m = new Matrix();
+            m.postScale(scale, scale);
+            m.postRotate(degrees);
+            Bitmap scaled = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), m, true);
+            if (scaled != bitmap) bitmap.recycle();
+            bitmap = scaled;
+        }
+
+        File out = new File(context.getCacheDir(), "permit-upload-" + System.currentTimeMillis() + ".jpg");
+        try (OutputStream os = new FileOutputStream(out)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, os);
+        } finally {
+            bitmap.recycle();
+        }
+        return out;
+    }
+
+    /** Largest power of two that keeps the longer edge at or above maxEdge. */
+    static int sampleSizeFor(int width, int height, int maxEdge) {
+        int longest = Math.max(width, height);
+        int sample = 1;
+        while (longest / (sample * 2) >= maxEdge) sample *= 2;
+        return sample;
+    }
+
+    private static int exifRotation(Context context, Uri source) {
+        try (InputStream in = open(context, source)) {
+            int o = new ExifInterface(in).getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+            if (o == ExifInterface.ORIENTATION_ROTATE_90) return 90;
+            if (o == ExifInterface.ORIENTATION_ROTATE_180) return 180;
+            if (o == ExifInterface.ORIENTATION_ROTATE_270) return 270;
+        } catch (IOException ignored) {
+            // no EXIF (e.g. PNG): keep as decoded
+        }
+        return 0;
+    }
+
+    private static InputStream open(Context context, Uri source) throws IOException {
+        InputStream in = context.getContentResolver().openInputStream(source);
+        if (in == null) throw new IOException("Cannot open " + source);
+        return in;
+    }
+
+    // crude extraction - use proper JSON parsing if you like (Gson)
+    static String parseSecureUrl(String json) {
+        String key = "\"secure_url\":\"";
+        int idx = json.indexOf(key);
+        if (idx < 0) return null;
+        int start = idx + key.length();
+        int end = json.indexOf('"', start);
+        if (end < 0) return null;
+        return json.substring(start, end).replace("\\/", "/");
+    }
+
+    interface Progress {
+        void update(int percent);
+    }
+
+    /** Streams a file in chunks; reports whole-percent steps only. */
+    static final class ProgressFileBody extends RequestBody {
+        private final File file;
+        private final Progress progress;
+
+        ProgressFileBody(File file, Progress progress) {
+            this.file = file;
+            this.progress = progress;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return JPEG;
+        }
+
+        @Override
+        public long contentLength() {
+            return file.length();
+        }
+
+        @Override
+        public void writeTo(@NonNull BufferedSink sink) throws IOException {
+            long total = contentLength();
+            long sent = 0;
+            int lastPercent = -1;
+            try (Source source = Okio.source(file)) {
+                long read;
+                while ((read = source.read(sink.getBuffer(), CHUNK_BYTES)) != -1) {
+                    sink.flush();
+                    sent += read;
+                    int percent = total > 0 ? (int) (sent * 100 / total) : 100;
+                    if (percent != lastPercent) {
+                        lastPercent = percent;
+                        progress.update(percent);
+                    }
+                }
+            }
+        }
+    }
+}
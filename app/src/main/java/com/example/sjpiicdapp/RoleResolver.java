@@ -0,0 +1,121 @@
+package com.example.sjpiicdapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.auth.GetTokenResult;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+/**
+ * Works out the signed-in user's role without a blocking users/{uid} read.
+ *
+ * The role comes from the `role` custom claim in the ID token (kept in sync with
+ * users/{uid}.role by the onUserRoleChanged / assignRole functions). getIdToken(false) answers
+ * from the cached token and only goes to the network once that token has expired. The last
+ * resolved role per uid is also kept in SharedPreferences so a cold start can route at once
+ * and let the token catch up in the background. Accounts whose token has no role claim yet
+ * fall back to the user doc, as before.
+ */
+public final class RoleResolver {
+    private static final String TAG = "RoleResolver";
+    private static final String PREFS = "role_cache";
+
+    public interface Callback {
+        /** role may be null when neither the token nor the user doc has one. */
+        void onRole(@Nullable String role);
+
+        void onError(Exception e);
+    }
+
+    private RoleResolver() {
+    }
+
+    /**
+     * For cold-start resume of a saved session (SplashActivity) only: the cached role answers
+     * immediately and the token is checked behind it; a changed role is stored for the next
+     * launch. Without a cached role this is resolveFresh. Every other caller uses resolveFresh.
+     */
+    public static void resolve(Context context, FirebaseUser user, Callback callback) {
+        final Context app = context.getApplicationContext();
+        String cached = cachedRole(app, user.getUid());
+        if (cached == null) {
+            resolveFresh(app, user, null, callback);
+            return;
+        }
+        callback.onRole(cached);
+        user.getIdToken(false)
+                .addOnSuccessListener(result -> {
+                    String role = claimRole(result);
+                    if (role != null && !role.equals(cached)) {
+                        Log.i(TAG, "Role changed to " + role + ", used from next launch");
+                        store(app, user.getUid(), role);
+                    }
+                })
+                .addOnFailureListener(e -> Log.w(TAG, "Background token refresh failed", e));
+    }
+
+    /**
+     * Right after sign-in the token is new, so its claim is current; the cache is only updated,
+     * never read.
+     * If the claim disagrees with expectedRole the user doc decides: the claim trails a
+     * registration by the few seconds the onUserRoleChanged trigger takes.
+     */
+    public static void resolveFresh(Context context, FirebaseUser user, @Nullable String expectedRole,
+                                    Callback callback) {
+        final Context app = context.getApplicationContext();
+        user.getIdToken(false)
+                .addOnSuccessListener(result -> {
+                    String role = claimRole(result);
+                    if (role != null && (expectedRole == null || expectedRole.equals(role))) {
+                        store(app, user.getUid(), role);
+                        callback.onRole(role);
+                    } else {
+                        readUserDoc(app, user.getUid(), callback);
+                    }
+                })
+                .addOnFailureListener(e -> {
+                    Log.w(TAG, "getIdToken failed, reading user doc", e);
+                    readUserDoc(app, user.getUid(), callback);
+                });
+    }
+
+    /** Drop the cached role, e.g. on sign-out from a shared device. */
+    public static void forget(Context context, String uid) {
+        prefs(context).edit().remove(uid).apply();
+    }
+
+    @Nullable
+    static String claimRole(GetTokenResult result) {
+        Object role = result != null ? result.getClaims().get("role") : null;
+        return role instanceof String ? (String) role : null;
+    }
+
+    // accounts created before the role claim was kept in sync, or a claim still catching up
+    private static void readUserDoc(Context app, String uid, Callback callback) {
+        FirebaseFirestore.getInstance().collection("users").document(uid)
+                .get()
+                .addOnSuccessListener(doc -> {
+                    String role = doc.exists() ? doc.getString("role") : null;
+                    if (role != null) store(app, uid, role);
+                    callback.onRole(role);
+                })
+                .addOnFailureListener(callback::onError);
+    }
+
+    @Nullable
+    private static String cachedRole(Context context, String uid) {
+        return prefs(context).getString(uid, null);
+    }
+
+    private static void store(Context app, String uid, String role) {
+        prefs(app).edit().putString(uid, role).apply();
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.sjpiicdapp;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Client half of the student search tokens. Must split text exactly like
+ * functions/searchKeys.js, which writes users/{uid}.searchKeys.
+ */
+public final class SearchKeys {
+    /** Same as MAX_PREFIX in searchKeys.js; longer words are matched on their first 15 chars. */
+    public static final int MAX_PREFIX = 15;
+
+    private SearchKeys() {
+    }
+
+    public static String normalize(String s) {
+        if (s == null) return "";
+        return Normalizer.normalize(s, Normalizer.Form.NFD)
+                .replaceAll("[\\u0300-\\u036f]", "")
+                .toLowerCase(Locale.ROOT);
+    }
+
+    /** Query words, each cut to MAX_PREFIX so it can match a stored prefix. */
+    public static List<String> queryTokens(String query) {
+        List<String> out = new ArrayList<>();
+        for (String w : normalize(query).split("[^a-z0-9]+")) {
+            if (w.isEmpty()) continue;
+            out.add(w.length() > MAX_PREFIX ? w.substring(0, MAX_PREFIX) : w);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.sjpiicdapp;
+
+import android.util.Log;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remaining seats per time window, keyed by date, fed by one snapshot listener on
+ * slots (where date == d) per cached date.
+ *
+ * Listeners stay attached while their date is in the cache, so flipping back to a date
+ * that was already picked is served from memory with no new reads; the least recently
+ * used date is dropped (and its listener removed) once more than maxDates are watched.
+ */
+public class SlotAvailabilityCache {
+    private static final String TAG = "SlotAvailabilityCache";
+
+    public interface Listener {
+        /** remaining: window -> seats left; windows with no slot doc yet are absent (= full capacity). */
+        void onAvailability(String date, Map<String, Long> remaining);
+    }
+
+    private static class Entry {
+        ListenerRegistration registration;
+        Map<String, Long> remaining; // null until the first snapshot arrives
+    }
+
+    private final FirebaseFirestore db;
+    private final int maxDates;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(8, 0.75f, true);
+
+    private String currentDate;
+    private Listener listener;
+
+    public SlotAvailabilityCache(FirebaseFirestore db, int maxDates) {
+        this.db = db;
+        this.maxDates = maxDates;
+    }
+
+    /** Makes {@code date} the current date; the listener fires now if cached and on every change. */
+    public void watch(String date, Listener l) {
+        currentDate = date;
+        listener = l;
+
+        Entry entry = entries.get(date);
+        if (entry != null) {
+            if (entry.remaining != null) l.onAvailability(date, entry.remaining);
+            return;
+        }
+
+        final Entry fresh = new Entry();
+        entries.put(date, fresh);
+        fresh.registration = db.collection("slots")
+                .whereEqualTo("date", date)
+                .addSnapshotListener((qs, e) -> {
+                    if (e != null) {
+                        Log.w(TAG, "slots listener failed for " + date, e);
+                        return;
+                    }
+                    if (qs == null) return;
+
+                    Map<String, Long> remaining = new HashMap<>();
+                    for (DocumentSnapshot d : qs.getDocuments()) {
+                        String window = d.getString("window");
+                        if (window == null) continue;
+                        Long booked = d.getLong("bookedCount");
+                        Long capacity = d.getLong("capacity");
+                        long cap = capacity != null ? capacity : SlotShards.DEFAULT_CAPACITY;
+                        remaining.put(window, Math.max(0L, cap - (booked != null ? booked : 0L)));
+                    }
+                    fresh.remaining = remaining;
+
+                    if (date.equals(currentDate) && listener != null) {
+                        listener.onAvailability(date, remaining);
+                    }
+                });
+
+        evictIfNeeded();
+    }
+
+    /** Last known seats left for a window, or -1 when the date has not loaded yet. */
+    public long remaining(String date, String window) {
+        Entry entry = entries.get(date);
+        if (entry == null || entry.remaining == null) return -1;
+        Long left = entry.remaining.get(window);
+        return left != null ? left : SlotShards.DEFAULT_CAPACITY;
+    }
+
+    public void clear() {
+        for (Entry entry : entries.values()) {
+            if (entry.registration != null) entry.registration.remove();
+        }
+        entries.clear();
+        listener = null;
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > maxDates && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            if (eldest.getKey().equals(currentDate)) continue;
+            if (eldest.getValue().registration != null) eldest.getValue().registration.remove();
+            it.remove();
+        }
+    }
+}
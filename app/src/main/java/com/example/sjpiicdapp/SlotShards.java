@@ -0,0 +1,144 @@
+package com.example.sjpiicdapp;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Transaction;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sharded capacity counter for slots/{date}_{window}.
+ *
+ * Bookings no longer rewrite bookedCount on the slot document itself. Each slot owns
+ * SHARD_COUNT documents under slots/{slotId}/shards/{index}, each with its own quota, and a
+ * booking increments one randomly chosen shard. The parent slot's bookedCount is kept as a
+ * read-only mirror by the onSlotShardWritten cloud function.
+ *
+ * Shards are seeded all at once, by the first booking that finds one without the "seeded"
+ * flag (including shards written before seeding existed): their quotas then split whatever
+ * the parent's capacity minus its bookedCount leaves, so an admin-set capacity and seats
+ * booked before sharding are both respected.
+ *
+ * Keep SHARD_COUNT and DEFAULT_CAPACITY in sync with SLOT_SHARD_COUNT and
+ * DEFAULT_SLOT_CAPACITY in sjpiicd_cloudbase_functions/slotShards.js, and with seededQuota()
+ * in firestore.rules, which only lets a client seed a shard with the quota computed here.
+ */
+public final class SlotShards {
+    public static final int SHARD_COUNT = 10;
+    public static final long DEFAULT_CAPACITY = 400L;
+
+    private SlotShards() {
+    }
+
+    public static String slotId(String date, String window) {
+        return date + "_" + window;
+    }
+
+    public static DocumentReference shardRef(FirebaseFirestore db, String slotId, int index) {
+        return db.collection("slots").document(slotId)
+                .collection("shards").document(String.valueOf(index));
+    }
+
+    /**
+     * Even split of capacity across shards; the first (capacity % SHARD_COUNT) shards take
+     * one extra seat so the quotas always add up to the slot capacity.
+     */
+    public static long defaultQuota(int index, long capacity) {
+        long base = capacity / SHARD_COUNT;
+        return base + (index < capacity % SHARD_COUNT ? 1 : 0);
+    }
+
+    /**
+     * Claims one seat inside a transaction and returns the shard index that was used.
+     * Starts at a random shard and only reads further shards when the chosen one is at
+     * its quota, so under normal load a booking touches a single counter document.
+     * Call it after the caller's own tx.get() reads: it writes the shard before returning.
+     * Throws RuntimeException("SLOT_FULL"), which the transaction runner does not retry.
+     */
+    public static int claimSeat(Transaction tx, FirebaseFirestore db, String date, String window)
+            throws FirebaseFirestoreException {
+        final String slotId = slotId(date, window);
+        final int start = ThreadLocalRandom.current().nextInt(SHARD_COUNT);
+
+        DocumentSnapshot first = tx.get(shardRef(db, slotId, start));
+        if (!isSeeded(first)) return seedAndClaim(tx, db, date, window, start, first);
+
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            int index = (start + i) % SHARD_COUNT;
+            DocumentReference ref = shardRef(db, slotId, index);
+            DocumentSnapshot snap = i == 0 ? first : tx.get(ref);
+            // seeding writes every shard together, so this only skips a shard deleted by hand
+            if (!isSeeded(snap)) continue;
+
+            long booked = longOr(snap, "bookedCount", 0);
+            long quota = longOr(snap, "quota", 0);
+            if (booked >= quota) continue;
+
+            tx.update(ref, "bookedCount", booked + 1, "updatedAt", Timestamp.now());
+            return index;
+        }
+
+        throw new RuntimeException("SLOT_FULL");
+    }
+
+    /**
+     * First booking on a slot whose shards are not seeded: reads the parent and every shard,
+     * sets each quota to its current bookedCount plus an even share of what is left of the
+     * parent's capacity, and takes the seat in the same write. Happens once per slot.
+     */
+    private static int seedAndClaim(Transaction tx, FirebaseFirestore db, String date, String window,
+                                    int start, DocumentSnapshot first) throws FirebaseFirestoreException {
+        final String slotId = slotId(date, window);
+        DocumentSnapshot slot = tx.get(db.collection("slots").document(slotId));
+
+        long[] booked = new long[SHARD_COUNT];
+        long shardBooked = 0;
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            DocumentSnapshot snap = i == start ? first : tx.get(shardRef(db, slotId, i));
+            booked[i] = longOr(snap, "bookedCount", 0);
+            shardBooked += booked[i];
+        }
+
+        long capacity = longOr(slot, "capacity", DEFAULT_CAPACITY);
+        // the parent mirror also holds seats booked before sharding, so trust it when it is ahead
+        long totalBooked = Math.max(shardBooked, longOr(slot, "bookedCount", 0));
+        long remaining = Math.max(0, capacity - totalBooked);
+
+        long[] quota = new long[SHARD_COUNT];
+        int claimed = -1;
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            int index = (start + i) % SHARD_COUNT;
+            quota[index] = booked[index] + defaultQuota(index, remaining);
+            if (claimed < 0 && booked[index] < quota[index]) claimed = index;
+        }
+        if (claimed < 0) throw new RuntimeException("SLOT_FULL");
+
+        Timestamp now = Timestamp.now();
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            Map<String, Object> shard = new HashMap<>();
+            shard.put("date", date);
+            shard.put("window", window);
+            shard.put("quota", quota[i]);
+            shard.put("bookedCount", booked[i] + (i == claimed ? 1 : 0));
+            shard.put("seeded", true);
+            shard.put("updatedAt", now);
+            tx.set(shardRef(db, slotId, i), shard, SetOptions.merge());
+        }
+        return claimed;
+    }
+
+    private static boolean isSeeded(DocumentSnapshot snap) {
+        return snap.exists() && Boolean.TRUE.equals(snap.getBoolean("seeded"));
+    }
+
+    private static long longOr(DocumentSnapshot snap, String field, long fallback) {
+        Long v = snap.exists() ? snap.getLong(field) : null;
+        return v != null ? v : fallback;
+    }
+}
@@ -4,34 +4,122 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.util.Log;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
 /**
- * Simple splash screen activity.
- * Shows activity_splash.xml then navigates to HomeActivity after a short delay.
+ * Splash screen that stays up only while startup work is still running, at most MAX_WAIT_MS.
+ *
+ * With a saved session the role (RoleResolver, normally from cache) and the first screens'
+ * data are fetched in parallel, and the user lands on their dashboard directly; the Firestore
+ * cache is then warm for My Appointments and E-Clearance. Without a session, or if the role
+ * is not known in time, it goes to HomeActivity as before. Steps are marked on StartupTrace.
  */
 public class SplashActivity extends AppCompatActivity {
-    private static final long SPLASH_DELAY_MS = 1000L; // 1 second, change if you want longer
+    private static final String TAG = "SplashActivity";
+    private static final long MAX_WAIT_MS = 2500L;
+    /** Same page size MyAppointmentsActivity listens with. */
+    private static final int WARM_APPOINTMENTS = 20;
+
     private final Handler handler = new Handler(Looper.getMainLooper());
-    private final Runnable goHome = () -> {
-        startActivity(new Intent(SplashActivity.this, HomeActivity.class));
-        finish();
+    private final Runnable timeout = () -> {
+        Log.w(TAG, "Startup not ready after " + MAX_WAIT_MS + "ms, continuing");
+        StartupTrace.mark("splashTimeout");
+        proceed();
     };
 
+    private String role;
+    private boolean roleDone;
+    private boolean warmDone;
+    private boolean navigated;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_splash);
+        StartupTrace.mark("splash");
+
+        // the session is restored from disk when FirebaseAuth is first used
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        StartupTrace.mark("session");
+        if (user == null) {
+            proceed();
+            return;
+        }
 
-        // Post delayed navigation to home screen
-        handler.postDelayed(goHome, SPLASH_DELAY_MS);
+        handler.postDelayed(timeout, MAX_WAIT_MS);
+        RoleResolver.resolve(this, user, new RoleResolver.Callback() {
+            @Override
+            public void onRole(String r) {
+                StartupTrace.mark("role");
+                role = r;
+                roleDone = true;
+                maybeProceed();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.w(TAG, "Role not resolved during startup", e);
+                roleDone = true;
+                maybeProceed();
+            }
+        });
+        // Firestore (and App Check before it) is set up in the background by MyApp's startup
+        MyApp.startup(this).whenReady(MyApp.FIRESTORE, () -> warmFirstScreens(user).addOnCompleteListener(t -> {
+            StartupTrace.mark("warm");
+            warmDone = true;
+            maybeProceed();
+        }));
+    }
+
+    // Reads the student screens' first queries into the Firestore cache; failures only mean a
+    // cold screen later, so they are not surfaced here.
+    private Task<?> warmFirstScreens(FirebaseUser user) {
+        FirebaseFirestore db = FirebaseFirestore.getInstance();
+        String today = new SimpleDateFormat("yyyy-MM-dd", Locale.US).format(new java.util.Date());
+        return Tasks.whenAllComplete(
+                db.collection("appointments").whereEqualTo("userId", user.getUid())
+                        .whereGreaterThanOrEqualTo("date", today).orderBy("date")
+                        .limit(WARM_APPOINTMENTS).get(),
+                db.collection("clearances").document(user.getUid()).get());
+    }
+
+    private void maybeProceed() {
+        // admins do not open the student screens that were warmed, so only the role gates them
+        if (roleDone && (warmDone || "admin".equals(role))) proceed();
+    }
+
+    private void proceed() {
+        if (navigated || isFinishing()) return;
+        navigated = true;
+        handler.removeCallbacks(timeout);
+
+        Class<?> next;
+        if (FirebaseAuth.getInstance().getCurrentUser() == null || !roleDone || role == null) {
+            next = HomeActivity.class;
+        } else if ("admin".equals(role)) {
+            next = AdminDashboardActivity.class;
+        } else {
+            next = DashboardActivity.class;
+        }
+        startActivity(new Intent(this, next));
+        finish();
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
         // remove callbacks to avoid leaking activity if it's destroyed early
-        handler.removeCallbacks(goHome);
+        handler.removeCallbacks(timeout);
     }
 }
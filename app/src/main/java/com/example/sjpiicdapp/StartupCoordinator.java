@@ -0,0 +1,141 @@
+package com.example.sjpiicdapp;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Application start as an explicit dependency graph. Each initializer is either on the main
+ * thread (run synchronously by start(), so before the first activity) or in the background
+ * (one worker thread, in the order added). A node may only depend on nodes added before it,
+ * and a main-thread node only on other main-thread nodes, so that order always satisfies the
+ * graph. Each run is timed into StartupTrace; screens that need a background node wait with
+ * whenReady().
+ */
+public final class StartupCoordinator {
+    private static final String TAG = "StartupCoordinator";
+
+    public interface Initializer {
+        void run(Context app);
+    }
+
+    private static final class Node {
+        final String name;
+        final boolean onMain;
+        final Initializer initializer;
+        boolean done;
+        /** The thread it actually ran on; null until it ran. */
+        Boolean ranOnMain;
+        final List<Runnable> waiters = new ArrayList<>();
+
+        Node(String name, boolean onMain, Initializer initializer) {
+            this.name = name;
+            this.onMain = onMain;
+            this.initializer = initializer;
+        }
+    }
+
+    private final Context app;
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+    private final ExecutorService background = Executors.newSingleThreadExecutor();
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private boolean started;
+
+    public StartupCoordinator(Context context) {
+        this.app = context.getApplicationContext();
+    }
+
+    public StartupCoordinator onMain(String name, Initializer initializer, String... dependsOn) {
+        return add(name, true, initializer, dependsOn);
+    }
+
+    public StartupCoordinator inBackground(String name, Initializer initializer, String... dependsOn) {
+        return add(name, false, initializer, dependsOn);
+    }
+
+    private synchronized StartupCoordinator add(String name, boolean onMain, Initializer initializer, String... dependsOn) {
+        if (started) throw new IllegalStateException("Cannot add " + name + " after start()");
+        if (nodes.containsKey(name)) throw new IllegalArgumentException("Duplicate initializer " + name);
+        for (String dep : dependsOn) {
+            Node d = nodes.get(dep);
+            if (d == null) throw new IllegalArgumentException(name + " depends on " + dep + ", which is not added yet");
+            if (onMain && !d.onMain) throw new IllegalArgumentException(name + " runs on main but " + dep + " does not");
+        }
+        nodes.put(name, new Node(name, onMain, initializer));
+        Log.d(TAG, name + (onMain ? " (main)" : " (background)") + " after " + Arrays.toString(dependsOn));
+        return this;
+    }
+
+    /** Runs the main-thread nodes now and queues the rest. Call once, from Application.onCreate. */
+    public void start() {
+        List<Node> order;
+        synchronized (this) {
+            if (started) return;
+            started = true;
+            order = new ArrayList<>(nodes.values());
+        }
+        for (Node n : order) {
+            if (n.onMain) run(n);
+        }
+        for (Node n : order) {
+            if (!n.onMain) background.execute(() -> run(n));
+        }
+    }
+
+    /** Runs {@code then} on the main thread once {@code name} has run (or failed); unknown names run at once. */
+    public void whenReady(String name, Runnable then) {
+        synchronized (this) {
+            Node n = nodes.get(name);
+            if (n != null && !n.done) {
+                n.waiters.add(then);
+                return;
+            }
+        }
+        main.post(then);
+    }
+
+    /** Whether {@code name} has run (or failed). */
+    synchronized boolean isDone(String name) {
+        Node n = nodes.get(name);
+        return n != null && n.done;
+    }
+
+    /** True if {@code name} ran on the main thread, false if in the background, null if not yet. */
+    synchronized Boolean ranOnMainThread(String name) {
+        Node n = nodes.get(name);
+        return n != null ? n.ranOnMain : null;
+    }
+
+    private void run(Node n) {
+        boolean onMainThread = Looper.myLooper() == Looper.getMainLooper();
+        long start = SystemClock.elapsedRealtime();
+        boolean ok = true;
+        try {
+            n.initializer.run(app);
+        } catch (RuntimeException e) {
+            // a failed initializer must not take the app down; its dependents just run without it
+            ok = false;
+            Log.e(TAG, "Initializer " + n.name + " failed", e);
+        }
+        StartupTrace.recordInit(n.name, SystemClock.elapsedRealtime() - start, onMainThread, ok);
+
+        List<Runnable> waiters;
+        synchronized (this) {
+            n.ranOnMain = onMainThread;
+            n.done = true;
+            waiters = new ArrayList<>(n.waiters);
+            n.waiters.clear();
+        }
+        for (Runnable w : waiters) main.post(w);
+    }
+}
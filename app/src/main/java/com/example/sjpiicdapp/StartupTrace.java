@@ -0,0 +1,84 @@
+package com.example.sjpiicdapp;
+
+import android.app.Activity;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Cold-start timeline, in ms since the process was forked (so Application and class loading are
+ * included). Steps call mark(); the first screen the user can act on calls firstScreen(), which
+ * waits for its first frame, logs "startup ... [step=..ms, ...]" under the "Timing" tag (like
+ * StepTimer) and reports the activity fully drawn. Marks after that are ignored: this only
+ * describes the cold start. StartupCoordinator adds one line per initializer. Shown on the
+ * debug TransactionStatsActivity.
+ */
+public final class StartupTrace {
+    private static final String LOG_TAG = "Timing";
+
+    private static final Map<String, Long> marks = new LinkedHashMap<>();
+    private static final List<String> initializers = new ArrayList<>();
+    private static String outcome;
+
+    private StartupTrace() {
+    }
+
+    public static long sinceProcessStart() {
+        return SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
+    }
+
+    /** First occurrence wins, so a step can be marked from whichever path gets there first. */
+    public static synchronized void mark(String step) {
+        if (outcome != null || marks.containsKey(step)) return;
+        marks.put(step, sinceProcessStart());
+    }
+
+    /** One StartupCoordinator initializer; kept even when it finishes after the first screen. */
+    public static synchronized void recordInit(String name, long ms, boolean onMain, boolean ok) {
+        String line = String.format(Locale.US, "%s %dms on %s%s", name, ms, onMain ? "main" : "background", ok ? "" : " FAILED");
+        initializers.add(line);
+        Log.i(LOG_TAG, "startup init " + line);
+    }
+
+    /** Call from onCreate of a screen that ends the start; only the first one counts. */
+    public static void firstScreen(Activity activity, String screen) {
+        synchronized (StartupTrace.class) {
+            if (outcome != null) return;
+        }
+        // posted runnables run after the pending traversal, i.e. once the first frame is laid out
+        activity.getWindow().getDecorView().post(() -> {
+            synchronized (StartupTrace.class) {
+                if (outcome != null) return;
+                marks.put(screen, sinceProcessStart());
+                outcome = screen;
+                Log.i(LOG_TAG, "startup " + screen + " " + summary());
+            }
+            activity.reportFullyDrawn();
+        });
+    }
+
+    public static synchronized String report() {
+        if (marks.isEmpty() && initializers.isEmpty()) return "";
+        StringBuilder sb = new StringBuilder();
+        sb.append("  ").append(outcome != null ? outcome : "in progress").append(' ').append(summary()).append('\n');
+        for (String line : initializers) sb.append("  init ").append(line).append('\n');
+        return sb.toString();
+    }
+
+    private static String summary() {
+        StringBuilder sb = new StringBuilder();
+        long total = 0;
+        for (Map.Entry<String, Long> e : marks.entrySet()) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(e.getKey()).append('=').append(e.getValue()).append("ms");
+            total = Math.max(total, e.getValue());
+        }
+        return String.format(Locale.US, "total=%dms [%s]", total, sb);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.sjpiicdapp;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Tiny latency trace for multi-step flows (booking, login, ...).
+ * Call mark("step") after each step; finish("outcome") logs the per-step breakdown
+ * under the "Timing" tag, e.g. {@code adb logcat -s Timing}.
+ */
+public class StepTimer {
+    private static final String LOG_TAG = "Timing";
+
+    private final String flow;
+    private final long startedAt;
+    private long lastMark;
+    private final Map<String, Long> steps = new LinkedHashMap<>();
+
+    public StepTimer(String flow) {
+        this.flow = flow;
+        this.startedAt = SystemClock.elapsedRealtime();
+        this.lastMark = startedAt;
+    }
+
+    /** Records the time since the previous mark (or start) under the given step name. */
+    public synchronized long mark(String step) {
+        long now = SystemClock.elapsedRealtime();
+        long took = now - lastMark;
+        lastMark = now;
+        Long prev = steps.get(step);
+        steps.put(step, prev == null ? took : prev + took);
+        return took;
+    }
+
+    public synchronized long elapsed() {
+        return SystemClock.elapsedRealtime() - startedAt;
+    }
+
+    /** Logs "flow outcome total=...ms [step=..ms, ...]" and returns the total. */
+    public synchronized long finish(String outcome) {
+        long total = elapsed();
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> e : steps.entrySet()) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(e.getKey()).append('=').append(e.getValue()).append("ms");
+        }
+        Log.i(LOG_TAG, String.format(Locale.US, "%s %s total=%dms [%s]", flow, outcome, total, sb));
+        return total;
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.sjpiicdapp;
+
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * In-memory roster index for AdminManageClearanceActivity. Each student is a slot; grams map
+ * to posting lists of slots: "^a" / "^ab" for 1-2 char word prefixes, plain trigrams for
+ * everything longer. A search takes the shortest posting list among the query's grams and
+ * verifies those candidates only, so its cost follows the number of matches, not roster size.
+ * Fed from users snapshot listener deltas; not thread-safe, use from the main thread.
+ */
+public class StudentSearchIndex {
+
+    public static final class Student {
+        public final String uid;
+        public final String name;
+        public final String email;
+        /** Normalized words of name, email, username and studentId; what query tokens match. */
+        final String[] words;
+        final String username;
+        final String studentId;
+        final String sortName;
+
+        Student(String uid, String name, String email, String username, String studentId) {
+            this.uid = uid;
+            this.name = name;
+            this.email = email;
+            this.username = SearchKeys.normalize(username);
+            this.studentId = SearchKeys.normalize(studentId);
+            this.sortName = SearchKeys.normalize(name);
+            List<String> w = new ArrayList<>();
+            for (String field : new String[] { name, email, username, studentId }) {
+                for (String word : SearchKeys.normalize(field).split("[^a-z0-9]+")) {
+                    if (!word.isEmpty()) w.add(word);
+                }
+            }
+            this.words = w.toArray(new String[0]);
+        }
+    }
+
+    /** Growable int list; removal swaps the last element in (order does not matter here). */
+    private static final class Postings {
+        int[] slots = new int[4];
+        int size;
+
+        void add(int slot) {
+            if (size == slots.length) slots = Arrays.copyOf(slots, size * 2);
+            slots[size++] = slot;
+        }
+
+        void remove(int slot) {
+            for (int i = 0; i < size; i++) {
+                if (slots[i] == slot) {
+                    slots[i] = slots[--size];
+                    return;
+                }
+            }
+        }
+    }
+
+    private final List<Student> slots = new ArrayList<>();
+    private final List<Integer> freeSlots = new ArrayList<>();
+    private final Map<String, Integer> slotByUid = new HashMap<>();
+    private final Map<String, Postings> grams = new HashMap<>();
+    private boolean ready;
+
+    /** True once the first (cache or server) roster snapshot was applied. */
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return slotByUid.size();
+    }
+
+    /** Applies one listener callback; the first call carries the whole roster as ADDED. */
+    public void apply(List<DocumentChange> changes) {
+        for (DocumentChange dc : changes) {
+            DocumentSnapshot d = dc.getDocument();
+            remove(d.getId());
+            if (dc.getType() != DocumentChange.Type.REMOVED) put(fromDoc(d));
+        }
+        ready = true;
+    }
+
+    public void clear() {
+        slots.clear();
+        freeSlots.clear();
+        slotByUid.clear();
+        grams.clear();
+        ready = false;
+    }
+
+    static Student fromDoc(DocumentSnapshot d) {
+        // same name fallback as the list rows
+        String name = d.contains("displayName") ? d.getString("displayName") : d.getId();
+        String email = d.contains("email") ? d.getString("email") : "";
+        return new Student(d.getId(), name, email, d.getString("username"), d.getString("studentId"));
+    }
+
+    void put(Student s) {
+        int slot;
+        if (!freeSlots.isEmpty()) {
+            slot = freeSlots.remove(freeSlots.size() - 1);
+            slots.set(slot, s);
+        } else {
+            slot = slots.size();
+            slots.add(s);
+        }
+        slotByUid.put(s.uid, slot);
+        for (String g : gramsOf(s)) {
+            Postings p = grams.get(g);
+            if (p == null) {
+                p = new Postings();
+                grams.put(g, p);
+            }
+            p.add(slot);
+        }
+    }
+
+    void remove(String uid) {
+        Integer slot = slotByUid.remove(uid);
+        if (slot == null) return;
+        Student s = slots.get(slot);
+        for (String g : gramsOf(s)) {
+            Postings p = grams.get(g);
+            if (p == null) continue;
+            p.remove(slot);
+            if (p.size == 0) grams.remove(g);
+        }
+        slots.set(slot, null);
+        freeSlots.add(slot);
+    }
+
+    // a set, so a slot is posted at most once per gram
+    private static Set<String> gramsOf(Student s) {
+        Set<String> out = new HashSet<>();
+        for (String w : s.words) {
+            out.add("^" + w.charAt(0));
+            if (w.length() >= 2) out.add("^" + w.substring(0, 2));
+            for (int i = 0; i + 3 <= w.length(); i++) out.add(w.substring(i, i + 3));
+        }
+        return out;
+    }
+
+    /**
+     * Students matching every word of the query, best first: whole-word hits beat word
+     * prefixes, which beat matches inside a word; an exact username / studentId wins outright.
+     */
+    public List<Student> search(String query, int limit) {
+        List<String> tokens = SearchKeys.queryTokens(query);
+        if (tokens.isEmpty()) return Collections.emptyList();
+        // usernames may contain '.', '_' or '-', which split the query into several tokens
+        String whole = SearchKeys.normalize(query).trim();
+
+        final Postings shortest = shortestPostings(tokens);
+        if (shortest == null) return Collections.emptyList();
+
+        // bounded top-k on int scores: the heap head is the worst hit kept so far, so broad
+        // queries cost one score() per candidate plus log(limit), never a full sort
+        final int[] scores = new int[shortest.size];
+        PriorityQueue<Integer> top = new PriorityQueue<>(limit + 1, (a, b) -> Integer.compare(scores[a], scores[b]));
+        for (int i = 0; i < shortest.size; i++) {
+            scores[i] = score(slots.get(shortest.slots[i]), tokens, whole);
+            if (scores[i] <= 0) continue;
+            if (top.size() < limit) {
+                top.add(i);
+            } else if (scores[i] > scores[top.peek()]) {
+                top.poll();
+                top.add(i);
+            }
+        }
+        // only the kept hits are ordered by name
+        List<Integer> kept = new ArrayList<>(top);
+        Collections.sort(kept, (a, b) -> scores[a] != scores[b]
+                ? Integer.compare(scores[b], scores[a])
+                : slots.get(shortest.slots[a]).sortName.compareTo(slots.get(shortest.slots[b]).sortName));
+        List<Student> hits = new ArrayList<>(kept.size());
+        for (int i : kept) hits.add(slots.get(shortest.slots[i]));
+        return hits;
+    }
+
+    // every match is in each query gram's list, so the shortest one bounds the candidates;
+    // null when some gram never occurs
+    private Postings shortestPostings(List<String> tokens) {
+        Postings shortest = null;
+        for (String t : tokens) {
+            for (String g : queryGrams(t)) {
+                Postings p = grams.get(g);
+                if (p == null) return null;
+                if (shortest == null || p.size < shortest.size) shortest = p;
+            }
+        }
+        return shortest;
+    }
+
+    private static List<String> queryGrams(String token) {
+        if (token.length() <= 2) return Collections.singletonList("^" + token);
+        List<String> out = new ArrayList<>();
+        for (int i = 0; i + 3 <= token.length(); i++) out.add(token.substring(i, i + 3));
+        return out;
+    }
+
+    // 0 = not a match (trigram false positive or a short token that is not a word prefix)
+    private static int score(Student s, List<String> tokens, String whole) {
+        int total = 0;
+        for (String t : tokens) {
+            int best = 0;
+            for (String w : s.words) {
+                if (w.equals(t)) {
+                    best = 3;
+                    break;
+                }
+                if (w.startsWith(t)) best = Math.max(best, 2);
+                else if (t.length() >= 3 && w.contains(t)) best = Math.max(best, 1);
+            }
+            if (best == 0) return 0;
+            total += best;
+        }
+        if (!whole.isEmpty() && (whole.equals(s.username) || whole.equals(s.studentId))) {
+            total += 100;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.sjpiicdapp;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.Transaction;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Drop-in wrapper for FirebaseFirestore.runTransaction that records how each transaction went:
+ * attempts (the SDK re-runs the function on contention), time per attempt, total latency,
+ * the abort reason and the document keys involved. Aggregates are kept in memory for
+ * TransactionStatsActivity and can be exported as CSV.
+ */
+public final class TransactionProfiler {
+    private static final String TAG = "TxProfiler";
+    private static final int MAX_RECORDS = 500;
+    private static final int MAX_SAMPLES = 1000;
+
+    // most specific first: NEW_SLOT_FULL also contains SLOT_FULL
+    private static final List<String> KNOWN_REASONS = Arrays.asList(
+            "NEW_SLOT_FULL", "SLOT_FULL", "ALREADY_EXISTS", "SAME_DAY", "USER_LIMIT",
+            "USERNAME_TAKEN", "APPOINTMENT_MISSING", BookingTransaction.DAY_CHECK);
+
+    public static class Record {
+        public final String name;
+        public final long startedAtMs;
+        public final List<Long> attemptMs;
+        public final long totalMs;
+        public final String outcome;
+        public final List<String> keys;
+
+        Record(String name, long startedAtMs, List<Long> attemptMs, long totalMs, String outcome, List<String> keys) {
+            this.name = name;
+            this.startedAtMs = startedAtMs;
+            this.attemptMs = attemptMs;
+            this.totalMs = totalMs;
+            this.outcome = outcome;
+            this.keys = keys;
+        }
+    }
+
+    public static class KeyStats {
+        public final String key;
+        public long transactions;
+        public long retries;
+        public long aborts;
+
+        KeyStats(String key) {
+            this.key = key;
+        }
+    }
+
+    private static final ArrayDeque<Record> records = new ArrayDeque<>();
+    private static final Map<String, LatencyStats> byName = new LinkedHashMap<>();
+    private static final Map<String, Map<String, Long>> outcomesByName = new LinkedHashMap<>();
+    private static final Map<String, KeyStats> byKey = new HashMap<>();
+
+    private TransactionProfiler() {
+    }
+
+    /**
+     * Same as {@code db.runTransaction(fn)}, profiled under {@code name}.
+     * @param keys document paths the transaction touches (e.g. "slots/2025-01-10_09:00-10:00").
+     */
+    public static <T> Task<T> run(FirebaseFirestore db, String name, List<String> keys, Transaction.Function<T> fn) {
+        final long wallStart = System.currentTimeMillis();
+        final long start = SystemClock.elapsedRealtime();
+        final long[] attemptStart = { start };
+        final List<Long> attempts = new ArrayList<>();
+        final int[] attemptCount = { 0 };
+
+        return db.runTransaction((Transaction.Function<T>) tx -> {
+            long now = SystemClock.elapsedRealtime();
+            synchronized (attempts) {
+                // a new call means the previous attempt was rejected and retried
+                if (attemptCount[0] > 0) attempts.add(now - attemptStart[0]);
+                attemptStart[0] = now;
+                attemptCount[0]++;
+            }
+            return fn.apply(tx);
+        }).addOnCompleteListener(task -> {
+            long end = SystemClock.elapsedRealtime();
+            List<Long> perAttempt;
+            synchronized (attempts) {
+                if (attemptCount[0] > 0) attempts.add(end - attemptStart[0]);
+                perAttempt = new ArrayList<>(attempts);
+            }
+            String outcome = task.isSuccessful() ? "OK" : reason(task.getException());
+            record(new Record(name, wallStart, perAttempt, end - start, outcome, keys));
+        });
+    }
+
+    static String reason(Exception e) {
+        if (e == null) return "UNKNOWN";
+        String msg = e.getMessage() != null ? e.getMessage() : "";
+        Throwable cause = e.getCause();
+        String causeMsg = cause != null && cause.getMessage() != null ? cause.getMessage() : "";
+        for (String r : KNOWN_REASONS) {
+            if (msg.contains(r) || causeMsg.contains(r)) return r;
+        }
+        if (e instanceof FirebaseFirestoreException) {
+            FirebaseFirestoreException.Code code = ((FirebaseFirestoreException) e).getCode();
+            // ABORTED without one of our own codes = the SDK gave up retrying on contention
+            return code == FirebaseFirestoreException.Code.ABORTED ? "CONTENTION" : code.name();
+        }
+        return e.getClass().getSimpleName();
+    }
+
+    private static synchronized void record(Record r) {
+        records.addLast(r);
+        if (records.size() > MAX_RECORDS) records.removeFirst();
+
+        LatencyStats stats = byName.get(r.name);
+        if (stats == null) {
+            stats = new LatencyStats(MAX_SAMPLES);
+            byName.put(r.name, stats);
+        }
+        stats.record(r.totalMs, "OK".equals(r.outcome));
+
+        Map<String, Long> outcomes = outcomesByName.get(r.name);
+        if (outcomes == null) {
+            outcomes = new LinkedHashMap<>();
+            outcomesByName.put(r.name, outcomes);
+        }
+        Long n = outcomes.get(r.outcome);
+        outcomes.put(r.outcome, n == null ? 1 : n + 1);
+
+        int retries = Math.max(0, r.attemptMs.size() - 1);
+        for (String key : r.keys) {
+            KeyStats ks = byKey.get(key);
+            if (ks == null) {
+                ks = new KeyStats(key);
+                byKey.put(key, ks);
+            }
+            ks.transactions++;
+            ks.retries += retries;
+            if ("CONTENTION".equals(r.outcome)) ks.aborts++;
+        }
+
+        if (retries > 0 || !"OK".equals(r.outcome)) {
+            Log.d(TAG, r.name + " " + r.outcome + " attempts=" + r.attemptMs.size() + " total=" + r.totalMs + "ms keys=" + r.keys);
+        }
+    }
+
+    /** Keys ordered by retries, then aborts, then transaction count. */
+    public static synchronized List<KeyStats> hotKeys(int limit) {
+        List<KeyStats> all = new ArrayList<>(byKey.values());
+        Collections.sort(all, (a, b) -> {
+            if (a.retries != b.retries) return Long.compare(b.retries, a.retries);
+            if (a.aborts != b.aborts) return Long.compare(b.aborts, a.aborts);
+            return Long.compare(b.transactions, a.transactions);
+        });
+        return all.subList(0, Math.min(limit, all.size()));
+    }
+
+    /** Human-readable summary for the debug screen. */
+    public static synchronized String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, LatencyStats> e : byName.entrySet()) {
+            sb.append(e.getKey()).append('\n')
+                    .append("  ").append(e.getValue().summary()).append('\n')
+                    .append("  outcomes ").append(outcomesByName.get(e.getKey())).append('\n');
+        }
+        sb.append("\nHot keys (retries / aborts / transactions)\n");
+        for (KeyStats ks : hotKeys(15)) {
+            sb.append(String.format(Locale.US, "  %s  %d / %d / %d%n", ks.key, ks.retries, ks.aborts, ks.transactions));
+        }
+        return sb.toString();
+    }
+
+    public static synchronized int recordCount() {
+        return records.size();
+    }
+
+    public static synchronized void clear() {
+        records.clear();
+        byName.clear();
+        outcomesByName.clear();
+        byKey.clear();
+    }
+
+    /** Writes the recorded transactions to files/tx-profile-<time>.csv and returns the file. */
+    public static File exportCsv(Context context) throws IOException {
+        List<Record> snapshot;
+        synchronized (TransactionProfiler.class) {
+            snapshot = new ArrayList<>(records);
+        }
+        File out = new File(context.getFilesDir(), "tx-profile-" + System.currentTimeMillis() + ".csv");
+        try (FileWriter w = new FileWriter(out)) {
+            w.write("name,startedAtMs,attempts,attemptMs,totalMs,outcome,keys\n");
+            for (Record r : snapshot) {
+                w.write(r.name + "," + r.startedAtMs + "," + r.attemptMs.size() + ","
+                        + join(r.attemptMs) + "," + r.totalMs + "," + r.outcome + "," + join(r.keys) + "\n");
+            }
+        }
+        return out;
+    }
+
+    private static String join(List<?> values) {
+        StringBuilder sb = new StringBuilder();
+        for (Object v : values) {
+            if (sb.length() > 0) sb.append(';');
+            sb.append(v);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.sjpiicdapp;
+
+import android.os.Bundle;
+import android.util.Log;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Debug-only view of TransactionProfiler: p50/p95/p99 per transaction, abort reasons and
+ * the hottest documents, plus per-strategy booking metrics, the strategy override and the
+ * shared HTTP client's phase timings.
+ * Reached from the admin dashboard in debug builds.
+ */
+public class TransactionStatsActivity extends AppCompatActivity {
+    private static final String TAG = "TransactionStats";
+
+    private TextView tvStats;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        if (!BuildConfig.DEBUG) {
+            finish();
+            return;
+        }
+        setContentView(R.layout.activity_transaction_stats);
+
+        tvStats = findViewById(R.id.tvTxStats);
+        Button btnRefresh = findViewById(R.id.btnTxRefresh);
+        Button btnExport = findViewById(R.id.btnTxExport);
+        Button btnClear = findViewById(R.id.btnTxClear);
+        Button btnStrategy = findViewById(R.id.btnBookingStrategy);
+
+        btnStrategy.setText("Booking strategy: " + BookingStrategies.debugOverride(this));
+        btnStrategy.setOnClickListener(v ->
+                btnStrategy.setText("Booking strategy: " + BookingStrategies.cycleDebugOverride(this)));
+
+        btnRefresh.setOnClickListener(v -> render());
+        btnClear.setOnClickListener(v -> {
+            TransactionProfiler.clear();
+            BookingStrategies.clear();
+            HttpMetrics.clear();
+            render();
+        });
+        btnExport.setOnClickListener(v -> {
+            try {
+                File f = TransactionProfiler.exportCsv(this);
+                Toast.makeText(this, "Exported to " + f.getAbsolutePath(), Toast.LENGTH_LONG).show();
+            } catch (IOException e) {
+                Log.e(TAG, "export failed", e);
+                Toast.makeText(this, "Export failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
+            }
+        });
+
+        render();
+    }
+
+    private void render() {
+        String strategies = BookingStrategies.report();
+        String http = HttpMetrics.report();
+        String startup = StartupTrace.report();
+        tvStats.setText((TransactionProfiler.recordCount() == 0
+                ? "No transactions recorded yet.\n"
+                : TransactionProfiler.report())
+                + (strategies.isEmpty() ? "" : "\nBooking strategies\n" + strategies)
+                + (http.isEmpty() ? "" : "\nHTTP (shared client)\n" + http)
+                + (startup.isEmpty() ? "" : "\nCold start\n" + startup));
+    }
+}
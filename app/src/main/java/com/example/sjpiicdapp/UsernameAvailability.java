@@ -0,0 +1,234 @@
+package com.example.sjpiicdapp;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.functions.FirebaseFunctions;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * Username availability for AuthRegisterActivity, answered locally while the user types.
+ *
+ * Keeps a copy of the server's Bloom filter (see functions/usernameBloom.js) in filesDir with
+ * the delta seq it includes. sync() reads the small usernameBloom/seq doc, downloads the base
+ * filter only when there is no copy or the copy is older than the deltas still kept, then
+ * applies usernameBloomDeltas above the local seq. check() is then a few hash probes;
+ * only a MAYBE_TAKEN answer needs confirm() (the checkUsername callable).
+ * Call check() and sync() from the main thread.
+ */
+public class UsernameAvailability {
+    private static final String TAG = "UsernameAvailability";
+    private static final String FILE = "username_bloom.bin";
+    private static final int MAX_DELTAS = 2000;
+    /** Same rule as validateUsername in functions/index.js. */
+    private static final Pattern VALID = Pattern.compile("^[a-z0-9._-]{3,30}$");
+    private static final String[] RESERVED = { "admin", "root", "system", "cashier", "support" };
+
+    public enum Status { INVALID, RESERVED, FREE, MAYBE_TAKEN, UNKNOWN }
+
+    public interface ConfirmCallback {
+        void onResult(String username, boolean available);
+
+        void onError(String username, Exception e);
+    }
+
+    private static final ExecutorService io = Executors.newSingleThreadExecutor();
+    private static final Handler main = new Handler(Looper.getMainLooper());
+
+    private final Context context;
+    private final FirebaseFirestore db;
+    private UsernameBloom filter;
+    private long seq;
+    private boolean syncing;
+
+    public UsernameAvailability(Context context, FirebaseFirestore db) {
+        this.context = context.getApplicationContext();
+        this.db = db;
+    }
+
+    public boolean isReady() {
+        return filter != null;
+    }
+
+    /** Local only; UNKNOWN until the filter is loaded (first sync without a cached copy). */
+    public Status check(String username) {
+        String u = normalize(username);
+        if (!VALID.matcher(u).matches()) return Status.INVALID;
+        for (String r : RESERVED) {
+            if (r.equals(u)) return Status.RESERVED;
+        }
+        if (filter == null) return Status.UNKNOWN;
+        return filter.mightContain(u) ? Status.MAYBE_TAKEN : Status.FREE;
+    }
+
+    public static String normalize(String username) {
+        return username == null ? "" : username.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /** One point read on the server; the registerStudent transaction still has the final say. */
+    public void confirm(String username, ConfirmCallback callback) {
+        final String u = normalize(username);
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("username", u);
+        FirebaseFunctions.getInstance().getHttpsCallable("checkUsername")
+                .call(payload)
+                .addOnSuccessListener(result -> {
+                    Object data = result.getData();
+                    Object available = data instanceof Map ? ((Map<?, ?>) data).get("available") : null;
+                    callback.onResult(u, Boolean.TRUE.equals(available));
+                })
+                .addOnFailureListener(e -> callback.onError(u, e));
+    }
+
+    /** Loads the cached copy, then catches up with the server. onDone runs on main either way. */
+    public void sync(@Nullable Runnable onDone) {
+        if (syncing) return;
+        syncing = true;
+        io.execute(() -> {
+            Cached cached = readCached();
+            main.post(() -> {
+                if (cached != null && filter == null) {
+                    filter = cached.filter;
+                    seq = cached.seq;
+                }
+                db.collection("usernameBloom").document("seq").get()
+                        .addOnSuccessListener(state -> {
+                            Long prunedThrough = state.getLong("prunedThrough");
+                            if (filter == null || (prunedThrough != null && seq < prunedThrough)) {
+                                downloadBase(onDone);
+                            } else {
+                                applyDeltas(false, onDone);
+                            }
+                        })
+                        .addOnFailureListener(e -> done("Reading filter state failed", e, onDone));
+            });
+        });
+    }
+
+    private void downloadBase(@Nullable Runnable onDone) {
+        db.collection("usernameBloom").document("filter").get()
+                .addOnSuccessListener(doc -> {
+                    UsernameBloom base = fromDoc(doc);
+                    if (base == null) {
+                        // no filter built yet: every check stays UNKNOWN and goes to confirm()
+                        done(null, null, onDone);
+                        return;
+                    }
+                    filter = base;
+                    Long baseSeq = doc.getLong("seq");
+                    seq = baseSeq != null ? baseSeq : 0;
+                    applyDeltas(true, onDone);
+                })
+                .addOnFailureListener(e -> done("Downloading filter failed", e, onDone));
+    }
+
+    private void applyDeltas(boolean newBase, @Nullable Runnable onDone) {
+        db.collection("usernameBloomDeltas")
+                .whereGreaterThan("seq", seq)
+                .orderBy("seq", Query.Direction.ASCENDING)
+                .limit(MAX_DELTAS)
+                .get()
+                .addOnSuccessListener(snap -> {
+                    for (DocumentSnapshot d : snap.getDocuments()) {
+                        String u = d.getString("username");
+                        Long s = d.getLong("seq");
+                        if (u != null) filter.add(u);
+                        if (s != null && s > seq) seq = s;
+                    }
+                    if (newBase || !snap.isEmpty()) persist(filter, seq);
+                    done(null, null, onDone);
+                })
+                .addOnFailureListener(e -> done("Reading filter deltas failed", e, onDone));
+    }
+
+    private void done(@Nullable String what, @Nullable Exception e, @Nullable Runnable onDone) {
+        if (what != null) Log.w(TAG, what, e);
+        syncing = false;
+        if (onDone != null) onDone.run();
+    }
+
+    @Nullable
+    private static UsernameBloom fromDoc(DocumentSnapshot doc) {
+        Long m = doc.getLong("m");
+        Long k = doc.getLong("k");
+        Blob bits = doc.getBlob("bits");
+        if (!doc.exists() || m == null || k == null || bits == null) return null;
+        try {
+            return new UsernameBloom(m.intValue(), k.intValue(), bits.toBytes());
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Ignoring malformed filter", e);
+            return null;
+        }
+    }
+
+    // written on the io thread from a snapshot of the bits, so check() never waits on disk;
+    // m, k and seq sit in the same file as the bits so they can never disagree
+    private void persist(UsernameBloom f, long atSeq) {
+        final byte[] bytes = f.bits();
+        final int m = f.m();
+        final int k = f.k();
+        io.execute(() -> {
+            File tmp = new File(context.getFilesDir(), FILE + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(m);
+                out.writeInt(k);
+                out.writeLong(atSeq);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not cache filter", e);
+                return;
+            }
+            if (!tmp.renameTo(new File(context.getFilesDir(), FILE))) Log.w(TAG, "Could not replace cached filter");
+        });
+    }
+
+    @Nullable
+    private Cached readCached() {
+        File f = new File(context.getFilesDir(), FILE);
+        if (!f.exists()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+            int m = in.readInt();
+            int k = in.readInt();
+            long atSeq = in.readLong();
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new Cached(new UsernameBloom(m, k, bytes), atSeq);
+        } catch (IOException | IllegalArgumentException | NegativeArraySizeException e) {
+            Log.w(TAG, "Dropping unreadable cached filter", e);
+            return null;
+        }
+    }
+
+    private static final class Cached {
+        final UsernameBloom filter;
+        final long seq;
+
+        Cached(UsernameBloom filter, long seq) {
+            this.filter = filter;
+            this.seq = seq;
+        }
+    }
+}
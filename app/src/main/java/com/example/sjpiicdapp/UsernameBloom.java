@@ -0,0 +1,76 @@
+package com.example.sjpiicdapp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Client copy of the taken-usernames Bloom filter. Must hash exactly like
+ * functions/usernameBloom.js, which builds the base filter: 32-bit FNV-1a over the UTF-8 bytes
+ * with two offset bases, bit i = (h1 + i*h2) mod m for i < k, stored LSB-first per byte.
+ * mightContain() false means definitely free; true means confirm with the server.
+ */
+public final class UsernameBloom {
+    static final int FNV_OFFSET = 0x811c9dc5;
+    private static final int FNV_PRIME = 16777619;
+    static final int FNV_OFFSET_2 = 0x5bd1e995;
+
+    private final int m;
+    private final int k;
+    private final byte[] bits;
+
+    public UsernameBloom(int m, int k, byte[] bits) {
+        if (m <= 0 || k <= 0 || bits.length * 8 < m) throw new IllegalArgumentException("Bad filter m=" + m + " k=" + k);
+        this.m = m;
+        this.k = k;
+        this.bits = bits;
+    }
+
+    public int m() {
+        return m;
+    }
+
+    public int k() {
+        return k;
+    }
+
+    public byte[] bits() {
+        return Arrays.copyOf(bits, bits.length);
+    }
+
+    public void add(String username) {
+        for (int p : positions(username)) {
+            bits[p >>> 3] |= (byte) (1 << (p & 7));
+        }
+    }
+
+    public boolean mightContain(String username) {
+        for (int p : positions(username)) {
+            if ((bits[p >>> 3] & (1 << (p & 7))) == 0) return false;
+        }
+        return true;
+    }
+
+    /** Bit positions of a username, same order as positions() in usernameBloom.js. */
+    int[] positions(String username) {
+        byte[] bytes = username.getBytes(StandardCharsets.UTF_8);
+        int h1 = fnv1a(bytes, FNV_OFFSET);
+        int h2 = fnv1a(bytes, FNV_OFFSET_2) | 1;
+        int[] out = new int[k];
+        for (int i = 0; i < k; i++) out[i] = position(h1, h2, i);
+        return out;
+    }
+
+    // int arithmetic wraps like Math.imul / >>> 0 in the JS version
+    private int position(int h1, int h2, int i) {
+        return (int) (Integer.toUnsignedLong(h1 + i * h2) % m);
+    }
+
+    static int fnv1a(byte[] bytes, int offset) {
+        int h = offset;
+        for (byte b : bytes) {
+            h ^= (b & 0xff);
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+}
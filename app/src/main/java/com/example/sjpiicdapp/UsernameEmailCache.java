@@ -0,0 +1,42 @@
+package com.example.sjpiicdapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.Nullable;
+
+import java.util.Locale;
+
+/**
+ * username -> email for students who signed in (or registered) on this device, so a
+ * returning username login goes straight to Firebase Auth without the getEmailForUsername
+ * round trip. Keys are lowercased like the usernames collection and the callable.
+ */
+public final class UsernameEmailCache {
+    private static final String PREFS = "username_email";
+
+    private UsernameEmailCache() {
+    }
+
+    public static String key(String username) {
+        return username == null ? "" : username.trim().toLowerCase(Locale.ROOT);
+    }
+
+    @Nullable
+    public static String get(Context context, String username) {
+        return prefs(context).getString(key(username), null);
+    }
+
+    public static void put(Context context, String username, String email) {
+        if (key(username).isEmpty() || email == null || email.isEmpty()) return;
+        prefs(context).edit().putString(key(username), email).apply();
+    }
+
+    public static void remove(Context context, String username) {
+        prefs(context).edit().remove(key(username)).apply();
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.sjpiicdapp;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Spinner adapter for the booking time windows. Items stay the raw window strings
+ * (so getSelectedItem() keeps working); only the labels show seats left, and full
+ * windows are disabled in the drop-down.
+ */
+public class WindowAvailabilityAdapter extends ArrayAdapter<String> {
+    private Map<String, Long> remaining = new HashMap<>();
+    private boolean loaded = false;
+
+    public WindowAvailabilityAdapter(@NonNull Context context, String[] windows) {
+        super(context, android.R.layout.simple_spinner_item, windows);
+        setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+    }
+
+    /** null clears the availability (e.g. no date picked yet). */
+    public void setAvailability(Map<String, Long> remaining) {
+        this.loaded = remaining != null;
+        this.remaining = remaining != null ? remaining : new HashMap<>();
+        notifyDataSetChanged();
+    }
+
+    public boolean isFull(String window) {
+        return loaded && seatsLeft(window) <= 0;
+    }
+
+    private long seatsLeft(String window) {
+        Long left = remaining.get(window);
+        return left != null ? left : SlotShards.DEFAULT_CAPACITY;
+    }
+
+    @Override
+    public boolean areAllItemsEnabled() {
+        return false;
+    }
+
+    @Override
+    public boolean isEnabled(int position) {
+        return !isFull(getItem(position));
+    }
+
+    @NonNull
+    @Override
+    public View getView(int position, View convertView, @NonNull ViewGroup parent) {
+        return label(super.getView(position, convertView, parent), position);
+    }
+
+    @Override
+    public View getDropDownView(int position, View convertView, @NonNull ViewGroup parent) {
+        View v = label(super.getDropDownView(position, convertView, parent), position);
+        v.setAlpha(isEnabled(position) ? 1f : 0.4f);
+        return v;
+    }
+
+    private View label(View v, int position) {
+        String window = getItem(position);
+        if (loaded && v instanceof TextView) {
+            long left = seatsLeft(window);
+            ((TextView) v).setText(left > 0
+                    ? String.format(Locale.getDefault(), "%s  (%d left)", window, left)
+                    : window + "  (Full)");
+        }
+        return v;
+    }
+}
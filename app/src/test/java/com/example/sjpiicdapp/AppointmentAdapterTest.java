@@ -0,0 +1,183 @@
+package com.example.sjpiicdapp;
+
+import android.content.Context;
+import android.os.Looper;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Bind counts for AppointmentAdapter with 1,000 appointments: only the visible rows bind,
+ * and a snapshot that changes one row rebinds that row only, even though every Appointment
+ * is parsed again.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class AppointmentAdapterTest {
+    private static final int COUNT = 1000;
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    private static final class CountingAdapter extends AppointmentAdapter {
+        final Map<String, Integer> binds = new HashMap<>();
+        int total;
+
+        CountingAdapter() {
+            super(new Listener() {
+                @Override
+                public void onEdit(Appointment appt) {
+                }
+
+                @Override
+                public void onDelete(Appointment appt) {
+                }
+            });
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull Holder h, int position) {
+            super.onBindViewHolder(h, position);
+            total++;
+            String id = getItem(position).id;
+            Integer n = binds.get(id);
+            binds.put(id, n == null ? 1 : n + 1);
+        }
+
+        void reset() {
+            binds.clear();
+            total = 0;
+        }
+    }
+
+    private CountingAdapter adapter;
+    private RecyclerView list;
+
+    @Before
+    public void setUp() {
+        Context context = new ContextThemeWrapper(ApplicationProvider.getApplicationContext(), R.style.Theme_SJPIICDApp);
+        adapter = new CountingAdapter();
+        list = new RecyclerView(context);
+        list.setLayoutManager(new LinearLayoutManager(context));
+        // change animations bind a second holder; the count is about the adapter's own work
+        list.setItemAnimator(null);
+        list.setAdapter(adapter);
+    }
+
+    // the same appointments as a fresh snapshot would parse them, one of them possibly changed
+    private static List<Appointment> snapshot(int changed, String changedStatus) {
+        List<Appointment> out = new ArrayList<>(COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            String date = String.format(Locale.US, "2026-%02d-%02d", 1 + i / 28 % 12, 1 + i % 28);
+            out.add(Appointment.parse("uid_" + i, date, "08:00-09:00",
+                    i == changed ? changedStatus : "PENDING", "PAY_AT_SCHOOL", 0));
+        }
+        return out;
+    }
+
+    // ListAdapter diffs on a background thread and commits on the main looper
+    private void submit(List<Appointment> rows) throws InterruptedException {
+        AtomicBoolean committed = new AtomicBoolean();
+        adapter.submitList(rows, () -> committed.set(true));
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!committed.get()) {
+            assertTrue("diff never committed", System.currentTimeMillis() < deadline);
+            shadowOf(Looper.getMainLooper()).idle();
+            Thread.sleep(5);
+        }
+        layout();
+    }
+
+    private void layout() {
+        list.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        list.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void firstSnapshot_bindsVisibleRowsOnly() throws InterruptedException {
+        submit(snapshot(-1, null));
+
+        assertEquals(COUNT, adapter.getItemCount());
+        assertTrue("no rows bound", adapter.total > 0);
+        assertEquals(list.getChildCount(), adapter.total);
+        assertTrue("bound " + adapter.total + " of " + COUNT, adapter.total < 50);
+        for (int n : adapter.binds.values()) assertEquals(1, n);
+    }
+
+    @Test
+    public void changedRow_rebindsOnlyThatRow() throws InterruptedException {
+        submit(snapshot(-1, null));
+        adapter.reset();
+
+        // e.g. a cancel: row 2 changes, the other 999 are equal but new instances
+        submit(snapshot(2, "CANCELLED"));
+
+        assertEquals(1, adapter.total);
+        assertEquals(Integer.valueOf(1), adapter.binds.get("uid_2"));
+    }
+
+    @Test
+    public void unchangedSnapshot_bindsNothing() throws InterruptedException {
+        submit(snapshot(-1, null));
+        adapter.reset();
+
+        submit(snapshot(-1, null));
+
+        assertEquals(0, adapter.total);
+    }
+
+    @Test
+    public void changeOffScreen_bindsNothing() throws InterruptedException {
+        submit(snapshot(-1, null));
+        adapter.reset();
+
+        submit(snapshot(COUNT - 1, "APPROVED"));
+
+        assertEquals(0, adapter.total);
+    }
+
+    @Test
+    public void removedRow_bindsOnlyTheRowScrollingIn() throws InterruptedException {
+        submit(snapshot(-1, null));
+        adapter.reset();
+
+        List<Appointment> afterDelete = new ArrayList<>(snapshot(-1, null));
+        afterDelete.remove(0);
+        submit(afterDelete);
+
+        assertEquals(COUNT - 1, adapter.getItemCount());
+        assertTrue("rebound " + adapter.binds, adapter.total <= 1);
+        assertFalse(adapter.binds.containsKey("uid_1"));
+    }
+
+    @Test
+    public void itemIds_stayStableAcrossSnapshots() throws InterruptedException {
+        submit(snapshot(-1, null));
+        long id5 = adapter.getItemId(5);
+
+        List<Appointment> afterDelete = new ArrayList<>(snapshot(-1, null));
+        afterDelete.remove(0);
+        submit(afterDelete);
+
+        assertEquals("uid_5", adapter.getCurrentList().get(4).id);
+        assertEquals(id5, adapter.getItemId(4));
+    }
+}
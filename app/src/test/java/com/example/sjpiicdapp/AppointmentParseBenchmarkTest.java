@@ -0,0 +1,207 @@
+package com.example.sjpiicdapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parse-and-bind cost and retained heap per 10k appointments: the Appointment model against
+ * the snapshot-based rows it replaced (LegacyRow below, copied from the old
+ * AppointmentAdapter.Row and MyAppointmentsActivity.prettyPaymentMethod). A DocumentSnapshot
+ * cannot be built on the JVM, so a document is its field map, which is what a snapshot keeps
+ * alive at the least; the real one is larger, so the legacy heap figure is a lower bound.
+ * "Bind" is the work onBindViewHolder does besides setText, which costs the same either way.
+ * The bench_ tests are opt-in (Benchmarks); the rest run in the default suite.
+ */
+public class AppointmentParseBenchmarkTest {
+    private static final int COUNT = 10_000;
+    /** Every snapshot of the screen rebinds the visible rows; this is 20 full refreshes. */
+    private static final int RENDERS = 20;
+
+    private static final String[] STATUSES = { "PENDING", "APPROVED", "PAID", "REJECTED", "CANCELLED" };
+    private static final String[] PAYMENTS = { "PAY_AT_SCHOOL", "E_WALLET", "GCASH_QR" };
+
+    // what the old screen kept per row: raw fields plus the whole document
+    private static final class LegacyRow {
+        final String id;
+        final String date;
+        final String window;
+        final String status;
+        final String paymentMethod;
+        final boolean pending;
+        final Map<String, Object> doc;
+
+        LegacyRow(String id, Map<String, Object> doc) {
+            this.id = id;
+            this.date = doc.containsKey("date") ? (String) doc.get("date") : null;
+            this.window = doc.containsKey("window") ? (String) doc.get("window") : null;
+            this.status = doc.containsKey("status") ? (String) doc.get("status") : "Unknown";
+            this.paymentMethod = doc.containsKey("paymentMethod") ? (String) doc.get("paymentMethod") : "PAY_AT_SCHOOL";
+            this.pending = false;
+            this.doc = doc;
+        }
+
+        // the strings the old onBindViewHolder built on every bind
+        int bind() {
+            String dateWindow = date != null && !date.isEmpty()
+                    ? date + " - " + (window != null ? window : "")
+                    : "No appointment date set";
+            String statusText = "Status: " + status;
+            String paymentText = prettyPaymentMethod(paymentMethod);
+            return dateWindow.length() + statusText.length() + paymentText.length() + (pending ? 1 : 0);
+        }
+
+        static String prettyPaymentMethod(String code) {
+            if (code == null) return "Unknown";
+            switch (code) {
+                case "E_WALLET":
+                    return "E-Wallet / Bank Transfer";
+                case "PAY_AT_SCHOOL":
+                    return "Pay at School (Cashier)";
+                default:
+                    return code.replace('_', ' ').toUpperCase();
+            }
+        }
+    }
+
+    private static int bind(Appointment a) {
+        return a.dateWindowText.length() + a.statusText.length() + a.paymentText.length() + (a.pending ? 1 : 0);
+    }
+
+    // same fields as Appointment.from(DocumentSnapshot) reads
+    private static Appointment parse(String id, Map<String, Object> doc) {
+        return Appointment.parse(id, (String) doc.get("date"), (String) doc.get("window"),
+                (String) doc.get("status"), (String) doc.get("paymentMethod"), 0);
+    }
+
+    private static List<Map<String, Object>> documents() {
+        List<Map<String, Object>> out = new ArrayList<>(COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            Map<String, Object> doc = new HashMap<>();
+            doc.put("userId", "uid" + (i % 500));
+            doc.put("date", String.format(Locale.US, "2026-%02d-%02d", 1 + i / 28 % 12, 1 + i % 28));
+            doc.put("window", (8 + i % 8) + ":00-" + (9 + i % 8) + ":00");
+            doc.put("status", STATUSES[i % STATUSES.length]);
+            doc.put("paymentMethod", PAYMENTS[i % PAYMENTS.length]);
+            doc.put("createdAt", "2026-01-01T08:00:00.000Z");
+            out.add(doc);
+        }
+        return out;
+    }
+
+    // collects until the used heap stops shrinking, so garbage from earlier tests is not counted
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            long now = rt.totalMemory() - rt.freeMemory();
+            if (now >= used - 1024) return now;
+            used = now;
+        }
+        return used;
+    }
+
+    @Test
+    public void parsedModel_bindsAndRendersLikeLegacy() {
+        Map<String, Object> doc = new HashMap<>();
+        doc.put("date", "2026-03-04");
+        doc.put("window", "08:00-09:00");
+        doc.put("status", "APPROVED");
+        doc.put("paymentMethod", "E_WALLET");
+        Appointment a = parse("x", doc);
+
+        assertEquals("2026-03-04 - 08:00-09:00", a.dateWindowText);
+        assertEquals("E-Wallet / Bank Transfer", a.paymentText);
+        assertEquals(Appointment.Status.APPROVED, a.status);
+        assertEquals(new LegacyRow("x", doc).bind(), bind(a));
+    }
+
+    @Test
+    public void parsedModel_matchesLegacyBindFor10k() {
+        List<Map<String, Object>> docs = documents();
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(new LegacyRow("a" + i, docs.get(i)).bind(), bind(parse("a" + i, docs.get(i))));
+        }
+    }
+
+    @Test
+    public void bench_parseAndBind10k() {
+        Benchmarks.assumeEnabled();
+        List<Map<String, Object>> docs = documents();
+        long sink = 0;
+
+        // warm-up for both paths
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < COUNT; i++) {
+                sink += new LegacyRow("a" + i, docs.get(i)).bind();
+                sink += bind(parse("a" + i, docs.get(i)));
+            }
+        }
+
+        long start = System.nanoTime();
+        List<LegacyRow> legacy = new ArrayList<>(COUNT);
+        for (int i = 0; i < COUNT; i++) legacy.add(new LegacyRow("a" + i, docs.get(i)));
+        long legacyParseNs = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int r = 0; r < RENDERS; r++) {
+            for (LegacyRow row : legacy) sink += row.bind();
+        }
+        long legacyBindNs = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        List<Appointment> model = new ArrayList<>(COUNT);
+        for (int i = 0; i < COUNT; i++) model.add(parse("a" + i, docs.get(i)));
+        long modelParseNs = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int r = 0; r < RENDERS; r++) {
+            for (Appointment a : model) sink += bind(a);
+        }
+        long modelBindNs = System.nanoTime() - start;
+
+        Benchmarks.record(getClass(), String.format(Locale.US, "Appointment 10k: parse legacy %.1f ms, model %.1f ms; "
+                        + "%d renders bind legacy %.1f ms, model %.1f ms (sink %d)",
+                legacyParseNs / 1e6, modelParseNs / 1e6, RENDERS, legacyBindNs / 1e6, modelBindNs / 1e6, sink));
+        // binding is plain field reads now; parsing pays once for what every render used to build
+        assertTrue("model bind " + modelBindNs + " ns vs legacy " + legacyBindNs, modelBindNs < legacyBindNs);
+    }
+
+    @Test
+    public void bench_retainedHeap10k() {
+        Benchmarks.assumeEnabled();
+        List<LegacyRow> legacy = new ArrayList<>(COUNT);
+        List<Map<String, Object>> docs = documents();
+        for (int i = 0; i < COUNT; i++) legacy.add(new LegacyRow("a" + i, docs.get(i)));
+        docs = null;
+        // retained = what dropping the rows frees; legacy rows keep their documents reachable
+        long held = usedHeap();
+        assertEquals(COUNT, legacy.size());
+        legacy = null;
+        long legacyBytes = held - usedHeap();
+
+        List<Appointment> model = new ArrayList<>(COUNT);
+        docs = documents();
+        for (int i = 0; i < COUNT; i++) model.add(parse("a" + i, docs.get(i)));
+        // the documents are garbage once parsed
+        docs = null;
+        held = usedHeap();
+        assertEquals(COUNT, model.size());
+        model = null;
+        long modelBytes = held - usedHeap();
+
+        Benchmarks.record(getClass(), String.format(Locale.US,
+                "Appointment 10k retained: legacy rows + documents %d KB, model %d KB", legacyBytes / 1024, modelBytes / 1024));
+        assertTrue("model " + modelBytes + " B vs legacy " + legacyBytes + " B", modelBytes < legacyBytes);
+    }
+}
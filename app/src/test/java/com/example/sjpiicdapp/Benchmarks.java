@@ -0,0 +1,37 @@
+package com.example.sjpiicdapp;
+
+import org.junit.Assume;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Opt-in measurements. Timings and heap figures depend on the machine and on when the JVM
+ * collects (System.gc() is only a hint), so bench_ tests skip in the default unit suite and
+ * run with
+ *
+ *   ./gradlew testDebugUnitTest -Pbenchmarks
+ *
+ * Their figures go to build/reports/benchmarks/{test class}.txt instead of stdout.
+ */
+final class Benchmarks {
+    private Benchmarks() {
+    }
+
+    static void assumeEnabled() {
+        Assume.assumeTrue("benchmark; run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+    }
+
+    static void record(Class<?> test, String line) {
+        File dir = new File(System.getProperty("benchmarks.dir", "build/reports/benchmarks"));
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IllegalStateException("cannot create " + dir);
+        try (Writer out = new FileWriter(new File(dir, test.getSimpleName() + ".txt"), true)) {
+            out.write(line);
+            out.write('\n');
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
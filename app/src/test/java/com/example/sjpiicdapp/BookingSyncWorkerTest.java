@@ -0,0 +1,29 @@
+package com.example.sjpiicdapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Retry jitter: every retry pauses a random amount, and the range grows with the attempt so
+ * phones that failed together spread out further each time.
+ */
+public class BookingSyncWorkerTest {
+
+    @Test
+    public void firstRun_doesNotPause() {
+        assertEquals(0, BookingSyncWorker.retryJitterMs(0, 0.99));
+    }
+
+    @Test
+    public void retries_pauseWithinAGrowingRange() {
+        assertEquals(0, BookingSyncWorker.retryJitterMs(1, 0));
+        assertEquals(2500, BookingSyncWorker.retryJitterMs(1, 0.5));
+        assertEquals(5000, BookingSyncWorker.retryJitterMs(2, 0.5));
+        assertEquals(10000, BookingSyncWorker.retryJitterMs(3, 0.5));
+        assertEquals(20000, BookingSyncWorker.retryJitterMs(4, 0.5));
+        // capped at 8x, well inside a worker's run time
+        assertEquals(20000, BookingSyncWorker.retryJitterMs(7, 0.5));
+        assertTrue(BookingSyncWorker.retryJitterMs(7, 0.999) < 40000);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.sjpiicdapp;
+
+import com.google.firebase.firestore.DocumentChange;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Cache-first screens: the first snapshot comes from the local cache and renders at once, the
+ * server snapshot that follows only carries the delta. My Appointments applies both as
+ * DocumentChanges (MyAppointmentsActivity.applyChange); e-Clearance decides per snapshot what
+ * to show (EClearanceActivity.SnapshotState).
+ */
+public class CacheFirstRenderTest {
+
+    private static Appointment appt(String id, String date, String status) {
+        return Appointment.parse(id, date, "08:00-09:00", status, "PAY_AT_SCHOOL", 0);
+    }
+
+    private static List<String> ids(List<Appointment> list) {
+        List<String> out = new ArrayList<>();
+        for (Appointment a : list) out.add(a.id);
+        return out;
+    }
+
+    // the cache snapshot: every cached document arrives as ADDED, in query order
+    private static List<Appointment> cacheSnapshot() {
+        List<Appointment> list = new ArrayList<>();
+        MyAppointmentsActivity.applyChange(list, DocumentChange.Type.ADDED, -1, 0, appt("a", "2026-11-02", "PENDING"));
+        MyAppointmentsActivity.applyChange(list, DocumentChange.Type.ADDED, -1, 1, appt("b", "2026-11-05", "APPROVED"));
+        MyAppointmentsActivity.applyChange(list, DocumentChange.Type.ADDED, -1, 2, appt("c", "2026-11-09", "PENDING"));
+        return list;
+    }
+
+    @Test
+    public void cacheSnapshot_rendersCachedRowsInOrder() {
+        List<Appointment> list = cacheSnapshot();
+
+        assertEquals(Arrays.asList("a", "b", "c"), ids(list));
+        assertEquals("Status: APPROVED", list.get(1).statusText);
+    }
+
+    @Test
+    public void serverDelta_updatesOnlyWhatChanged() {
+        List<Appointment> list = cacheSnapshot();
+        Appointment b = list.get(1);
+
+        // the server approved "a", dropped "c" and has a new booking "d" between a and b
+        MyAppointmentsActivity.applyChange(list, DocumentChange.Type.MODIFIED, 0, 0, appt("a", "2026-11-02", "APPROVED"));
+        MyAppointmentsActivity.applyChange(list, DocumentChange.Type.REMOVED, 2, -1, null);
+        MyAppointmentsActivity.applyChange(list, DocumentChange.Type.ADDED, -1, 1, appt("d", "2026-11-03", "PENDING"));
+
+        assertEquals(Arrays.asList("a", "d", "b"), ids(list));
+        assertEquals(Appointment.Status.APPROVED, list.get(0).status);
+        // untouched rows keep their instance, so the adapter has nothing to rebind
+        assertSame(b, list.get(2));
+    }
+
+    @Test
+    public void serverDelta_movesRescheduledRow() {
+        List<Appointment> list = cacheSnapshot();
+
+        // "a" was moved past "c" while offline; the server reports it as MODIFIED at a new index
+        MyAppointmentsActivity.applyChange(list, DocumentChange.Type.MODIFIED, 0, 2, appt("a", "2026-11-20", "PENDING"));
+
+        assertEquals(Arrays.asList("b", "c", "a"), ids(list));
+        assertEquals("2026-11-20", list.get(2).date);
+    }
+
+    @Test
+    public void clearance_cacheMissWaitsForServer() {
+        // nothing cached yet: keep the spinner instead of claiming there is no record
+        assertEquals(EClearanceActivity.SnapshotState.WAIT, EClearanceActivity.SnapshotState.of(false, true));
+        assertEquals(EClearanceActivity.SnapshotState.MISSING, EClearanceActivity.SnapshotState.of(false, false));
+    }
+
+    @Test
+    public void clearance_cacheHitShowsSavedCopyThenLive() {
+        assertEquals(EClearanceActivity.SnapshotState.SAVED_COPY, EClearanceActivity.SnapshotState.of(true, true));
+        assertEquals(EClearanceActivity.SnapshotState.LIVE, EClearanceActivity.SnapshotState.of(true, false));
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.sjpiicdapp;
+
+import android.os.Looper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Application start: only FirebaseApp and App Check run on the main thread during
+ * MyApp.onCreate (Robolectric runs it before each test); Firestore, Analytics and everything
+ * that talks to the network start in the background. Also the StartupCoordinator rules the
+ * graph relies on.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MyAppStartupTest {
+    private static final List<String> MAIN_THREAD_NODES = Arrays.asList(MyApp.FIREBASE, MyApp.APP_CHECK);
+
+    private static void awaitDone(StartupCoordinator startup, String name) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!startup.isDone(name)) {
+            assertTrue(name + " never ran", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void onCreate_keepsFirestoreAndNetworkWorkOffTheMainThread() throws InterruptedException {
+        MyApp app = ApplicationProvider.getApplicationContext();
+        StartupCoordinator startup = MyApp.startup(app);
+
+        // main-thread nodes ran synchronously inside onCreate
+        for (String name : MAIN_THREAD_NODES) {
+            assertTrue(name, startup.isDone(name));
+            assertEquals(name, Boolean.TRUE, startup.ranOnMainThread(name));
+        }
+        // every other node is queued; it may not have run yet, but never on main
+        for (String name : new String[] { MyApp.FIRESTORE, MyApp.ANALYTICS }) {
+            assertNotEquals(name, Boolean.TRUE, startup.ranOnMainThread(name));
+        }
+        awaitDone(startup, MyApp.FIRESTORE);
+        assertEquals(Boolean.FALSE, startup.ranOnMainThread(MyApp.FIRESTORE));
+    }
+
+    @Test
+    public void coordinator_runsMainNodesInStartAndTheRestInBackground() throws InterruptedException {
+        StartupCoordinator startup = new StartupCoordinator(ApplicationProvider.getApplicationContext());
+        AtomicBoolean backgroundRan = new AtomicBoolean();
+        startup.onMain("a", app -> { })
+                .inBackground("b", app -> backgroundRan.set(true), "a")
+                .onMain("c", app -> { }, "a");
+
+        startup.start();
+
+        assertTrue(startup.isDone("a"));
+        assertTrue(startup.isDone("c"));
+        assertEquals(Boolean.TRUE, startup.ranOnMainThread("c"));
+        awaitDone(startup, "b");
+        assertTrue(backgroundRan.get());
+        assertEquals(Boolean.FALSE, startup.ranOnMainThread("b"));
+    }
+
+    @Test
+    public void coordinator_whenReadyRunsOnMainAfterTheNode() throws InterruptedException {
+        StartupCoordinator startup = new StartupCoordinator(ApplicationProvider.getApplicationContext());
+        startup.inBackground("slow", app -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        boolean[] ready = new boolean[1];
+        Thread[] thread = new Thread[1];
+
+        startup.start();
+        startup.whenReady("slow", () -> {
+            ready[0] = startup.isDone("slow");
+            thread[0] = Thread.currentThread();
+        });
+        awaitDone(startup, "slow");
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertTrue(ready[0]);
+        assertSame(Looper.getMainLooper().getThread(), thread[0]);
+    }
+
+    @Test
+    public void coordinator_failedNodeDoesNotBlockDependents() throws InterruptedException {
+        StartupCoordinator startup = new StartupCoordinator(ApplicationProvider.getApplicationContext());
+        AtomicBoolean dependentRan = new AtomicBoolean();
+        startup.inBackground("broken", app -> {
+            throw new IllegalStateException("no config");
+        }).inBackground("next", app -> dependentRan.set(true), "broken");
+
+        startup.start();
+        awaitDone(startup, "next");
+
+        assertTrue(startup.isDone("broken"));
+        assertTrue(dependentRan.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void coordinator_mainNodeCannotWaitForBackground() {
+        new StartupCoordinator(ApplicationProvider.getApplicationContext())
+                .inBackground("cache", app -> { })
+                .onMain("screen", app -> { }, "cache");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void coordinator_rejectsNodesAfterStart() {
+        StartupCoordinator startup = new StartupCoordinator(ApplicationProvider.getApplicationContext());
+        startup.start();
+        startup.onMain("late", app -> { });
+    }
+}
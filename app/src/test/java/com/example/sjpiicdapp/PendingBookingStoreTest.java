@@ -0,0 +1,149 @@
+package com.example.sjpiicdapp;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * A booking made offline: it is queued in PendingBookingStore, survives the app being
+ * restarted, and stays on screen through the cache snapshot and any server snapshot that does
+ * not confirm it yet. Steps mirror MyAppointmentsActivity.showAppointments.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PendingBookingStoreTest {
+    private static final String UID = "uid_1";
+    private static final String DATE = "2026-11-02";
+    private static final String WINDOW = "08:00-09:00";
+
+    private Context context;
+    private PendingBookingStore store;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        store = new PendingBookingStore(context);
+    }
+
+    private static Appointment server(String id, String status, long createdAtMs) {
+        return Appointment.parse(id, DATE, WINDOW, status, "PAY_AT_SCHOOL", createdAtMs);
+    }
+
+    // what showAppointments does with one snapshot
+    private List<Appointment> show(List<Appointment> loaded) {
+        PendingBookingStore.Reconciled reconciled = PendingBookingStore.reconcile(store.forUser(UID), loaded);
+        for (String requestId : reconciled.confirmed) store.remove(requestId);
+        return reconciled.rows;
+    }
+
+    private static int count(List<Appointment> rows, String id) {
+        int n = 0;
+        for (Appointment a : rows) {
+            if (a.id.equals(id)) n++;
+        }
+        return n;
+    }
+
+    @Test
+    public void entry_survivesRestart() {
+        PendingBookingStore.Entry e = store.add(UID, DATE, WINDOW);
+
+        PendingBookingStore reopened = new PendingBookingStore(context);
+
+        PendingBookingStore.Entry again = reopened.get(e.requestId);
+        assertNotNull(again);
+        assertEquals(WINDOW, again.window);
+        assertEquals(e.createdAtMs, again.createdAtMs);
+        assertEquals(1, reopened.forUser(UID).size());
+        assertTrue(reopened.forUser("someone_else").isEmpty());
+    }
+
+    @Test
+    public void cacheSnapshot_withoutTheBooking_showsPendingRow() {
+        PendingBookingStore.Entry e = store.add(UID, DATE, WINDOW);
+
+        List<Appointment> rows = show(Collections.<Appointment>emptyList());
+
+        assertEquals(1, rows.size());
+        assertTrue(rows.get(0).pending);
+        assertEquals("Status: Pending sync", rows.get(0).statusText);
+        assertNotNull(store.get(e.requestId));
+    }
+
+    @Test
+    public void cancelledBookingOnSameSlot_isReplacedNotConfirmed() {
+        PendingBookingStore.Entry e = store.add(UID, DATE, WINDOW);
+        List<Appointment> cached = new ArrayList<>();
+        cached.add(server(e.requestId, "CANCELLED", e.createdAtMs + 1000));
+        cached.add(server("other", "APPROVED", 0));
+
+        List<Appointment> rows = show(cached);
+
+        // the queued booking replaces the cancelled row; it is not the booking we are waiting for
+        assertEquals(2, rows.size());
+        assertEquals(1, count(rows, e.requestId));
+        assertTrue(rows.get(0).pending);
+        assertEquals("other", rows.get(1).id);
+        assertNotNull(store.get(e.requestId));
+    }
+
+    @Test
+    public void olderActiveBooking_keepsEntryWithoutDuplicateRow() {
+        PendingBookingStore.Entry e = store.add(UID, DATE, WINDOW);
+
+        List<Appointment> rows = show(Collections.singletonList(server(e.requestId, "APPROVED", e.createdAtMs - 1000)));
+
+        assertEquals(1, rows.size());
+        assertFalse(rows.get(0).pending);
+        assertNotNull(store.get(e.requestId));
+    }
+
+    @Test
+    public void serverDelta_confirmsAndClearsTheEntry() {
+        PendingBookingStore.Entry e = store.add(UID, DATE, WINDOW);
+        show(Collections.singletonList(server(e.requestId, "CANCELLED", 0)));
+
+        // the worker wrote the booking; the server snapshot brings it back active and newer
+        List<Appointment> rows = show(Collections.singletonList(server(e.requestId, "PENDING", e.createdAtMs + 500)));
+
+        assertEquals(1, rows.size());
+        assertFalse(rows.get(0).pending);
+        assertNull(store.get(e.requestId));
+        assertTrue(new PendingBookingStore(context).forUser(UID).isEmpty());
+    }
+
+    @Test
+    public void bookingRescheduledAway_doesNotConfirm() {
+        PendingBookingStore.Entry e = store.add(UID, DATE, WINDOW);
+        // same id (uid_date_window), but the appointment was moved to another day
+        Appointment moved = Appointment.parse(e.requestId, "2026-11-09", WINDOW, "APPROVED", "PAY_AT_SCHOOL",
+                e.createdAtMs + 500);
+
+        show(Collections.singletonList(moved));
+
+        assertNotNull(store.get(e.requestId));
+    }
+
+    @Test
+    public void failedEntry_staysVisibleNextToLoadedRow() {
+        PendingBookingStore.Entry e = store.add(UID, DATE, WINDOW);
+        store.markFailed(e.requestId, "slot full");
+
+        List<Appointment> rows = show(Collections.singletonList(server(e.requestId, "APPROVED", e.createdAtMs - 1000)));
+
+        assertEquals(2, rows.size());
+        assertTrue(rows.get(0).pending);
+        assertEquals("Status: Not booked (slot full)", rows.get(0).statusText);
+        assertNotNull(store.get(e.requestId));
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.sjpiicdapp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import okhttp3.MultipartBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Memory and bytes on the wire for 12 MP permit photos: the decode never holds the full-size
+ * bitmap, the upload is a bounded JPEG, and the request body streams the file in chunks
+ * instead of copying it into the heap (the heap growth itself is an opt-in benchmark).
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class PermitImageUploaderTest {
+    private static final int BYTES_PER_PIXEL = 4; // ARGB_8888, BitmapFactory's default
+    private static final int[][] TWELVE_MP = { { 4000, 3000 }, { 3000, 4000 }, { 4032, 3024 }, { 12000, 1000 } };
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void sampleSize_keepsDecodeFarBelowFullBitmap() {
+        for (int[] size : TWELVE_MP) {
+            int w = size[0];
+            int h = size[1];
+            int sample = PermitImageUploader.sampleSizeFor(w, h, PermitImageUploader.MAX_EDGE_PX);
+            long full = (long) w * h * BYTES_PER_PIXEL;
+            long decoded = (long) (w / sample) * (h / sample) * BYTES_PER_PIXEL;
+            // peak bitmap memory: the sampled decode plus the scaled copy made from it
+            float scale = Math.min(1f, (float) PermitImageUploader.MAX_EDGE_PX / Math.max(w / sample, h / sample));
+            long scaled = (long) (w / sample * scale) * (long) (h / sample * scale) * BYTES_PER_PIXEL;
+
+            assertTrue(w + "x" + h + " sampled below the target edge",
+                    Math.max(w, h) / sample >= PermitImageUploader.MAX_EDGE_PX);
+            assertTrue(w + "x" + h + " decoded " + decoded + " of " + full, decoded * 3 <= full);
+            assertTrue(w + "x" + h + " peak " + (decoded + scaled) + " of " + full, decoded + scaled < full / 2);
+        }
+        assertEquals(1, PermitImageUploader.sampleSizeFor(1200, 900, PermitImageUploader.MAX_EDGE_PX));
+    }
+
+    // a 12 MP camera-sized JPEG with some detail, so the encoder has real work to do
+    private File twelveMegapixelJpeg(int w, int h) throws IOException {
+        Bitmap bitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint();
+        Random random = new Random(7);
+        canvas.drawColor(Color.WHITE);
+        for (int i = 0; i < 400; i++) {
+            paint.setColor(Color.rgb(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+            int x = random.nextInt(w);
+            int y = random.nextInt(h);
+            canvas.drawRect(x, y, x + random.nextInt(400), y + random.nextInt(400), paint);
+        }
+        File file = tmp.newFile("camera-" + w + "x" + h + ".jpg");
+        try (OutputStream os = new FileOutputStream(file)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 95, os);
+        }
+        bitmap.recycle();
+        return file;
+    }
+
+    private static Uri register(Context context, File file) {
+        Uri uri = Uri.parse("content://test.permits/" + file.getName());
+        shadowOf(context.getContentResolver()).registerInputStreamSupplier(uri, () -> {
+            try {
+                return new FileInputStream(file);
+            } catch (FileNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        return uri;
+    }
+
+    @Test
+    public void encodeBounded_uploadsBoundedJpegFor12Mp() throws IOException {
+        Context context = ApplicationProvider.getApplicationContext();
+        for (int[] size : new int[][] { { 4000, 3000 }, { 3000, 4000 } }) {
+            File original = twelveMegapixelJpeg(size[0], size[1]);
+            File encoded = PermitImageUploader.encodeBounded(context, register(context, original));
+            try {
+                BitmapFactory.Options bounds = new BitmapFactory.Options();
+                bounds.inJustDecodeBounds = true;
+                BitmapFactory.decodeFile(encoded.getPath(), bounds);
+
+                assertEquals(PermitImageUploader.MAX_EDGE_PX, Math.max(bounds.outWidth, bounds.outHeight));
+                assertEquals(size[0] > size[1], bounds.outWidth > bounds.outHeight);
+                // bytes sent: 1600 px on the long edge at quality 80, well below the original
+                assertTrue("encoded " + encoded.length() + " of " + original.length(),
+                        encoded.length() < original.length() / 2);
+                assertTrue("encoded " + encoded.length(), encoded.length() < 1024 * 1024);
+            } finally {
+                assertTrue(encoded.delete());
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void encodeBounded_rejectsNonImages() throws IOException {
+        Context context = ApplicationProvider.getApplicationContext();
+        File text = tmp.newFile("not-an-image.jpg");
+        try (OutputStream os = new FileOutputStream(text)) {
+            os.write("hello".getBytes());
+        }
+        PermitImageUploader.encodeBounded(context, register(context, text));
+    }
+
+    /** Discards what is written; counts bytes and the largest single write. */
+    private static final class CountingSink extends ForwardingSink {
+        long bytes;
+        long largestWrite;
+
+        CountingSink() {
+            super(Okio.blackhole());
+        }
+
+        @Override
+        public void write(@NonNull Buffer source, long byteCount) throws IOException {
+            bytes += byteCount;
+            largestWrite = Math.max(largestWrite, byteCount);
+            super.write(source, byteCount);
+        }
+    }
+
+    private File fileOfSize(long size) throws IOException {
+        File file = tmp.newFile("upload-" + size + ".bin");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(size);
+        }
+        return file;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    @Test
+    public void progressBody_streamsInChunks() throws IOException {
+        File file = fileOfSize(12L * 1024 * 1024);
+        List<Integer> percents = new ArrayList<>();
+        PermitImageUploader.ProgressFileBody body = new PermitImageUploader.ProgressFileBody(file, percents::add);
+
+        CountingSink counting = new CountingSink();
+        try (BufferedSink sink = Okio.buffer(counting)) {
+            body.writeTo(sink);
+        }
+
+        assertEquals(file.length(), body.contentLength());
+        assertEquals(file.length(), counting.bytes);
+        assertTrue("write of " + counting.largestWrite + " bytes", counting.largestWrite <= 8192);
+        assertEquals(Integer.valueOf(100), percents.get(percents.size() - 1));
+        for (int i = 1; i < percents.size(); i++) assertTrue(percents.get(i) > percents.get(i - 1));
+    }
+
+    // Heap growth while streaming a file as large as an unscaled 12 MP JPEG, so a full in-memory
+    // copy would show. Depends on when the JVM collects, hence opt-in.
+    @Test
+    public void bench_progressBodyHeap() throws IOException {
+        Benchmarks.assumeEnabled();
+        File file = fileOfSize(12L * 1024 * 1024);
+        long[] peak = new long[1];
+        PermitImageUploader.ProgressFileBody body = new PermitImageUploader.ProgressFileBody(file,
+                p -> peak[0] = Math.max(peak[0], usedHeap()));
+
+        System.gc();
+        long before = usedHeap();
+        try (BufferedSink sink = Okio.buffer(new CountingSink())) {
+            body.writeTo(sink);
+        }
+
+        Benchmarks.record(getClass(), String.format(Locale.US, "ProgressFileBody %d KB file: heap grew %d KB",
+                file.length() / 1024, (peak[0] - before) / 1024));
+        assertTrue("heap grew " + (peak[0] - before) + " bytes", peak[0] - before < file.length() / 4);
+    }
+
+    @Test
+    public void multipart_sendsTheFilePlusFormOverheadOnly() throws IOException {
+        File file = fileOfSize(600 * 1024);
+        MultipartBody body = new MultipartBody.Builder()
+                .setType(MultipartBody.FORM)
+                .addFormDataPart("file", "permit.jpg", new PermitImageUploader.ProgressFileBody(file, p -> { }))
+                .addFormDataPart("upload_preset", "preset")
+                .build();
+
+        CountingSink counting = new CountingSink();
+        try (BufferedSink sink = Okio.buffer(counting)) {
+            body.writeTo(sink);
+        }
+
+        assertEquals(body.contentLength(), counting.bytes);
+        assertTrue("overhead " + (counting.bytes - file.length()), counting.bytes - file.length() < 1024);
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.sjpiicdapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local tests for StudentSearchIndex: put / remove / search on a small roster and on a
+ * 20k-student roster (the size AdminManageClearanceActivity is tuned for), plus an opt-in
+ * timing harness on the latter (Benchmarks).
+ */
+public class StudentSearchIndexTest {
+
+    private static StudentSearchIndex.Student student(String uid, String name, String username, String studentId) {
+        return new StudentSearchIndex.Student(uid, name, username + "@school.edu", username, studentId);
+    }
+
+    private static List<String> uids(List<StudentSearchIndex.Student> hits) {
+        List<String> out = new ArrayList<>();
+        for (StudentSearchIndex.Student s : hits) out.add(s.uid);
+        return out;
+    }
+
+    private static StudentSearchIndex roster() {
+        StudentSearchIndex index = new StudentSearchIndex();
+        index.put(student("u1", "Juan Dela Cruz", "juan.delacruz", "2021-0001"));
+        index.put(student("u2", "Juana Santos", "jsantos", "2021-0002"));
+        index.put(student("u3", "Maria Jose N\u00fa\u00f1ez", "mj_nunez", "2022-0100"));
+        index.put(student("u4", "Pedro Alcantara", "pedro-a", "2023-0042"));
+        return index;
+    }
+
+    @Test
+    public void search_matchesEveryQueryWord() {
+        StudentSearchIndex index = roster();
+
+        assertEquals(4, index.size());
+        assertEquals(Arrays.asList("u1"), uids(index.search("juan cruz", 10)));
+        assertEquals(Arrays.asList("u3"), uids(index.search("nunez", 10)));
+        assertTrue(index.search("juan pedro", 10).isEmpty());
+        assertTrue(index.search("zzz", 10).isEmpty());
+        assertTrue(index.search("  ", 10).isEmpty());
+    }
+
+    @Test
+    public void search_ranksWholeWordsBeforePrefixes() {
+        StudentSearchIndex index = roster();
+
+        // "juan" is a whole word of u1 and only a prefix of u2's "juana"
+        assertEquals(Arrays.asList("u1", "u2"), uids(index.search("juan", 10)));
+        assertEquals(Arrays.asList("u1"), uids(index.search("juan", 1)));
+        // trigram inside a word, not a prefix
+        assertEquals(Arrays.asList("u4"), uids(index.search("cant", 10)));
+        // short tokens only match word prefixes
+        assertTrue(index.search("ua", 10).isEmpty());
+    }
+
+    @Test
+    public void search_exactUsernameWinsWithSeparators() {
+        StudentSearchIndex index = new StudentSearchIndex();
+        // every student matches both words equally; without the bonus the name order decides
+        index.put(student("a", "Ana Reyes", "areyes", "2020-1111"));
+        index.put(student("b", "Ana Reyes Cruz", "reyes_ana", "2020-2222"));
+        index.put(student("c", "Zamora Ana Reyes", "ana.reyes", "2020-3333"));
+
+        assertEquals("c", index.search("ana.reyes", 10).get(0).uid);
+        assertEquals("b", index.search("Reyes_Ana", 10).get(0).uid);
+        assertEquals("a", index.search("ana reyes", 10).get(0).uid);
+        assertEquals(Arrays.asList("b"), uids(index.search("2020-2222", 10)));
+    }
+
+    @Test
+    public void remove_dropsStudentAndReusesSlot() {
+        StudentSearchIndex index = roster();
+
+        index.remove("u2");
+        assertEquals(3, index.size());
+        assertEquals(Arrays.asList("u1"), uids(index.search("juan", 10)));
+        assertTrue(index.search("santos", 10).isEmpty());
+        index.remove("missing");
+        assertEquals(3, index.size());
+
+        // the freed slot takes the next student; nothing of u2 must leak into it
+        index.put(student("u5", "Lorna Bautista", "lbautista", "2024-0005"));
+        assertEquals(4, index.size());
+        assertEquals(Arrays.asList("u5"), uids(index.search("bautista", 10)));
+        assertTrue(index.search("juana", 10).isEmpty());
+
+        // an update is remove + put under the same uid
+        index.remove("u5");
+        index.put(student("u5", "Lorna Bautista Reyes", "lbautista", "2024-0005"));
+        assertEquals(Arrays.asList("u5"), uids(index.search("lorna reyes", 10)));
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    public void clear_emptiesIndex() {
+        StudentSearchIndex index = roster();
+        index.clear();
+
+        assertEquals(0, index.size());
+        assertFalse(index.isReady());
+        assertTrue(index.search("juan", 10).isEmpty());
+    }
+
+    private static final String[] FIRST = { "juan", "maria", "jose", "ana", "pedro", "lorna", "carlo", "angela",
+            "mark", "kristine", "john", "grace", "paolo", "bea", "miguel", "joy" };
+    private static final String[] LAST = { "dela cruz", "santos", "reyes", "bautista", "garcia", "mendoza",
+            "torres", "villanueva", "ramos", "aquino", "castillo", "navarro", "flores", "gonzales" };
+
+    private static final int ROSTER = 20_000;
+    private static final String[] QUERIES = { "juan", "dela cruz", "ma", "bautista 2021", "grace.flores", "20", "villa",
+            "2023-01234", "kristine aquino" };
+
+    private static StudentSearchIndex roster20k(Random random) {
+        StudentSearchIndex index = new StudentSearchIndex();
+        for (int i = 0; i < ROSTER; i++) {
+            String first = FIRST[random.nextInt(FIRST.length)];
+            String last = LAST[random.nextInt(LAST.length)];
+            index.put(student("uid" + i, first + " " + last, first + "." + last.replace(" ", "") + i,
+                    String.format("20%02d-%05d", 18 + i % 7, i)));
+        }
+        return index;
+    }
+
+    // listener deltas: remove + put of existing students
+    private static void churn(StudentSearchIndex index, Random random, int updates) {
+        for (int i = 0; i < updates; i++) {
+            int k = random.nextInt(ROSTER);
+            index.remove("uid" + k);
+            index.put(student("uid" + k, "Renamed Student" + k, "renamed" + k, String.format("2099-%05d", k)));
+        }
+    }
+
+    @Test
+    public void roster20k_staysConsistentUnderChurn() {
+        Random random = new Random(42);
+        StudentSearchIndex index = roster20k(random);
+        assertEquals(ROSTER, index.size());
+        int hits = 0;
+        for (String q : QUERIES) hits += index.search(q, 50).size();
+        assertTrue(hits > 0);
+
+        churn(index, random, 2_000);
+
+        assertEquals(ROSTER, index.size());
+        index.remove("uid7");
+        index.put(student("uid7", "Renamed Student7", "renamed7", "2099-00007"));
+        assertEquals("uid7", index.search("renamed7", 1).get(0).uid);
+    }
+
+    // Timing harness: build / search / churn costs for a 20k roster. The bounds are loose on
+    // purpose (machines vary); they catch a fall back to a linear scan.
+    @Test
+    public void bench_20kStudents() {
+        Benchmarks.assumeEnabled();
+        Random random = new Random(42);
+
+        long start = System.nanoTime();
+        StudentSearchIndex index = roster20k(random);
+        long buildMs = (System.nanoTime() - start) / 1_000_000;
+
+        // warm up the JIT before timing
+        for (int i = 0; i < 200; i++) index.search(QUERIES[i % QUERIES.length], 50);
+
+        final int rounds = 1_000;
+        start = System.nanoTime();
+        int hits = 0;
+        for (int i = 0; i < rounds; i++) hits += index.search(QUERIES[i % QUERIES.length], 50).size();
+        double searchMs = (System.nanoTime() - start) / 1e6 / rounds;
+
+        start = System.nanoTime();
+        churn(index, random, 2_000);
+        double churnMs = (System.nanoTime() - start) / 1e6 / 2_000;
+
+        Benchmarks.record(getClass(), String.format(Locale.US,
+                "StudentSearchIndex %d students: build %d ms, search %.3f ms/query (%d hits), update %.3f ms",
+                ROSTER, buildMs, searchMs, hits, churnMs));
+        assertTrue("search too slow: " + searchMs + " ms", searchMs < 20);
+        assertTrue("update too slow: " + churnMs + " ms", churnMs < 5);
+    }
+}
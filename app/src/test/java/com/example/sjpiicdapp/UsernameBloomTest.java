@@ -0,0 +1,185 @@
+package com.example.sjpiicdapp;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * UsernameBloom must hash exactly like functions/usernameBloom.js, or the client reads the
+ * server's filter wrong and calls taken usernames free. The vectors below come from
+ * functions/scripts/username-bloom-vectors.js; re-run it and paste its output when either side
+ * changes. Also checks the false-positive rate at 50k usernames; the JVM half of the size /
+ * speed benchmark (functions/scripts/username-bloom-bench.js is the Node half) is opt-in, see
+ * Benchmarks.
+ */
+public class UsernameBloomTest {
+
+    private static final class Vector {
+        final String username;
+        final int h1;
+        final int h2;
+        final int[] positions;
+
+        Vector(String username, int h1, int h2, int[] positions) {
+            this.username = username;
+            this.h1 = h1;
+            this.h2 = h2;
+            this.positions = positions;
+        }
+    }
+
+    private static Vector vector(String username, int h1, int h2, int[] positions) {
+        return new Vector(username, h1, h2, positions);
+    }
+
+    // ---- generated by functions/scripts/username-bloom-vectors.js ----
+    private static final int M = 19176;
+    private static final int K = 7;
+
+    // username, fnv1a(offset 1), fnv1a(offset 2), positions(username, M, K)
+    private static final Vector[] VECTORS = {
+        vector("juan.delacruz", 0x2db5bb5d, 0x2bed044d, new int[] { 17285, 17850, 18415, 18980, 369, 16590, 17155 }),
+        vector("maria_santos", 0xe215160a, 0x8e9f91fa, new int[] { 738, 19029, 2488, 1603, 718, 3353, 2468 }),
+        vector("ana-reyes", 0xa757fc8c, 0x73e8c19c, new int[] { 3196, 14449, 10046, 2123, 16896, 12493, 4570 }),
+        vector("x", 0xfd0c5087, 0x78734017, new int[] { 10527, 1566, 15301, 6340, 899, 11114, 5673 }),
+        vector("josé", 0xebdd69a7, 0x071c5937, new int[] { 16079, 1366, 5829, 6772, 11235, 15698, 985 }),
+        vector("kim2024", 0x834ce400, 0x6ace74f0, new int[] { 11400, 6153, 16562, 11315, 2548, 16477, 7710 }),
+        vector("", 0x811c9dc5, 0x5bd1e995, new int[] { 15301, 13994, 9167, 7860, 6553, 1726, 419 }),
+    };
+
+    // createFilter(64) + addTo(juan.delacruz, maria_santos, ana-reyes, kim2024)
+    private static final String[] FILTER_NAMES = { "juan.delacruz", "maria_santos", "ana-reyes", "kim2024" };
+    private static final int FILTER_M = 616;
+    private static final int FILTER_K = 7;
+    private static final String FILTER_HEX = "1000004000000000000000000000000000000000000000000000010020000108000000001004000002000010000081001004040200200000000000400200080800042000000000480022400000";
+
+    // sizeFor(capacityFor(50000)) and sizeFor(50000)
+    private static final int REBUILT_50K_M = 498424;
+    private static final int FULL_50K_M = 479256;
+    private static final int BENCH_K = 7;
+    // ---- end of generated values ----
+
+    private static byte[] hex(String s) {
+        byte[] out = new byte[s.length() / 2];
+        for (int i = 0; i < out.length; i++) out[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+        return out;
+    }
+
+    @Test
+    public void fnv1a_matchesJs() {
+        for (Vector v : VECTORS) {
+            byte[] bytes = v.username.getBytes(StandardCharsets.UTF_8);
+            assertEquals(v.username, v.h1, UsernameBloom.fnv1a(bytes, UsernameBloom.FNV_OFFSET));
+            assertEquals(v.username, v.h2, UsernameBloom.fnv1a(bytes, UsernameBloom.FNV_OFFSET_2));
+        }
+    }
+
+    @Test
+    public void positions_matchJs() {
+        UsernameBloom filter = new UsernameBloom(M, K, new byte[M / 8]);
+        for (Vector v : VECTORS) {
+            assertArrayEquals(v.positions, filter.positions(v.username));
+        }
+    }
+
+    @Test
+    public void add_producesJsBits() {
+        UsernameBloom filter = new UsernameBloom(FILTER_M, FILTER_K, new byte[FILTER_M / 8]);
+        for (String name : FILTER_NAMES) filter.add(name);
+        assertArrayEquals(hex(FILTER_HEX), filter.bits());
+    }
+
+    @Test
+    public void mightContain_readsJsFilter() {
+        UsernameBloom filter = new UsernameBloom(FILTER_M, FILTER_K, hex(FILTER_HEX));
+        for (String name : FILTER_NAMES) assertTrue(name, filter.mightContain(name));
+        // a filter this small may report a few free names as taken, but never all of them
+        int maybeTaken = 0;
+        for (int i = 0; i < 100; i++) {
+            if (filter.mightContain("free" + i)) maybeTaken++;
+        }
+        assertTrue(maybeTaken < 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsShortBits() {
+        new UsernameBloom(FILTER_M, FILTER_K, new byte[FILTER_M / 8 - 1]);
+    }
+
+    private static final String[] FIRST = { "juan", "maria", "jose", "ana", "mark", "angel", "john", "kim", "paolo",
+            "bea", "carlo", "joy" };
+    private static final String[] LAST = { "delacruz", "santos", "reyes", "garcia", "mendoza", "torres", "flores",
+            "ramos", "castro", "lim" };
+    private static final String[] SEP = { "", ".", "_" };
+
+    // same generator as username-bloom-bench.js: first + sep + last + salt + number
+    private static String[] usernames(int count, String salt) {
+        Set<String> out = new LinkedHashSet<>();
+        for (int i = 0; out.size() < count; i++) {
+            out.add(FIRST[i % FIRST.length] + SEP[i % SEP.length] + LAST[(i / FIRST.length) % LAST.length] + salt + i);
+        }
+        return out.toArray(new String[0]);
+    }
+
+    private static UsernameBloom filled(int m, String[] members) {
+        UsernameBloom filter = new UsernameBloom(m, BENCH_K, new byte[m / 8]);
+        for (String u : members) filter.add(u);
+        return filter;
+    }
+
+    private static int falsePositives(UsernameBloom filter, String[] probes) {
+        int count = 0;
+        for (String u : probes) {
+            if (filter.mightContain(u)) count++;
+        }
+        return count;
+    }
+
+    // False-positive rate at 50k usernames, after a rebuild and at full design load (rebuild
+    // overdue). The generators are deterministic, so this only catches a broken filter: any
+    // false negative, or a rate far above TARGET_FPR = 1%.
+    @Test
+    public void falsePositiveRate_50kUsernames() {
+        String[] members = usernames(50_000, "");
+        String[] probes = usernames(200_000, "x");
+        double[] bounds = { 0.015, 0.02 };
+        int[] sizes = { REBUILT_50K_M, FULL_50K_M };
+        for (int i = 0; i < sizes.length; i++) {
+            UsernameBloom filter = filled(sizes[i], members);
+            for (String u : members) assertTrue("false negative " + u, filter.mightContain(u));
+            double rate = falsePositives(filter, probes) / (double) probes.length;
+            assertTrue("m=" + sizes[i] + " false-positive rate " + rate, rate < bounds[i]);
+        }
+    }
+
+    // Benchmark: filter size, false-positive rate and add / query cost at 50k usernames.
+    @Test
+    public void bench_50kUsernames() {
+        Benchmarks.assumeEnabled();
+        String[] members = usernames(50_000, "");
+        String[] probes = usernames(200_000, "x");
+        measure("after rebuild", REBUILT_50K_M, members, probes);
+        measure("at capacity  ", FULL_50K_M, members, probes);
+    }
+
+    private void measure(String label, int m, String[] members, String[] probes) {
+        long start = System.nanoTime();
+        UsernameBloom filter = filled(m, members);
+        double addNs = (System.nanoTime() - start) / (double) members.length;
+
+        start = System.nanoTime();
+        int fp = falsePositives(filter, probes);
+        double queryNs = (System.nanoTime() - start) / (double) probes.length;
+
+        Benchmarks.record(getClass(), String.format(Locale.US,
+                "UsernameBloom %s: n=%d m=%d bits (%.1f KB) k=%d, false positives %d/%d = %.3f%%, "
+                        + "add %.0f ns, query %.0f ns",
+                label, members.length, m, m / 8 / 1024.0, BENCH_K, fp, probes.length,
+                100.0 * fp / probes.length, addNs, queryNs));
+    }
+}
@@ -0,0 +1,138 @@
+// functions/activeDays.js
+//
+// One-appointment-per-day index for bookings.
+//
+// users/{uid}.activeDays = { "yyyy-MM-dd": appointmentId } for the user's active appointments,
+// so the booking transactions check the per-day rule on the user doc they read anyway instead
+// of querying appointments. users/{uid}.activeDaysIndexed = true marks users whose map is known
+// to be complete (created after the index existed, or backfilled); for everyone else the
+// bookings fall back to the old userId + date query. BookingTransaction.java does the same.
+//
+// Bookings write their own entry; the onAppointmentActiveDay trigger then keeps the map in
+// step with every other change (reschedule, cancel / reject, delete), whoever made it.
+
+const admin = require('firebase-admin');
+
+const BACKFILL_PAGE_SIZE = 500;
+const INACTIVE_STATUSES = ['REJECTED', 'CANCELLED'];
+
+// Same rule as BookingTransaction.isActive: a status is required, REJECTED / CANCELLED free the day.
+function isActiveAppointment(appt) {
+  return !!appt && typeof appt.status === 'string' &&
+    !INACTIVE_STATUSES.includes(appt.status.toUpperCase());
+}
+
+// The day an appointment holds in activeDays, or null.
+function activeDayOf(appt) {
+  return isActiveAppointment(appt) && appt.date ? appt.date : null;
+}
+
+// Inside a booking transaction, after the user doc was read: the id of another active
+// appointment the user has on `date`, or null. Only reads.
+async function findSameDay(db, tx, userSnap, uid, date, apptId) {
+  const days = (userSnap.exists && userSnap.get('activeDays')) || {};
+  const entry = days[date];
+  if (typeof entry === 'string' && entry !== apptId) {
+    const other = await tx.get(db.collection('appointments').doc(entry));
+    if (other.exists && activeDayOf(other.data()) === date) return entry;
+  }
+  if (userSnap.exists && userSnap.get('activeDaysIndexed') === true) return null;
+
+  // not backfilled: appointments booked before the index may be missing from the map
+  const sameDay = await tx.get(db.collection('appointments')
+    .where('userId', '==', uid)
+    .where('date', '==', date));
+  const hit = sameDay.docs.find((d) => d.id !== apptId && isActiveAppointment(d.data()));
+  return hit ? hit.id : null;
+}
+
+// Merge value for users/{uid} that moves one appointment's entry from oldDay to newDay.
+// An old entry is only removed when it still points at this appointment.
+function activeDaysUpdate(days, apptId, oldDay, newDay) {
+  const update = {};
+  if (oldDay && oldDay !== newDay && days[oldDay] === apptId) {
+    update[oldDay] = admin.firestore.FieldValue.delete();
+  }
+  if (newDay && days[newDay] !== apptId) update[newDay] = apptId;
+  return Object.keys(update).length ? { activeDays: update } : null;
+}
+
+// Applies one appointment write (before / after data, either may be null) to the owner's map.
+async function syncActiveDay(db, uid, apptId, before, after) {
+  const oldDay = activeDayOf(before);
+  const newDay = activeDayOf(after);
+  if (oldDay === newDay) return false;
+
+  const userRef = db.collection('users').doc(uid);
+  return db.runTransaction(async (tx) => {
+    const userSnap = await tx.get(userRef);
+    if (!userSnap.exists) return false;
+    const update = activeDaysUpdate(userSnap.get('activeDays') || {}, apptId, oldDay, newDay);
+    if (!update) return false;
+    tx.set(userRef, update, { merge: true });
+    return true;
+  });
+}
+
+// Adds every active appointment to its owner's map and marks every user indexed. Entries are
+// merged one by one, so bookings made while this runs are never overwritten.
+async function backfillActiveDays(db, now) {
+  const byUser = new Map();
+  let scanned = 0;
+  let last = null;
+  for (;;) {
+    let q = db.collection('appointments')
+      .orderBy(admin.firestore.FieldPath.documentId())
+      .select('userId', 'date', 'status')
+      .limit(BACKFILL_PAGE_SIZE);
+    if (last) q = q.startAfter(last);
+    const page = await q.get();
+    if (page.empty) break;
+
+    page.docs.forEach((d) => {
+      scanned++;
+      const uid = d.get('userId');
+      const day = activeDayOf(d.data());
+      if (!uid || !day) return;
+      if (!byUser.has(uid)) byUser.set(uid, {});
+      byUser.get(uid)[day] = d.id;
+    });
+    last = page.docs[page.docs.length - 1];
+    if (page.size < BACKFILL_PAGE_SIZE) break;
+  }
+
+  const writer = db.bulkWriter();
+  let users = 0;
+  last = null;
+  for (;;) {
+    let q = db.collection('users')
+      .orderBy(admin.firestore.FieldPath.documentId())
+      .select('activeDaysIndexed')
+      .limit(BACKFILL_PAGE_SIZE);
+    if (last) q = q.startAfter(last);
+    const page = await q.get();
+    if (page.empty) break;
+
+    page.docs.forEach((d) => {
+      users++;
+      const update = { activeDaysIndexed: true, activeDaysIndexedAt: now };
+      // never an empty map: merging {} would replace the field instead of adding to it
+      if (byUser.has(d.id)) update.activeDays = byUser.get(d.id);
+      writer.set(d.ref, update, { merge: true });
+    });
+    last = page.docs[page.docs.length - 1];
+    if (page.size < BACKFILL_PAGE_SIZE) break;
+  }
+
+  await writer.close();
+  return { appointments: scanned, users, indexedUsers: byUser.size };
+}
+
+module.exports = {
+  isActiveAppointment,
+  activeDayOf,
+  findSameDay,
+  activeDaysUpdate,
+  syncActiveDay,
+  backfillActiveDays
+};
@@ -0,0 +1,71 @@
+// functions/capacityRollups.js
+//
+// Per-day booking totals for AppointmentCapacityActivity.
+//
+// capacityDaily/{yyyy-MM-dd}  { date, bookedCount, windows: { "09:00-10:00": n, ... }, capacity, updatedAt }
+//
+// The onSlotWritten trigger folds every change of slots/{slotId}.bookedCount into the day's
+// doc with increments, so the screen reads one small doc per day instead of every slot ever
+// created. Triggers are at-least-once; backfillCapacityRollups() recomputes the docs from
+// slots and is also the fix for any drift.
+
+const admin = require('firebase-admin');
+
+const BACKFILL_PAGE_SIZE = 500;
+
+function rollupRefFor(db, date) {
+  return db.collection('capacityDaily').doc(date);
+}
+
+async function applySlotDelta(db, date, window, delta, capacity, now) {
+  const update = {
+    date,
+    bookedCount: admin.firestore.FieldValue.increment(delta),
+    capacity,
+    updatedAt: now
+  };
+  if (window) update.windows = { [window]: admin.firestore.FieldValue.increment(delta) };
+  await rollupRefFor(db, date).set(update, { merge: true });
+}
+
+// Rebuilds every capacityDaily doc from the slots collection, paging through slots by id.
+async function backfillCapacityRollups(db, capacity, now) {
+  const totals = new Map();
+  let last = null;
+
+  for (;;) {
+    let q = db.collection('slots')
+      .orderBy(admin.firestore.FieldPath.documentId())
+      .select('date', 'window', 'bookedCount')
+      .limit(BACKFILL_PAGE_SIZE);
+    if (last) q = q.startAfter(last);
+    const page = await q.get();
+    if (page.empty) break;
+
+    page.docs.forEach((d) => {
+      const date = d.get('date');
+      if (!date) return;
+      const t = totals.get(date) || { bookedCount: 0, windows: {} };
+      const booked = d.get('bookedCount') || 0;
+      t.bookedCount += booked;
+      const window = d.get('window');
+      if (window) t.windows[window] = (t.windows[window] || 0) + booked;
+      totals.set(date, t);
+    });
+    last = page.docs[page.docs.length - 1];
+    if (page.size < BACKFILL_PAGE_SIZE) break;
+  }
+
+  const writer = db.bulkWriter();
+  totals.forEach((t, date) => {
+    writer.set(rollupRefFor(db, date), { date, ...t, capacity, updatedAt: now, backfilledAt: now });
+  });
+  await writer.close();
+  return { days: totals.size };
+}
+
+module.exports = {
+  rollupRefFor,
+  applySlotDelta,
+  backfillCapacityRollups
+};
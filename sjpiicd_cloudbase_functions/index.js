@@ -4,6 +4,19 @@ const admin = require('firebase-admin');
 admin.initializeApp();
 
 const db = admin.firestore();
+const {
+  SLOT_SHARD_COUNT,
+  slotIdFor,
+  claimSlotSeat,
+  releaseSlotSeat,
+  rebalanceSlotShards
+} = require('./slotShards');
+const { joinQueue, checkAdmission } = require('./bookingQueue');
+const { applySlotDelta, backfillCapacityRollups } = require('./capacityRollups');
+const { buildSearchKeys, sameKeys, backfillSearchKeys } = require('./searchKeys');
+const { isValidRole, syncRoleClaim } = require('./roles');
+const { recordUsernameDelta, rebuildUsernameBloom } = require('./usernameBloom');
+const { findSameDay, syncActiveDay, backfillActiveDays } = require('./activeDays');
 
 // -------------------------------------------
 // CLOUDINARY CONFIG (for permit uploads)
@@ -33,13 +46,15 @@ const MAX_APPOINTMENTS_PER_USER = 5;
 // HELPER FUNCTIONS
 // -------------------------------------------
 
+// count() aggregation: one billed read per 1000 index entries, no documents downloaded
 async function checkAppointmentLimit(userId) {
   const snapshot = await db.collection('appointments')
     .where('userId', '==', userId)
     .where('status', 'in', ['PENDING', 'PAID', 'APPROVED'])
+    .count()
     .get();
 
-  return snapshot.size < MAX_APPOINTMENTS_PER_USER;
+  return snapshot.data().count < MAX_APPOINTMENTS_PER_USER;
 }
 
 function isValidDate(dateString) {
@@ -61,6 +76,17 @@ function isValidTimeWindow(window) {
   return validWindows.includes(window);
 }
 
+const RESERVED_USERNAMES = ['admin', 'root', 'system', 'cashier', 'support'];
+
+function validateUsername(username) {
+  if (!/^[a-z0-9._-]{3,30}$/.test(username)) {
+    throw new functions.https.HttpsError("invalid-argument", "Username must be 3-30 characters (lowercase letters, numbers, ., _, -)");
+  }
+  if (RESERVED_USERNAMES.includes(username)) {
+    throw new functions.https.HttpsError("invalid-argument", "Username is reserved");
+  }
+}
+
 // Helper to get current timestamp as ISO string
 function getCurrentTimestamp() {
   return new Date().toISOString();
@@ -83,14 +109,25 @@ if (functions && functions.auth && typeof functions.auth.user === 'function') {
         role = "admin";
       }
 
-      await admin.auth().setCustomUserClaims(user.uid, { role });
+      // registerStudent may already have written the profile; its role wins
+      const userRef = db.collection('users').doc(user.uid);
+      const wrote = await db.runTransaction(async (tx) => {
+        const snap = await tx.get(userRef);
+        if (snap.exists && snap.data().role) return false;
+        tx.set(userRef, {
+          email: user.email,
+          displayName: user.displayName || null,
+          role: role,
+          createdAt: getCurrentTimestamp()
+        }, { merge: true });
+        return true;
+      });
+      if (!wrote) {
+        console.log(`User ${user.uid} already registered, keeping its role`);
+        return;
+      }
 
-      await db.collection('users').doc(user.uid).set({
-        email: user.email,
-        displayName: user.displayName || null,
-        role: role,
-        createdAt: getCurrentTimestamp()
-      }, { merge: true });
+      await syncRoleClaim(admin.auth(), user.uid, role);
 
       console.log(`User ${user.uid} created with role: ${role}`);
     } catch (err) {
@@ -149,29 +186,28 @@ if (functions && functions.firestore && typeof functions.firestore.document ===
         return;
       }
 
-      const slotId = `${date}_${window}`;
-      const slotRef = db.collection("slots").doc(slotId);
+      // Client and callable bookings already claimed a shard seat in their own transaction.
+      if (typeof appt.slotShard === 'number') {
+        return;
+      }
+
+      const slotId = slotIdFor(date, window);
 
       try {
-        await db.runTransaction(async (tx) => {
-          const s = await tx.get(slotRef);
-          if (!s.exists) {
-            tx.set(slotRef, {
-              date,
-              window,
-              capacity: DAILY_CAPACITY,
-              bookedCount: 1,
-              createdAt: getCurrentTimestamp()
-            });
-          } else {
-            const currentCount = s.get("bookedCount") || 0;
-            tx.update(slotRef, {
-              bookedCount: currentCount + 1,
-              updatedAt: getCurrentTimestamp()
-            });
+        const shard = await db.runTransaction(async (tx) => {
+          const fresh = await tx.get(snap.ref);
+          if (!fresh.exists || typeof fresh.get("slotShard") === 'number') return null;
+
+          const claimed = await claimSlotSeat(db, tx, date, window, getCurrentTimestamp());
+          if (claimed === null) {
+            throw new Error("SLOT_FULL");
           }
+          tx.update(snap.ref, { slotShard: claimed });
+          return claimed;
         });
-        console.log(`Slot ${slotId} incremented for appointment ${snap.id}`);
+        if (shard !== null) {
+          console.log(`Slot ${slotId} shard ${shard} incremented for appointment ${snap.id}`);
+        }
       } catch (err) {
         console.error(`Failed to increment slot ${slotId}:`, err);
       }
@@ -198,51 +234,31 @@ if (functions && functions.firestore && typeof functions.firestore.document ===
       if (!oldDate || !oldWindow || !newDate || !newWindow) return;
       if (oldDate === newDate && oldWindow === newWindow) return;
 
-      const oldSlotId = `${oldDate}_${oldWindow}`;
-      const newSlotId = `${newDate}_${newWindow}`;
+      const oldSlotId = slotIdFor(oldDate, oldWindow);
+      const newSlotId = slotIdFor(newDate, newWindow);
 
-      const oldSlotRef = db.collection("slots").doc(oldSlotId);
-      const newSlotRef = db.collection("slots").doc(newSlotId);
+      // MyAppointmentsActivity claims the new seat in its own transaction and tags it with
+      // seatSlotId; then only the old seat is given back here.
+      const claimedByClient = after.seatSlotId === newSlotId && typeof after.slotShard === 'number';
 
       try {
         await db.runTransaction(async (tx) => {
-          const oldSnap = await tx.get(oldSlotRef);
-          const newSnap = await tx.get(newSlotRef);
+          const now = getCurrentTimestamp();
+          // All reads happen inside these two helpers, before any write is queued.
+          const giveBack = await releaseSlotSeat(db, tx, oldDate, oldWindow, before.slotShard, now);
+          const newShard = claimedByClient ?
+            after.slotShard : await claimSlotSeat(db, tx, newDate, newWindow, now);
 
-          if (!oldSnap.exists) {
-            throw new Error("OLD_SLOT_MISSING");
-          }
-
-          const oldCount = oldSnap.get("bookedCount") || 0;
-          let newCount = newSnap.exists ? newSnap.get("bookedCount") || 0 : 0;
-          const capacity = newSnap.exists ? newSnap.get("capacity") || DAILY_CAPACITY : DAILY_CAPACITY;
-
-          if (newCount >= capacity) {
+          if (newShard === null) {
             throw new functions.https.HttpsError("aborted", "NEW_SLOT_FULL");
           }
 
-          tx.update(oldSlotRef, {
-            bookedCount: Math.max(0, oldCount - 1),
-            updatedAt: getCurrentTimestamp()
-          });
-
-          if (!newSnap.exists) {
-            tx.set(newSlotRef, {
-              date: newDate,
-              window: newWindow,
-              capacity: DAILY_CAPACITY,
-              bookedCount: 1,
-              createdAt: getCurrentTimestamp()
-            });
-          } else {
-            tx.update(newSlotRef, {
-              bookedCount: newCount + 1,
-              updatedAt: getCurrentTimestamp()
-            });
-          }
+          giveBack();
 
           tx.update(change.after.ref, {
-            lastRescheduledAt: getCurrentTimestamp()
+            slotShard: newShard,
+            seatSlotId: newSlotId,
+            lastRescheduledAt: now
           });
         });
 
@@ -256,25 +272,330 @@ if (functions && functions.firestore && typeof functions.firestore.document ===
 }
 
 // =====================================================
-// CALLABLE: Reserve Username
+// FIRESTORE TRIGGER: Appointment Deleted (give the seat back)
 // =====================================================
-exports.reserveUsername = functions.https.onCall(async (data, context) => {
+// Deletes come from MyAppointmentsActivity (owner) and the admin screens. The seat goes back
+// to the shard recorded in slotShard, or to the parent slot for pre-sharding appointments.
+if (functions && functions.firestore && typeof functions.firestore.document === 'function') {
+  exports.onAppointmentDeleted = functions.firestore
+    .document("appointments/{appointmentId}")
+    .onDelete(async (snap, context) => {
+      const appt = snap.data() || {};
+      if (!appt.date || !appt.window) return;
+
+      const slotId = slotIdFor(appt.date, appt.window);
+      try {
+        await db.runTransaction(async (tx) => {
+          const giveBack = await releaseSlotSeat(db, tx, appt.date, appt.window, appt.slotShard, getCurrentTimestamp());
+          giveBack();
+        });
+        console.log(`Appointment ${context.params.appointmentId} deleted, seat returned to ${slotId}`);
+      } catch (err) {
+        console.error(`Failed to release seat on ${slotId} for deleted appointment ${context.params.appointmentId}:`, err);
+      }
+    });
+} else {
+  console.log("Skipping onAppointmentDeleted registration");
+}
+
+// =====================================================
+// FIRESTORE TRIGGER: Appointment Written (per-day index)
+// =====================================================
+// Keeps users/{uid}.activeDays in step with every appointment change: bookings add their own
+// entry, this moves it on reschedule and removes it on cancel / reject / delete.
+if (functions && functions.firestore && typeof functions.firestore.document === 'function') {
+  exports.onAppointmentActiveDay = functions.firestore
+    .document("appointments/{appointmentId}")
+    .onWrite(async (change, context) => {
+      const before = change.before.exists ? change.before.data() : null;
+      const after = change.after.exists ? change.after.data() : null;
+      const uid = (after && after.userId) || (before && before.userId);
+      if (!uid) return;
+
+      try {
+        await syncActiveDay(db, uid, context.params.appointmentId, before, after);
+      } catch (err) {
+        console.error(`Failed to update activeDays for appointment ${context.params.appointmentId}:`, err);
+      }
+    });
+} else {
+  console.log("Skipping onAppointmentActiveDay registration");
+}
+
+// =====================================================
+// FIRESTORE TRIGGER: Slot Shard Written (mirror bookedCount)
+// =====================================================
+// Bookings only touch slots/{slotId}/shards/{n}. This folds each shard delta into the parent
+// slot's bookedCount with an increment (no transaction), so screens that read slots/{slotId}
+// keep working without putting booking transactions back on a single hot document.
+if (functions && functions.firestore && typeof functions.firestore.document === 'function') {
+  exports.onSlotShardWritten = functions.firestore
+    .document("slots/{slotId}/shards/{shardId}")
+    .onWrite(async (change, context) => {
+      const before = change.before.exists ? change.before.data() : {};
+      const after = change.after.exists ? change.after.data() : {};
+
+      const delta = (after.bookedCount || 0) - (before.bookedCount || 0);
+      if (delta === 0) return;
+
+      const update = {
+        bookedCount: admin.firestore.FieldValue.increment(delta),
+        shardCount: SLOT_SHARD_COUNT,
+        updatedAt: getCurrentTimestamp()
+      };
+      const date = after.date || before.date;
+      const window = after.window || before.window;
+      if (date) update.date = date;
+      if (window) update.window = window;
+
+      try {
+        await db.collection("slots").doc(context.params.slotId).set(update, { merge: true });
+      } catch (err) {
+        console.error(`Failed to mirror shard ${context.params.shardId} into slot ${context.params.slotId}:`, err);
+      }
+    });
+} else {
+  console.log("Skipping onSlotShardWritten registration");
+}
+
+// =====================================================
+// FIRESTORE TRIGGER: Slot Written (per-day capacity rollup)
+// =====================================================
+// Catches every bookedCount change on the parent slot: shard mirrors from onSlotShardWritten
+// and direct decrements for appointments booked before sharding.
+if (functions && functions.firestore && typeof functions.firestore.document === 'function') {
+  exports.onSlotWritten = functions.firestore
+    .document("slots/{slotId}")
+    .onWrite(async (change, context) => {
+      const before = change.before.exists ? change.before.data() : {};
+      const after = change.after.exists ? change.after.data() : {};
+
+      const delta = (after.bookedCount || 0) - (before.bookedCount || 0);
+      if (delta === 0) return;
+
+      const date = after.date || before.date;
+      if (!date) return;
+
+      try {
+        await applySlotDelta(db, date, after.window || before.window, delta, DAILY_CAPACITY, getCurrentTimestamp());
+      } catch (err) {
+        console.error(`Failed to roll up slot ${context.params.slotId} into capacityDaily/${date}:`, err);
+      }
+    });
+} else {
+  console.log("Skipping onSlotWritten registration");
+}
+
+// =====================================================
+// CALLABLE: Backfill Capacity Rollups (Admin Only)
+// =====================================================
+exports.backfillCapacityRollups = functions.https.onCall(async (data, context) => {
   if (!context.auth) {
     throw new functions.https.HttpsError("unauthenticated", "Must be signed in");
   }
 
-  const uid = context.auth.uid;
-  const username = String(data.username || "").trim().toLowerCase();
+  const userDoc = await db.collection("users").doc(context.auth.uid).get();
+  if (!userDoc.exists || userDoc.data().role !== "admin") {
+    throw new functions.https.HttpsError("permission-denied", "Admin access required");
+  }
 
-  if (!/^[a-z0-9._-]{3,30}$/.test(username)) {
-    throw new functions.https.HttpsError("invalid-argument", "Username must be 3-30 characters (lowercase letters, numbers, ., _, -)");
+  try {
+    const result = await backfillCapacityRollups(db, DAILY_CAPACITY, getCurrentTimestamp());
+    console.log(`Backfilled capacityDaily for ${result.days} days`);
+    return { ok: true, ...result };
+  } catch (err) {
+    console.error("backfillCapacityRollups error:", err);
+    throw new functions.https.HttpsError("internal", "Failed to backfill capacity rollups");
   }
+});
 
-  const reserved = ['admin', 'root', 'system', 'cashier', 'support'];
-  if (reserved.includes(username)) {
-    throw new functions.https.HttpsError("invalid-argument", "Username is reserved");
+// =====================================================
+// FIRESTORE TRIGGER: User Written (student search keys)
+// =====================================================
+// Keeps users/{uid}.searchKeys in step with name / username / email. Writing the keys fires
+// this trigger again; the second run sees identical keys and stops.
+if (functions && functions.firestore && typeof functions.firestore.document === 'function') {
+  exports.onUserWritten = functions.firestore
+    .document("users/{uid}")
+    .onWrite(async (change, context) => {
+      if (!change.after.exists) return;
+
+      const user = change.after.data();
+      const keys = buildSearchKeys(user);
+      if (sameKeys(keys, user.searchKeys)) return;
+
+      try {
+        await change.after.ref.update({ searchKeys: keys, searchKeysUpdatedAt: getCurrentTimestamp() });
+      } catch (err) {
+        console.error(`Failed to update searchKeys for user ${context.params.uid}:`, err);
+      }
+    });
+} else {
+  console.log("Skipping onUserWritten registration");
+}
+
+// =====================================================
+// CALLABLE: Backfill Search Keys (Admin Only)
+// =====================================================
+exports.backfillSearchKeys = functions.https.onCall(async (data, context) => {
+  if (!context.auth) {
+    throw new functions.https.HttpsError("unauthenticated", "Must be signed in");
+  }
+
+  const userDoc = await db.collection("users").doc(context.auth.uid).get();
+  if (!userDoc.exists || userDoc.data().role !== "admin") {
+    throw new functions.https.HttpsError("permission-denied", "Admin access required");
+  }
+
+  try {
+    const result = await backfillSearchKeys(db, getCurrentTimestamp());
+    console.log(`Backfilled searchKeys: ${result.updated} of ${result.scanned} users updated`);
+    return { ok: true, ...result };
+  } catch (err) {
+    console.error("backfillSearchKeys error:", err);
+    throw new functions.https.HttpsError("internal", "Failed to backfill search keys");
+  }
+});
+
+// =====================================================
+// FIRESTORE TRIGGER: User Role Changed (role claim sync)
+// =====================================================
+// users/{uid}.role is still written directly at registration; mirror it into the `role`
+// custom claim so the app can route from the ID token without reading the user doc.
+// Only role changes cost an Auth call; other user writes return right away.
+if (functions && functions.firestore && typeof functions.firestore.document === 'function') {
+  exports.onUserRoleChanged = functions.firestore
+    .document("users/{uid}")
+    .onWrite(async (change, context) => {
+      if (!change.after.exists) return;
+
+      const before = change.before.exists ? change.before.data() : {};
+      const role = change.after.data().role;
+      if (before.role === role || !isValidRole(role)) return;
+
+      try {
+        if (await syncRoleClaim(admin.auth(), context.params.uid, role)) {
+          console.log(`Role claim for ${context.params.uid} set to ${role}`);
+        }
+      } catch (err) {
+        console.error(`Failed to sync role claim for ${context.params.uid}:`, err);
+      }
+    });
+} else {
+  console.log("Skipping onUserRoleChanged registration");
+}
+
+// =====================================================
+// CALLABLE: Assign Role (Admin Only)
+// =====================================================
+// Claim first, then the doc: once this returns, both agree. The user picks the new role up
+// on their next token refresh (at most an hour) or sign-in.
+exports.assignRole = functions.https.onCall(async (data, context) => {
+  if (!context.auth) {
+    throw new functions.https.HttpsError("unauthenticated", "Must be signed in");
+  }
+
+  if (context.auth.token.role !== "admin") {
+    const userDoc = await db.collection("users").doc(context.auth.uid).get();
+    if (!userDoc.exists || userDoc.data().role !== "admin") {
+      throw new functions.https.HttpsError("permission-denied", "Admin access required");
+    }
+  }
+
+  const uid = String(data.uid || '').trim();
+  const role = String(data.role || '').trim();
+  if (!uid || !isValidRole(role)) {
+    throw new functions.https.HttpsError("invalid-argument", "Invalid uid or role");
+  }
+  if (uid === context.auth.uid && role !== "admin") {
+    throw new functions.https.HttpsError("failed-precondition", "Admins cannot remove their own admin role");
+  }
+
+  try {
+    await syncRoleClaim(admin.auth(), uid, role);
+    await db.collection("users").doc(uid).set({
+      role: role,
+      roleUpdatedAt: getCurrentTimestamp(),
+      roleUpdatedBy: context.auth.uid
+    }, { merge: true });
+
+    console.log(`Role of ${uid} set to ${role} by ${context.auth.uid}`);
+    return { ok: true, uid, role };
+  } catch (err) {
+    if (err.code === "auth/user-not-found") {
+      throw new functions.https.HttpsError("not-found", "User not found");
+    }
+    console.error("assignRole error:", err);
+    throw new functions.https.HttpsError("internal", "Failed to assign role");
+  }
+});
+
+// =====================================================
+// CALLABLE: Backfill Active Days (Admin Only)
+// =====================================================
+// Run once after deploying: until a user is indexed, bookings also query their appointments
+// for the day, because ones made before users/{uid}.activeDays existed are not in it.
+exports.backfillActiveDays = functions.https.onCall(async (data, context) => {
+  if (!context.auth) {
+    throw new functions.https.HttpsError("unauthenticated", "Must be signed in");
+  }
+
+  const userDoc = await db.collection("users").doc(context.auth.uid).get();
+  if (!userDoc.exists || userDoc.data().role !== "admin") {
+    throw new functions.https.HttpsError("permission-denied", "Admin access required");
+  }
+
+  try {
+    const result = await backfillActiveDays(db, getCurrentTimestamp());
+    console.log(`Backfilled activeDays: ${result.indexedUsers} users with bookings, ${result.users} users indexed`);
+    return { ok: true, ...result };
+  } catch (err) {
+    console.error("backfillActiveDays error:", err);
+    throw new functions.https.HttpsError("internal", "Failed to backfill active days");
+  }
+});
+
+// =====================================================
+// CALLABLE: Rebalance Slot Shards (Admin Only)
+// =====================================================
+exports.rebalanceSlotShards = functions.https.onCall(async (data, context) => {
+  if (!context.auth) {
+    throw new functions.https.HttpsError("unauthenticated", "Must be signed in");
+  }
+
+  const userDoc = await db.collection("users").doc(context.auth.uid).get();
+  if (!userDoc.exists || userDoc.data().role !== "admin") {
+    throw new functions.https.HttpsError("permission-denied", "Admin access required");
+  }
+
+  const date = String(data.date || '').trim();
+  const window = String(data.window || '').trim();
+  if (!isValidDate(date) || !isValidTimeWindow(window)) {
+    throw new functions.https.HttpsError("invalid-argument", "Invalid date or window");
   }
 
+  try {
+    const result = await rebalanceSlotShards(db, slotIdFor(date, window), getCurrentTimestamp());
+    console.log(`Rebalanced ${result.slotId}: booked ${result.totalBooked}/${result.capacity}, quotas ${result.quotas.join(',')}`);
+    return { ok: true, ...result };
+  } catch (err) {
+    console.error("rebalanceSlotShards error:", err);
+    throw new functions.https.HttpsError("internal", "Failed to rebalance slot");
+  }
+});
+
+// =====================================================
+// CALLABLE: Reserve Username
+// =====================================================
+exports.reserveUsername = functions.https.onCall(async (data, context) => {
+  if (!context.auth) {
+    throw new functions.https.HttpsError("unauthenticated", "Must be signed in");
+  }
+
+  const uid = context.auth.uid;
+  const username = String(data.username || "").trim().toLowerCase();
+  validateUsername(username);
+
   const usernameRef = db.collection("usernames").doc(username);
 
   try {
@@ -304,6 +625,199 @@ exports.reserveUsername = functions.https.onCall(async (data, context) => {
   }
 });
 
+// =====================================================
+// CALLABLE: Register Student
+// =====================================================
+// Called once right after createUserWithEmailAndPassword. One transaction reserves
+// usernames/{username} and writes users/{uid}, so a failure leaves neither behind (the
+// client then deletes the auth user). Retrying with the same username is a no-op.
+// The role claim is set right after the commit; onUserRoleChanged would also catch it.
+exports.registerStudent = functions.https.onCall(async (data, context) => {
+  if (!context.auth) {
+    throw new functions.https.HttpsError("unauthenticated", "Must be signed in");
+  }
+
+  const uid = context.auth.uid;
+  const email = context.auth.token.email || null;
+  const name = String(data.name || "").trim();
+  const username = String(data.username || "").trim().toLowerCase();
+
+  if (!name || name.length > 100) {
+    throw new functions.https.HttpsError("invalid-argument", "Name must be 1-100 characters");
+  }
+  validateUsername(username);
+
+  const usernameRef = db.collection("usernames").doc(username);
+  const userRef = db.collection("users").doc(uid);
+
+  try {
+    await db.runTransaction(async (tx) => {
+      const [usernameSnap, userSnap] = await Promise.all([tx.get(usernameRef), tx.get(userRef)]);
+
+      if (usernameSnap.exists && usernameSnap.data().uid !== uid) {
+        throw new functions.https.HttpsError("already-exists", "Username taken");
+      }
+      const existing = userSnap.exists ? userSnap.data() : {};
+      if (existing.username && existing.username !== username) {
+        throw new functions.https.HttpsError("failed-precondition", "Account already has a username");
+      }
+      if (existing.role && existing.role !== "guest" && existing.role !== "student") {
+        throw new functions.https.HttpsError("failed-precondition", "Account already has a role");
+      }
+
+      const now = getCurrentTimestamp();
+      tx.set(usernameRef, { uid, email, createdAt: now });
+      tx.set(userRef, {
+        uid,
+        name,
+        email,
+        username,
+        role: "student",
+        activeAppointments: existing.activeAppointments || 0,
+        // a brand-new user has no appointments the per-day index could be missing
+        ...(userSnap.exists ? {} : { activeDaysIndexed: true }),
+        createdAt: existing.createdAt || now
+      }, { merge: true });
+    });
+
+    await syncRoleClaim(admin.auth(), uid, "student");
+
+    console.log(`Registered student ${uid} as '${username}'`);
+    return { ok: true, uid, username };
+  } catch (err) {
+    if (err instanceof functions.https.HttpsError) throw err;
+    console.error("registerStudent error:", err);
+    throw new functions.https.HttpsError("internal", "Failed to register student");
+  }
+});
+
+// =====================================================
+// CALLABLE: Register Admin (invite code)
+// =====================================================
+// The admin half of AuthRegisterActivity. Security rules only let a user create their own
+// profile as student / guest, so the invite code is checked here and the admin profile and
+// claim are written with the Admin SDK. Runs over a profile setCustomClaimOnSignup may
+// already have written as guest. Set the code with:
+//   firebase functions:config:set admin.invite_code=...
+exports.registerAdmin = functions.https.onCall(async (data, context) => {
+  if (!context.auth) {
+    throw new functions.https.HttpsError("unauthenticated", "Must be signed in");
+  }
+
+  const adminConfig = functions.config().admin;
+  const expectedCode = adminConfig && adminConfig.invite_code;
+  if (!expectedCode) {
+    console.warn("registerAdmin called but admin.invite_code is not configured");
+    throw new functions.https.HttpsError("failed-precondition", "Admin registration is not configured");
+  }
+
+  const uid = context.auth.uid;
+  const email = context.auth.token.email || null;
+  const name = String(data.name || "").trim();
+  const inviteCode = String(data.inviteCode || "");
+
+  if (!name || name.length > 100) {
+    throw new functions.https.HttpsError("invalid-argument", "Name must be 1-100 characters");
+  }
+  if (inviteCode !== expectedCode) {
+    throw new functions.https.HttpsError("permission-denied", "Invalid admin invite code");
+  }
+
+  const userRef = db.collection("users").doc(uid);
+  try {
+    await db.runTransaction(async (tx) => {
+      const userSnap = await tx.get(userRef);
+      const existing = userSnap.exists ? userSnap.data() : {};
+      if (existing.role && existing.role !== "guest" && existing.role !== "admin") {
+        throw new functions.https.HttpsError("failed-precondition", "Account already has a role");
+      }
+
+      const now = getCurrentTimestamp();
+      tx.set(userRef, {
+        uid,
+        name,
+        email,
+        role: "admin",
+        activeAppointments: existing.activeAppointments || 0,
+        ...(userSnap.exists ? {} : { activeDaysIndexed: true }),
+        createdAt: existing.createdAt || now
+      }, { merge: true });
+    });
+
+    await syncRoleClaim(admin.auth(), uid, "admin");
+
+    console.log(`Registered admin ${uid}`);
+    return { ok: true, uid };
+  } catch (err) {
+    if (err instanceof functions.https.HttpsError) throw err;
+    console.error("registerAdmin error:", err);
+    throw new functions.https.HttpsError("internal", "Failed to register admin");
+  }
+});
+
+// =====================================================
+// FIRESTORE TRIGGER: Username Created (Bloom filter delta)
+// =====================================================
+if (functions && functions.firestore && typeof functions.firestore.document === 'function') {
+  exports.onUsernameCreated = functions.firestore
+    .document("usernames/{username}")
+    .onCreate(async (snap, context) => {
+      const username = context.params.username;
+      try {
+        const { seq, rebuildDue } = await recordUsernameDelta(db, username);
+        if (rebuildDue) {
+          const result = await rebuildUsernameBloom(db, getCurrentTimestamp());
+          console.log(`Rebuilt username filter at seq ${seq}: ${result.count} names, ${result.bytes} bytes, k=${result.k}`);
+        }
+      } catch (err) {
+        console.error(`Failed to record username filter delta for ${username}:`, err);
+      }
+    });
+} else {
+  console.log("Skipping onUsernameCreated registration");
+}
+
+// =====================================================
+// CALLABLE: Rebuild Username Filter (Admin Only)
+// =====================================================
+exports.rebuildUsernameBloom = functions.https.onCall(async (data, context) => {
+  if (!context.auth) {
+    throw new functions.https.HttpsError("unauthenticated", "Must be signed in");
+  }
+
+  const userDoc = await db.collection("users").doc(context.auth.uid).get();
+  if (!userDoc.exists || userDoc.data().role !== "admin") {
+    throw new functions.https.HttpsError("permission-denied", "Admin access required");
+  }
+
+  try {
+    const result = await rebuildUsernameBloom(db, getCurrentTimestamp());
+    console.log(`Rebuilt username filter: ${result.count} names, ${result.bytes} bytes, pruned ${result.pruned} deltas`);
+    return { ok: true, ...result };
+  } catch (err) {
+    console.error("rebuildUsernameBloom error:", err);
+    throw new functions.https.HttpsError("internal", "Failed to rebuild username filter");
+  }
+});
+
+// =====================================================
+// CALLABLE: Check Username
+// =====================================================
+// The confirm behind a "maybe taken" from the app's filter. No sign-in needed (the user is
+// still registering); only availability is returned, never the owner or email.
+exports.checkUsername = functions.https.onCall(async (data, context) => {
+  const username = String(data.username || "").trim().toLowerCase();
+  validateUsername(username);
+
+  try {
+    const snap = await db.collection("usernames").doc(username).get();
+    return { username, available: !snap.exists };
+  } catch (err) {
+    console.error("checkUsername error:", err);
+    throw new functions.https.HttpsError("internal", "Failed to check username");
+  }
+});
+
 // =====================================================
 // CALLABLE: Release Username
 // =====================================================
@@ -443,6 +957,24 @@ exports.uploadPermit = functions.https.onCall(async (data, context) => {
   }
 });
 
+// =====================================================
+// CALLABLE: Join Booking Queue (Waiting Room)
+// =====================================================
+// Clients call this before booking while config/bookingQueue.enabled is true, and again
+// (same ticket, read-only) to poll their position until admitted.
+exports.joinBookingQueue = functions.https.onCall(async (data, context) => {
+  if (!context.auth) {
+    throw new functions.https.HttpsError("unauthenticated", "Must be signed in");
+  }
+
+  try {
+    return await joinQueue(db, context.auth.uid);
+  } catch (err) {
+    console.error("joinBookingQueue error:", err);
+    throw new functions.https.HttpsError("internal", "Failed to join booking queue");
+  }
+});
+
 // =====================================================
 // CALLABLE: Create Appointment (Atomic) - COMPLETE FIX
 // =====================================================
@@ -499,10 +1031,18 @@ exports.createAppointment = functions.https.onCall(async (data, context) => {
     throw err;
   }
 
-  const slotId = `${date}_${window}`;
+  let ticketRef = null;
+  try {
+    ticketRef = await checkAdmission(db, uid);
+  } catch (err) {
+    console.warn(`[createAppointment] Not admitted by booking queue: ${err.message}`);
+    throw new functions.https.HttpsError('failed-precondition', err.message);
+  }
+
+  const slotId = slotIdFor(date, window);
   const apptId = `${uid}_${slotId}`;
   const apptRef = db.collection('appointments').doc(apptId);
-  const slotRef = db.collection('slots').doc(slotId);
+  const userRef = db.collection('users').doc(uid);
 
   console.log(`[createAppointment] Starting transaction - apptId: ${apptId}, slotId: ${slotId}`);
 
@@ -521,30 +1061,27 @@ exports.createAppointment = functions.https.onCall(async (data, context) => {
         console.log("[createAppointment] Existing appointment is REJECTED/CANCELLED, allowing rebooking");
       }
 
-      console.log("[createAppointment] Checking slot availability");
-
-      const slotSnap = await tx.get(slotRef);
+      // one appointment per day, checked on users/{uid}.activeDays (see activeDays.js)
+      const userSnap = await tx.get(userRef);
+      const sameDay = await findSameDay(db, tx, userSnap, uid, date, apptId);
+      if (sameDay) {
+        console.error(`[createAppointment] Already booked on ${date}: ${sameDay}`);
+        throw new functions.https.HttpsError('failed-precondition', 'You already have an appointment on this date');
+      }
 
-      let bookedCount = 0;
-      let capacity = DAILY_CAPACITY;
+      console.log("[createAppointment] Claiming a slot shard seat");
 
-      if (slotSnap.exists) {
-        bookedCount = slotSnap.get('bookedCount') || 0;
-        capacity = slotSnap.get('capacity') || DAILY_CAPACITY;
-        console.log(`[createAppointment] Slot exists - bookedCount: ${bookedCount}, capacity: ${capacity}`);
-      } else {
-        console.log("[createAppointment] Slot does not exist, will create new");
-      }
+      const now = getCurrentTimestamp();
+      const shard = await claimSlotSeat(db, tx, date, window, now);
 
-      if (bookedCount >= capacity) {
+      if (shard === null) {
         console.error("[createAppointment] Slot is full");
         throw new functions.https.HttpsError('resource-exhausted', 'Selected slot is full');
       }
+      console.log(`[createAppointment] Seat claimed on shard ${shard}`);
 
       console.log("[createAppointment] Creating appointment document");
 
-      const now = getCurrentTimestamp();
-
       const apptData = {
         userId: uid,
         date: date,
@@ -552,28 +1089,16 @@ exports.createAppointment = functions.https.onCall(async (data, context) => {
         status: 'PENDING',
         paymentMethod: 'PAY_AT_SCHOOL',
         createdAt: now,
-        createdByFunction: true
+        createdByFunction: true,
+        slotShard: shard
       };
 
       tx.set(apptRef, apptData);
       console.log("[createAppointment] Appointment document set");
+      tx.set(userRef, { activeDays: { [date]: apptId } }, { merge: true });
 
-      if (!slotSnap.exists) {
-        console.log("[createAppointment] Creating new slot");
-        tx.set(slotRef, {
-          date: date,
-          window: window,
-          capacity: capacity,
-          bookedCount: 1,
-          createdAt: now
-        });
-      } else {
-        console.log("[createAppointment] Updating existing slot");
-        tx.update(slotRef, {
-          bookedCount: bookedCount + 1,
-          updatedAt: now
-        });
-      }
+      // a queue ticket admits one booking
+      if (ticketRef) tx.delete(ticketRef);
 
       console.log("[createAppointment] Transaction operations complete");
       return { appointmentId: apptId };
@@ -0,0 +1,26 @@
+// functions/roles.js
+//
+// The `role` custom claim is what the app routes on (RoleResolver.java reads it from the
+// cached ID token), so it must follow users/{uid}.role. Claims are replaced as a whole by
+// setCustomUserClaims, so other claims are carried over.
+
+const ROLES = ['student', 'admin', 'cashier', 'guest'];
+
+function isValidRole(role) {
+  return ROLES.includes(role);
+}
+
+// Sets claims.role on the auth user unless it already matches. Returns true when it wrote.
+async function syncRoleClaim(auth, uid, role) {
+  const user = await auth.getUser(uid);
+  const claims = user.customClaims || {};
+  if (claims.role === role) return false;
+  await auth.setCustomUserClaims(uid, { ...claims, role });
+  return true;
+}
+
+module.exports = {
+  ROLES,
+  isValidRole,
+  syncRoleClaim
+};
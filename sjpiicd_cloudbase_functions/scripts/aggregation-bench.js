@@ -0,0 +1,128 @@
+// functions/scripts/aggregation-bench.js
+//
+// Full download vs count()/sum() aggregation, on a seeded emulator dataset.
+//
+//   firebase emulators:start --only firestore
+//   FIRESTORE_EMULATOR_HOST=localhost:8080 node scripts/aggregation-bench.js [slots] [appointments] [students]
+//
+// Seeds `slots` slot docs (spread over dates from 2098-01-01), `appointments` appointments and
+// `students` student users, then times each screen's question both ways:
+//   capacity  - total bookedCount of the slots in a 90-day range   (AppointmentCapacityActivity)
+//   userLimit - a user's active appointments                       (checkAppointmentLimit)
+//   students  - number of student accounts                         (AdminManageClearanceActivity)
+// Reads are estimated from Firestore billing: one per document returned, or one per
+// 1000 index entries (minimum one) for an aggregation.
+
+const admin = require('firebase-admin');
+
+if (!process.env.FIRESTORE_EMULATOR_HOST) {
+  console.error('FIRESTORE_EMULATOR_HOST is not set; refusing to run against a real project.');
+  process.exit(1);
+}
+
+admin.initializeApp({ projectId: process.env.GCLOUD_PROJECT || 'sjpiicd-server' });
+const db = admin.firestore();
+
+const SLOTS = parseInt(process.argv[2] || '10000', 10);
+const APPOINTMENTS = parseInt(process.argv[3] || '10000', 10);
+const STUDENTS = parseInt(process.argv[4] || '2000', 10);
+const RUNS = 5;
+const WINDOWS = ['09:00-10:00', '10:00-11:00', '11:00-12:00', '13:00-14:00', '14:00-15:00'];
+const STATUSES = ['PENDING', 'PAID', 'APPROVED', 'REJECTED', 'CANCELLED'];
+const HEAVY_USER = 'bench_student_0';
+
+function dateFor(dayOffset) {
+  const d = new Date(Date.UTC(2098, 0, 1));
+  d.setUTCDate(d.getUTCDate() + dayOffset);
+  return d.toISOString().slice(0, 10);
+}
+
+async function seed() {
+  const writer = db.bulkWriter();
+  for (let i = 0; i < SLOTS; i++) {
+    const date = dateFor(Math.floor(i / WINDOWS.length));
+    const window = WINDOWS[i % WINDOWS.length];
+    writer.set(db.collection('slots').doc(`${date}_${window}`), {
+      date, window, bookedCount: i % 400, capacity: 400
+    });
+  }
+  for (let i = 0; i < APPOINTMENTS; i++) {
+    // every 10th appointment belongs to one heavy user so the per-user query has real work
+    const userId = i % 10 === 0 ? HEAVY_USER : `bench_student_${i % STUDENTS}`;
+    writer.set(db.collection('appointments').doc(`bench_appt_${i}`), {
+      userId, date: dateFor(i % 365), window: WINDOWS[i % WINDOWS.length], status: STATUSES[i % STATUSES.length]
+    });
+  }
+  for (let i = 0; i < STUDENTS; i++) {
+    writer.set(db.collection('users').doc(`bench_student_${i}`), {
+      role: 'student', name: `Bench Student ${i}`, email: `bench${i}@loadtest.local`
+    });
+  }
+  await writer.close();
+}
+
+async function timed(fn) {
+  const samples = [];
+  let result;
+  for (let i = 0; i < RUNS; i++) {
+    const t0 = Date.now();
+    result = await fn();
+    samples.push(Date.now() - t0);
+  }
+  samples.sort((a, b) => a - b);
+  return { result, medianMs: samples[Math.floor(samples.length / 2)] };
+}
+
+const aggregateReads = (entries) => Math.max(1, Math.ceil(entries / 1000));
+
+async function compare(name, query, sumField) {
+  const full = await timed(async () => {
+    const snap = await query.get();
+    const value = sumField ?
+      snap.docs.reduce((acc, d) => acc + (d.get(sumField) || 0), 0) : snap.size;
+    return { value, docs: snap.size };
+  });
+  const agg = await timed(async () => {
+    if (sumField) {
+      const snap = await query.aggregate({ total: admin.firestore.AggregateField.sum(sumField) }).get();
+      return { value: snap.data().total };
+    }
+    const snap = await query.count().get();
+    return { value: snap.data().count };
+  });
+
+  return {
+    question: name,
+    fullValue: full.result.value,
+    aggValue: agg.result.value,
+    fullReads: full.result.docs,
+    aggReads: aggregateReads(full.result.docs),
+    fullMedianMs: full.medianMs,
+    aggMedianMs: agg.medianMs
+  };
+}
+
+(async () => {
+  console.log(`Seeding ${SLOTS} slots, ${APPOINTMENTS} appointments, ${STUDENTS} students...`);
+  await seed();
+
+  const rows = [];
+  rows.push(await compare('capacity (90 days)',
+    db.collection('slots').where('date', '>=', dateFor(0)).where('date', '<=', dateFor(89)), 'bookedCount'));
+  rows.push(await compare('userLimit',
+    db.collection('appointments').where('userId', '==', HEAVY_USER)
+      .where('status', 'in', ['PENDING', 'PAID', 'APPROVED'])));
+  rows.push(await compare('students',
+    db.collection('users').where('role', '==', 'student')));
+
+  console.table(rows);
+  const mismatched = rows.filter((r) => r.fullValue !== r.aggValue);
+  if (mismatched.length) {
+    console.error('Aggregation results differ from the full download:', mismatched.map((r) => r.question));
+    process.exit(1);
+  }
+  process.exit(0);
+})().catch((err) => {
+  console.error(err);
+  process.exit(1);
+});
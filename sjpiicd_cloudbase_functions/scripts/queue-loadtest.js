@@ -0,0 +1,129 @@
+// functions/scripts/queue-loadtest.js
+//
+// Load generator for the booking waiting room, against the local emulators in firebase.json.
+//
+//   firebase emulators:start --only functions,firestore,auth
+//   FIRESTORE_EMULATOR_HOST=localhost:8080 node scripts/queue-loadtest.js [students] [admitPerSecond]
+//
+// Creates `students` Auth-emulator users, then runs the same booking surge twice:
+//   direct  - queue disabled, everyone calls createAppointment at once
+//   queued  - queue enabled at `admitPerSecond`; everyone joins, polls, books when admitted
+// and reports admitted/committed throughput, abort rate and booking latency for each.
+
+const admin = require('firebase-admin');
+const { QUEUE_SHARD_COUNT } = require('../bookingQueue');
+
+if (!process.env.FIRESTORE_EMULATOR_HOST) {
+  console.error('FIRESTORE_EMULATOR_HOST is not set; refusing to run against a real project.');
+  process.exit(1);
+}
+
+const PROJECT = process.env.GCLOUD_PROJECT || 'sjpiicd-server';
+const REGION = 'us-central1';
+const AUTH_HOST = process.env.FIREBASE_AUTH_EMULATOR_HOST || 'localhost:9099';
+const FUNCTIONS_HOST = process.env.FUNCTIONS_EMULATOR_HOST || 'localhost:5001';
+
+const STUDENTS = parseInt(process.argv[2] || '200', 10);
+const ADMIT_PER_SECOND = parseInt(process.argv[3] || '20', 10);
+
+admin.initializeApp({ projectId: PROJECT });
+const db = admin.firestore();
+
+async function signUp(i) {
+  const res = await fetch(`http://${AUTH_HOST}/identitytoolkit.googleapis.com/v1/accounts:signUp?key=fake-api-key`, {
+    method: 'POST',
+    headers: { 'Content-Type': 'application/json' },
+    body: JSON.stringify({ email: `queue${i}_${Date.now()}@loadtest.local`, password: 'loadtest', returnSecureToken: true })
+  });
+  const body = await res.json();
+  if (!body.idToken) throw new Error(`signUp failed: ${JSON.stringify(body)}`);
+  return body.idToken;
+}
+
+async function callable(name, idToken, data) {
+  const res = await fetch(`http://${FUNCTIONS_HOST}/${PROJECT}/${REGION}/${name}`, {
+    method: 'POST',
+    headers: { 'Content-Type': 'application/json', 'Authorization': `Bearer ${idToken}` },
+    body: JSON.stringify({ data: data || {} })
+  });
+  const body = await res.json();
+  if (body.error) {
+    const err = new Error(body.error.message);
+    err.status = body.error.status;
+    throw err;
+  }
+  return body.result;
+}
+
+const sleep = (ms) => new Promise((r) => setTimeout(r, ms));
+
+function percentile(sorted, p) {
+  if (sorted.length === 0) return 0;
+  return sorted[Math.min(sorted.length - 1, Math.floor(p / 100 * sorted.length))];
+}
+
+async function surge(label, tokens, date, queued) {
+  await db.collection('config').doc('bookingQueue').set({ enabled: queued, admitPerSecond: ADMIT_PER_SECOND });
+  await Promise.all(Array.from({ length: QUEUE_SHARD_COUNT }, (_, n) =>
+    db.collection('bookingQueue').doc(`shard_${n}`).delete()));
+  // the functions cache the config for a few seconds
+  await sleep(11000);
+
+  const stats = { ok: 0, aborted: 0, otherErrors: 0, polls: 0, latencies: [], admittedAt: [] };
+  const started = Date.now();
+
+  await Promise.all(tokens.map(async (token, i) => {
+    const window = ['09:00-10:00', '10:00-11:00', '11:00-12:00', '13:00-14:00', '14:00-15:00'][i % 5];
+    const t0 = Date.now();
+    try {
+      if (queued) {
+        for (;;) {
+          stats.polls++;
+          const status = await callable('joinBookingQueue', token);
+          if (status.admitted) break;
+          await sleep(Math.min(5000, Math.max(1000, status.etaSeconds * 1000)));
+        }
+        stats.admittedAt.push(Date.now() - started);
+      }
+      await callable('createAppointment', token, { date, window });
+      stats.ok++;
+    } catch (err) {
+      if (err.status === 'ABORTED' || err.status === 'INTERNAL') stats.aborted++;
+      else stats.otherErrors++;
+    }
+    stats.latencies.push(Date.now() - t0);
+  }));
+
+  const seconds = (Date.now() - started) / 1000;
+  const sorted = stats.latencies.sort((a, b) => a - b);
+  const admittedSpan = stats.admittedAt.length > 1 ?
+    (Math.max(...stats.admittedAt) - Math.min(...stats.admittedAt)) / 1000 : 0;
+
+  return {
+    mode: label,
+    committed: stats.ok,
+    abortRate: ((stats.aborted / tokens.length) * 100).toFixed(1) + '%',
+    otherErrors: stats.otherErrors,
+    bookingsPerSec: (stats.ok / seconds).toFixed(1),
+    admittedPerSec: admittedSpan > 0 ? (stats.admittedAt.length / admittedSpan).toFixed(1) : '-',
+    pollsPerStudent: (stats.polls / tokens.length).toFixed(1),
+    p50ms: percentile(sorted, 50),
+    p95ms: percentile(sorted, 95)
+  };
+}
+
+(async () => {
+  console.log(`Creating ${STUDENTS} students...`);
+  const tokens = [];
+  for (let i = 0; i < STUDENTS; i++) tokens.push(await signUp(i));
+
+  const direct = await surge('direct', tokens, '2099-02-01', false);
+  const queued = await surge('queued', tokens, '2099-02-02', true);
+  console.table([direct, queued]);
+
+  await db.collection('config').doc('bookingQueue').set({ enabled: false }, { merge: true });
+  process.exit(0);
+})().catch((err) => {
+  console.error(err);
+  process.exit(1);
+});
@@ -0,0 +1,103 @@
+// functions/scripts/slot-loadtest.js
+//
+// Emulator load test: single slot document vs sharded slot counters.
+//
+//   firebase emulators:start --only firestore
+//   FIRESTORE_EMULATOR_HOST=localhost:8080 node scripts/slot-loadtest.js [bookings] [concurrency]
+//
+// Fires `bookings` booking transactions at one date/window, `concurrency` at a time, once
+// against the legacy design (read+rewrite slots/{slotId}.bookedCount) and once against
+// slots/{slotId}/shards/{n}. Reports committed bookings/s, transaction attempts per booking
+// and latency percentiles for each run.
+
+const admin = require('firebase-admin');
+const { slotIdFor, claimSlotSeat } = require('../slotShards');
+
+if (!process.env.FIRESTORE_EMULATOR_HOST) {
+  console.error('FIRESTORE_EMULATOR_HOST is not set; refusing to run against a real project.');
+  process.exit(1);
+}
+
+admin.initializeApp({ projectId: process.env.GCLOUD_PROJECT || 'sjpiicd-server' });
+const db = admin.firestore();
+
+const BOOKINGS = parseInt(process.argv[2] || '300', 10);
+const CONCURRENCY = parseInt(process.argv[3] || '50', 10);
+const WINDOW = '09:00-10:00';
+
+async function bookSingleDoc(date, uid, stats) {
+  const slotRef = db.collection('slots').doc(slotIdFor(date, WINDOW));
+  const apptRef = db.collection('appointments').doc(`${uid}_${slotIdFor(date, WINDOW)}`);
+  await db.runTransaction(async (tx) => {
+    stats.attempts++;
+    const s = await tx.get(slotRef);
+    const booked = s.exists ? (s.get('bookedCount') || 0) : 0;
+    if (booked >= BOOKINGS) throw new Error('SLOT_FULL');
+    tx.set(apptRef, { userId: uid, date, window: WINDOW, status: 'PENDING' });
+    tx.set(slotRef, { date, window: WINDOW, bookedCount: booked + 1 }, { merge: true });
+  });
+}
+
+async function bookSharded(date, uid, stats) {
+  const apptRef = db.collection('appointments').doc(`${uid}_${slotIdFor(date, WINDOW)}`);
+  await db.runTransaction(async (tx) => {
+    stats.attempts++;
+    const shard = await claimSlotSeat(db, tx, date, WINDOW, new Date().toISOString());
+    if (shard === null) throw new Error('SLOT_FULL');
+    tx.set(apptRef, { userId: uid, date, window: WINDOW, status: 'PENDING', slotShard: shard });
+  });
+}
+
+function percentile(sorted, p) {
+  if (sorted.length === 0) return 0;
+  return sorted[Math.min(sorted.length - 1, Math.floor(p / 100 * sorted.length))];
+}
+
+async function run(label, bookFn) {
+  // a fresh date per run so the two designs never share documents
+  const date = `2099-01-${label === 'single' ? '01' : '02'}`;
+  const stats = { attempts: 0, ok: 0, failed: 0, latencies: [] };
+  let next = 0;
+
+  const started = Date.now();
+  async function worker() {
+    while (next < BOOKINGS) {
+      const uid = `load_${label}_${next++}`;
+      const t0 = Date.now();
+      try {
+        await bookFn(date, uid, stats);
+        stats.ok++;
+      } catch (err) {
+        stats.failed++;
+      }
+      stats.latencies.push(Date.now() - t0);
+    }
+  }
+  await Promise.all(Array.from({ length: CONCURRENCY }, worker));
+  const elapsed = (Date.now() - started) / 1000;
+
+  const sorted = stats.latencies.sort((a, b) => a - b);
+  return {
+    design: label,
+    committed: stats.ok,
+    failed: stats.failed,
+    seconds: elapsed.toFixed(2),
+    bookingsPerSec: (stats.ok / elapsed).toFixed(1),
+    attemptsPerBooking: (stats.attempts / Math.max(1, stats.ok + stats.failed)).toFixed(2),
+    p50ms: percentile(sorted, 50),
+    p95ms: percentile(sorted, 95),
+    p99ms: percentile(sorted, 99)
+  };
+}
+
+(async () => {
+  console.log(`Booking ${BOOKINGS} seats per design with concurrency ${CONCURRENCY}`);
+  const single = await run('single', bookSingleDoc);
+  const sharded = await run('sharded', bookSharded);
+  console.table([single, sharded]);
+  console.log(`Throughput gain: ${(sharded.bookingsPerSec / single.bookingsPerSec).toFixed(2)}x`);
+  process.exit(0);
+})().catch((err) => {
+  console.error(err);
+  process.exit(1);
+});
@@ -0,0 +1,153 @@
+// functions/scripts/strategy-abtest.js
+//
+// A/B harness for the two booking paths in BookingActivity, against the local emulators.
+//
+//   firebase emulators:start --only functions,firestore,auth
+//   FIRESTORE_EMULATOR_HOST=localhost:8080 node scripts/strategy-abtest.js [students] [rttMs]
+//
+// Runs the same concurrent surge (every student books at once, windows round-robin) with
+//   transaction - the client transaction from BookingTransaction.java: appointment read,
+//                 user read, shard claim, commit; every read and the commit cost one round trip
+//   callable    - one createAppointment request; the transaction runs beside Firestore
+// `rttMs` is added per client round trip to model a phone on mobile data (the emulator is
+// local, so without it both paths look artificially fast).
+
+const admin = require('firebase-admin');
+const { slotIdFor, claimSlotSeat } = require('../slotShards');
+
+if (!process.env.FIRESTORE_EMULATOR_HOST) {
+  console.error('FIRESTORE_EMULATOR_HOST is not set; refusing to run against a real project.');
+  process.exit(1);
+}
+
+const PROJECT = process.env.GCLOUD_PROJECT || 'sjpiicd-server';
+const REGION = 'us-central1';
+const AUTH_HOST = process.env.FIREBASE_AUTH_EMULATOR_HOST || 'localhost:9099';
+const FUNCTIONS_HOST = process.env.FUNCTIONS_EMULATOR_HOST || 'localhost:5001';
+const WINDOWS = ['09:00-10:00', '10:00-11:00', '11:00-12:00', '13:00-14:00', '14:00-15:00'];
+
+const STUDENTS = parseInt(process.argv[2] || '200', 10);
+const RTT_MS = parseInt(process.argv[3] || '80', 10);
+
+admin.initializeApp({ projectId: PROJECT });
+const db = admin.firestore();
+
+const sleep = (ms) => new Promise((r) => setTimeout(r, ms));
+
+async function signUp(i) {
+  const res = await fetch(`http://${AUTH_HOST}/identitytoolkit.googleapis.com/v1/accounts:signUp?key=fake-api-key`, {
+    method: 'POST',
+    headers: { 'Content-Type': 'application/json' },
+    body: JSON.stringify({ email: `ab${i}_${Date.now()}@loadtest.local`, password: 'loadtest', returnSecureToken: true })
+  });
+  const body = await res.json();
+  if (!body.idToken) throw new Error(`signUp failed: ${JSON.stringify(body)}`);
+  return { uid: body.localId, idToken: body.idToken };
+}
+
+// Mirrors BookingTransaction.run(); tx.get() and the commit each pay one RTT.
+async function bookViaTransaction(student, date, window, stats) {
+  const apptId = `${student.uid}_${slotIdFor(date, window)}`;
+  const apptRef = db.collection('appointments').doc(apptId);
+  const userRef = db.collection('users').doc(student.uid);
+
+  await db.runTransaction(async (rawTx) => {
+    stats.attempts++;
+    const tx = {
+      get: async (ref) => {
+        await sleep(RTT_MS);
+        return rawTx.get(ref);
+      },
+      set: (...args) => rawTx.set(...args),
+      update: (...args) => rawTx.update(...args)
+    };
+
+    const appt = await tx.get(apptRef);
+    if (appt.exists && !['REJECTED', 'CANCELLED'].includes(appt.get('status'))) throw new Error('ALREADY_EXISTS');
+
+    const user = await tx.get(userRef);
+    const active = user.exists ? (user.get('activeAppointments') || 0) : 0;
+    if (active >= 5) throw new Error('USER_LIMIT');
+    const sameDayId = user.exists ? (user.get('activeDays') || {})[date] : null;
+    if (sameDayId && sameDayId !== apptId) {
+      const other = await tx.get(db.collection('appointments').doc(sameDayId));
+      if (other.exists && other.get('date') === date) throw new Error('SAME_DAY');
+    }
+
+    const shard = await claimSlotSeat(db, tx, date, window, admin.firestore.Timestamp.now());
+    if (shard === null) throw new Error('SLOT_FULL');
+
+    rawTx.set(apptRef, {
+      userId: student.uid, date, window, status: 'PENDING', paymentMethod: 'PAY_AT_SCHOOL',
+      createdAt: admin.firestore.Timestamp.now(), createdByClient: true, slotShard: shard
+    });
+    rawTx.set(userRef, { activeAppointments: active + 1, activeDays: { [date]: apptId } }, { merge: true });
+    // commit round trip
+    await sleep(RTT_MS);
+  });
+}
+
+async function bookViaCallable(student, date, window, stats) {
+  stats.attempts++;
+  await sleep(RTT_MS);
+  const res = await fetch(`http://${FUNCTIONS_HOST}/${PROJECT}/${REGION}/createAppointment`, {
+    method: 'POST',
+    headers: { 'Content-Type': 'application/json', 'Authorization': `Bearer ${student.idToken}` },
+    body: JSON.stringify({ data: { date, window } })
+  });
+  const body = await res.json();
+  if (body.error) throw new Error(body.error.status || body.error.message);
+}
+
+function percentile(sorted, p) {
+  if (sorted.length === 0) return 0;
+  return sorted[Math.min(sorted.length - 1, Math.floor(p / 100 * sorted.length))];
+}
+
+async function surge(label, students, date, bookFn) {
+  const stats = { attempts: 0, ok: 0, failed: 0, errors: {}, latencies: [] };
+  const started = Date.now();
+
+  await Promise.all(students.map(async (student, i) => {
+    const t0 = Date.now();
+    try {
+      await bookFn(student, date, WINDOWS[i % WINDOWS.length], stats);
+      stats.ok++;
+    } catch (err) {
+      stats.failed++;
+      stats.errors[err.message] = (stats.errors[err.message] || 0) + 1;
+    }
+    stats.latencies.push(Date.now() - t0);
+  }));
+
+  const seconds = (Date.now() - started) / 1000;
+  const sorted = stats.latencies.sort((a, b) => a - b);
+  return {
+    strategy: label,
+    committed: stats.ok,
+    failRate: ((stats.failed / students.length) * 100).toFixed(1) + '%',
+    bookingsPerSec: (stats.ok / seconds).toFixed(1),
+    attemptsPerBooking: (stats.attempts / students.length).toFixed(2),
+    p50ms: percentile(sorted, 50),
+    p95ms: percentile(sorted, 95),
+    p99ms: percentile(sorted, 99),
+    errors: JSON.stringify(stats.errors)
+  };
+}
+
+(async () => {
+  console.log(`Creating ${STUDENTS} students (rtt ${RTT_MS}ms)...`);
+  const students = [];
+  for (let i = 0; i < STUDENTS; i++) students.push(await signUp(i));
+
+  // both paths must see the queue off, otherwise the callable rejects unadmitted students
+  await db.collection('config').doc('bookingQueue').set({ enabled: false }, { merge: true });
+
+  const transaction = await surge('transaction', students, '2099-03-01', bookViaTransaction);
+  const callable = await surge('callable', students, '2099-03-02', bookViaCallable);
+  console.table([transaction, callable]);
+  process.exit(0);
+})().catch((err) => {
+  console.error(err);
+  process.exit(1);
+});
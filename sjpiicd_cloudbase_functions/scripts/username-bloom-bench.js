@@ -0,0 +1,61 @@
+// functions/scripts/username-bloom-bench.js
+//
+// Size and false-positive rate of the username Bloom filter (usernameBloom.js), no emulator
+// needed:
+//
+//   node scripts/username-bloom-bench.js [usernames] [probes]
+//
+// Builds the filter the way a rebuild does (capacityFor), then probes it with names that were
+// never added. Also prints a filter sized exactly for the count (full design load), which is
+// as bad as it gets when a rebuild is overdue.
+
+const { createFilter, addTo, mightContain, sizeFor, capacityFor, TARGET_FPR } = require('../usernameBloom');
+
+const N = parseInt(process.argv[2] || '50000', 10);
+const PROBES = parseInt(process.argv[3] || '200000', 10);
+
+const FIRST = ['juan', 'maria', 'jose', 'ana', 'mark', 'angel', 'john', 'kim', 'paolo', 'bea', 'carlo', 'joy'];
+const LAST = ['delacruz', 'santos', 'reyes', 'garcia', 'mendoza', 'torres', 'flores', 'ramos', 'castro', 'lim'];
+const SEP = ['', '.', '_'];
+
+// deterministic, username-shaped: first + sep + last + number
+function usernames(count, salt) {
+  const out = new Set();
+  let i = 0;
+  while (out.size < count) {
+    const f = FIRST[i % FIRST.length];
+    const l = LAST[Math.floor(i / FIRST.length) % LAST.length];
+    const s = SEP[i % SEP.length];
+    out.add(`${f}${s}${l}${salt}${i}`);
+    i++;
+  }
+  return Array.from(out);
+}
+
+function measure(label, capacity, members, probes) {
+  const filter = createFilter(capacity);
+  let t = process.hrtime.bigint();
+  members.forEach((u) => addTo(filter, u));
+  const addNs = Number(process.hrtime.bigint() - t) / members.length;
+
+  t = process.hrtime.bigint();
+  let falsePositives = 0;
+  probes.forEach((u) => {
+    if (mightContain(filter, u)) falsePositives++;
+  });
+  const queryNs = Number(process.hrtime.bigint() - t) / probes.length;
+
+  const missed = members.filter((u) => !mightContain(filter, u)).length;
+  const { m, k } = sizeFor(capacity);
+  console.log(`${label}: n=${members.length} capacity=${capacity} m=${m} bits (${(m / 8 / 1024).toFixed(1)} KB, `
+    + `${Math.ceil(m / 8 * 4 / 3 / 1024)} KB base64) k=${k}`);
+  console.log(`  false positives ${falsePositives}/${probes.length} = ${(100 * falsePositives / probes.length).toFixed(3)}% `
+    + `(target ${TARGET_FPR * 100}% at capacity), false negatives ${missed}`);
+  console.log(`  add ${addNs.toFixed(0)} ns, query ${queryNs.toFixed(0)} ns`);
+}
+
+const members = usernames(N, '');
+const probes = usernames(PROBES, 'x');
+
+measure('after rebuild', capacityFor(N), members, probes);
+measure('at capacity  ', N, members, probes);
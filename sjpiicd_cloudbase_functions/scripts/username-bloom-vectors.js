@@ -0,0 +1,53 @@
+// functions/scripts/username-bloom-vectors.js
+//
+// Prints the test vectors UsernameBloomTest.java checks the client filter against, computed
+// with this repo's usernameBloom.js. Re-run and paste the output into the test whenever the
+// hashing or the sizing changes; no emulator needed:
+//
+//   node scripts/username-bloom-vectors.js
+
+const { fnv1a, positions, sizeFor, capacityFor, createFilter, addTo } = require('../usernameBloom');
+
+const FNV_OFFSET = 0x811c9dc5;
+const FNV_OFFSET_2 = 0x5bd1e995;
+
+// separators, a one-letter name, a non-ASCII name (UTF-8 bytes) and the empty string
+const NAMES = ['juan.delacruz', 'maria_santos', 'ana-reyes', 'x', 'josé', 'kim2024', ''];
+const FILTER_NAMES = ['juan.delacruz', 'maria_santos', 'ana-reyes', 'kim2024'];
+const FILTER_CAPACITY = 64;
+
+function javaString(s) {
+  return '"' + s.replace(/[^\x20-\x7e]/g, (c) => '\\u' + c.charCodeAt(0).toString(16).padStart(4, '0')) + '"';
+}
+
+// the unsigned 32-bit value as a Java int literal
+function javaInt(u) {
+  return '0x' + (u >>> 0).toString(16).padStart(8, '0');
+}
+
+const { m, k } = sizeFor(capacityFor(0));
+console.log(`    private static final int M = ${m};`);
+console.log(`    private static final int K = ${k};`);
+console.log('');
+console.log('    // username, fnv1a(offset 1), fnv1a(offset 2), positions(username, M, K)');
+NAMES.forEach((name) => {
+  const bytes = Buffer.from(name, 'utf8');
+  const h1 = javaInt(fnv1a(bytes, FNV_OFFSET));
+  const h2 = javaInt(fnv1a(bytes, FNV_OFFSET_2));
+  const p = positions(name, m, k).join(', ');
+  console.log(`    vector(${javaString(name)}, ${h1}, ${h2}, new int[] { ${p} }),`);
+});
+console.log('');
+
+const filter = createFilter(FILTER_CAPACITY);
+FILTER_NAMES.forEach((name) => addTo(filter, name));
+console.log(`    // createFilter(${FILTER_CAPACITY}) + addTo(${FILTER_NAMES.join(', ')})`);
+console.log(`    private static final int FILTER_M = ${filter.m};`);
+console.log(`    private static final int FILTER_K = ${filter.k};`);
+console.log(`    private static final String FILTER_HEX = "${filter.bits.toString('hex')}";`);
+console.log('');
+
+[capacityFor(50000), 50000].forEach((capacity) => {
+  const size = sizeFor(capacity);
+  console.log(`    // sizeFor(${capacity}): m=${size.m}, k=${size.k}`);
+});
@@ -0,0 +1,85 @@
+// functions/searchKeys.js
+//
+// Prefix tokens for the admin student search (AdminManageClearanceActivity).
+//
+// users/{uid}.searchKeys = every prefix (1..MAX_PREFIX chars) of every word in the user's
+// name / displayName, username and email local part, lowercased with accents stripped.
+// "Juan Dela Cruz" -> ["j", "ju", "jua", "juan", "d", "de", ..., "cruz"].
+// The app searches with where('searchKeys', 'array-contains', firstWord).limit(n), so
+// only matching students are downloaded. SearchKeys.java must tokenize the same way.
+
+const admin = require('firebase-admin');
+
+const MAX_PREFIX = 15;
+const BACKFILL_PAGE_SIZE = 500;
+
+function normalize(s) {
+  return String(s || '')
+    .normalize('NFD')
+    .replace(/[\u0300-\u036f]/g, '')
+    .toLowerCase();
+}
+
+function words(s) {
+  return normalize(s).split(/[^a-z0-9]+/).filter((w) => w.length > 0);
+}
+
+function buildSearchKeys(user) {
+  const email = String(user.email || '');
+  const localPart = email.includes('@') ? email.slice(0, email.indexOf('@')) : email;
+  const keys = new Set();
+  [user.name, user.displayName, user.username, localPart].forEach((field) => {
+    words(field).forEach((w) => {
+      const max = Math.min(w.length, MAX_PREFIX);
+      for (let i = 1; i <= max; i++) keys.add(w.slice(0, i));
+    });
+  });
+  return Array.from(keys).sort();
+}
+
+function sameKeys(a, b) {
+  if (!Array.isArray(a) || !Array.isArray(b) || a.length !== b.length) return false;
+  for (let i = 0; i < a.length; i++) {
+    if (a[i] !== b[i]) return false;
+  }
+  return true;
+}
+
+// Writes searchKeys onto every user doc that lacks them or has stale ones, paging by id.
+async function backfillSearchKeys(db, now) {
+  const writer = db.bulkWriter();
+  let last = null;
+  let scanned = 0;
+  let updated = 0;
+
+  for (;;) {
+    let q = db.collection('users')
+      .orderBy(admin.firestore.FieldPath.documentId())
+      .select('name', 'displayName', 'username', 'email', 'searchKeys')
+      .limit(BACKFILL_PAGE_SIZE);
+    if (last) q = q.startAfter(last);
+    const page = await q.get();
+    if (page.empty) break;
+
+    page.docs.forEach((d) => {
+      scanned++;
+      const keys = buildSearchKeys(d.data());
+      if (sameKeys(keys, d.get('searchKeys'))) return;
+      writer.update(d.ref, { searchKeys: keys, searchKeysUpdatedAt: now });
+      updated++;
+    });
+    last = page.docs[page.docs.length - 1];
+    if (page.size < BACKFILL_PAGE_SIZE) break;
+  }
+
+  await writer.close();
+  return { scanned, updated };
+}
+
+module.exports = {
+  MAX_PREFIX,
+  normalize,
+  buildSearchKeys,
+  sameKeys,
+  backfillSearchKeys
+};
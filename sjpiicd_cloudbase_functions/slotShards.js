@@ -0,0 +1,151 @@
+// functions/slotShards.js
+//
+// Sharded capacity counter for slots/{date}_{window}.
+// Each slot owns SLOT_SHARD_COUNT docs under slots/{slotId}/shards/{index}, each with its
+// own `quota` and `bookedCount`. A booking claims a seat on one random shard, so concurrent
+// bookings for the same window no longer serialize on a single document. The parent slot's
+// `bookedCount` is a mirror kept up to date by the onSlotShardWritten trigger.
+//
+// Shards are seeded all at once by the first booking that finds one without `seeded` (also
+// shards written before seeding existed): quotas then split what the parent's `capacity`
+// minus its `bookedCount` leaves, so admin-set capacities and pre-sharding seats both hold.
+//
+// Keep SLOT_SHARD_COUNT / DEFAULT_SLOT_CAPACITY in sync with SlotShards.java on the client and
+// seededQuota() in firestore.rules.
+
+const SLOT_SHARD_COUNT = 10;
+const DEFAULT_SLOT_CAPACITY = 400;
+
+function slotIdFor(date, window) {
+  return `${date}_${window}`;
+}
+
+function shardRefFor(db, slotId, index) {
+  return db.collection('slots').doc(slotId).collection('shards').doc(String(index));
+}
+
+// Even split; the first (capacity % N) shards take one extra seat.
+function shardQuota(index, capacity) {
+  const base = Math.floor(capacity / SLOT_SHARD_COUNT);
+  return base + (index < capacity % SLOT_SHARD_COUNT ? 1 : 0);
+}
+
+// Claims a seat inside `tx` and returns the shard index, or null when every shard is at
+// quota. Starts at a random shard and only reads the next one when the current is full.
+// Call after the caller's own tx.get() reads: the shard write is queued before returning.
+async function claimSlotSeat(db, tx, date, window, now) {
+  const slotId = slotIdFor(date, window);
+  const start = Math.floor(Math.random() * SLOT_SHARD_COUNT);
+
+  const first = await tx.get(shardRefFor(db, slotId, start));
+  if (!isSeeded(first)) return seedAndClaim(db, tx, date, window, start, first, now);
+
+  for (let i = 0; i < SLOT_SHARD_COUNT; i++) {
+    const index = (start + i) % SLOT_SHARD_COUNT;
+    const ref = shardRefFor(db, slotId, index);
+    const snap = i === 0 ? first : await tx.get(ref);
+    // seeding writes every shard together, so this only skips a shard deleted by hand
+    if (!isSeeded(snap)) continue;
+
+    const booked = snap.get('bookedCount') || 0;
+    const quota = snap.get('quota') || 0;
+    if (booked >= quota) continue;
+
+    tx.update(ref, { bookedCount: booked + 1, updatedAt: now });
+    return index;
+  }
+  return null;
+}
+
+// First booking on a slot whose shards are not seeded: reads the parent and every shard,
+// sets each quota to its bookedCount plus an even share of the parent's remaining capacity,
+// and takes the seat in the same write. Happens once per slot.
+async function seedAndClaim(db, tx, date, window, start, first, now) {
+  const slotId = slotIdFor(date, window);
+  const slotSnap = await tx.get(db.collection('slots').doc(slotId));
+  const snaps = [];
+  for (let i = 0; i < SLOT_SHARD_COUNT; i++) {
+    snaps.push(i === start ? first : await tx.get(shardRefFor(db, slotId, i)));
+  }
+
+  const { quotas, booked } = seededQuotas(slotSnap, snaps);
+  let claimed = null;
+  for (let i = 0; i < SLOT_SHARD_COUNT && claimed === null; i++) {
+    const index = (start + i) % SLOT_SHARD_COUNT;
+    if (booked[index] < quotas[index]) claimed = index;
+  }
+  if (claimed === null) return null;
+
+  quotas.forEach((quota, i) => {
+    tx.set(shardRefFor(db, slotId, i), {
+      date, window, quota, seeded: true, updatedAt: now,
+      bookedCount: booked[i] + (i === claimed ? 1 : 0)
+    }, { merge: true });
+  });
+  return claimed;
+}
+
+// Quota per shard: what it already holds plus an even share of the slot's unused capacity.
+function seededQuotas(slotSnap, shardSnaps) {
+  const capacity = slotSnap.exists ?
+    (slotSnap.get('capacity') || DEFAULT_SLOT_CAPACITY) : DEFAULT_SLOT_CAPACITY;
+  const booked = shardSnaps.map((s) => (s.exists ? (s.get('bookedCount') || 0) : 0));
+  // The parent mirror also holds seats booked before sharding existed, so trust it
+  // whenever it is ahead of the shard sum.
+  const shardBooked = booked.reduce((a, b) => a + b, 0);
+  const mirrorBooked = slotSnap.exists ? (slotSnap.get('bookedCount') || 0) : 0;
+  const totalBooked = Math.max(shardBooked, mirrorBooked);
+  const remaining = Math.max(0, capacity - totalBooked);
+  return { capacity, totalBooked, booked, quotas: booked.map((b, i) => b + shardQuota(i, remaining)) };
+}
+
+function isSeeded(snap) {
+  return snap.exists && snap.get('seeded') === true;
+}
+
+// Gives a seat back. Appointments booked before sharding have no `slotShard`; their seat
+// was counted directly on the parent slot, so that is where it is returned.
+// Only reads; returns a function that queues the decrement once the caller is done reading.
+async function releaseSlotSeat(db, tx, date, window, shard, now) {
+  const slotId = slotIdFor(date, window);
+  const ref = typeof shard === 'number' ?
+    shardRefFor(db, slotId, shard) : db.collection('slots').doc(slotId);
+  const snap = await tx.get(ref);
+  if (!snap.exists) return () => {};
+
+  const booked = snap.get('bookedCount') || 0;
+  return () => tx.update(ref, { bookedCount: Math.max(0, booked - 1), updatedAt: now });
+}
+
+// Recomputes shard quotas so the unused capacity is spread evenly again, e.g. after an
+// admin changes slots/{slotId}.capacity or when bookings drained some shards faster.
+async function rebalanceSlotShards(db, slotId, now) {
+  const slotRef = db.collection('slots').doc(slotId);
+
+  return db.runTransaction(async (tx) => {
+    const slotSnap = await tx.get(slotRef);
+    const shardSnaps = [];
+    for (let i = 0; i < SLOT_SHARD_COUNT; i++) {
+      shardSnaps.push(await tx.get(shardRefFor(db, slotId, i)));
+    }
+
+    const { capacity, totalBooked, quotas } = seededQuotas(slotSnap, shardSnaps);
+    const slotFields = slotSnap.exists ? { date: slotSnap.get('date'), window: slotSnap.get('window') } : {};
+    quotas.forEach((quota, i) => {
+      tx.set(shardRefFor(db, slotId, i), { ...slotFields, quota, seeded: true, rebalancedAt: now }, { merge: true });
+    });
+
+    return { slotId, capacity, totalBooked, quotas };
+  });
+}
+
+module.exports = {
+  SLOT_SHARD_COUNT,
+  DEFAULT_SLOT_CAPACITY,
+  slotIdFor,
+  shardRefFor,
+  shardQuota,
+  claimSlotSeat,
+  releaseSlotSeat,
+  rebalanceSlotShards
+};
@@ -0,0 +1,262 @@
+// functions/test/firestore-rules.test.js
+//
+// Security-rules tests for ../firestore.rules against the Firestore emulator:
+//
+//   npm run test:rules
+//
+// (firebase emulators:exec starts the emulator and sets FIRESTORE_EMULATOR_HOST). Each write
+// below has the same shape as the client code it stands for: BookingTransaction +
+// SlotShards for bookings, MyAppointmentsActivity for reschedules, AuthRegisterActivity for
+// profiles. Run with node's built-in test runner.
+
+const { test, describe, before, after, beforeEach } = require('node:test');
+const fs = require('fs');
+const path = require('path');
+const {
+  initializeTestEnvironment,
+  assertSucceeds,
+  assertFails
+} = require('@firebase/rules-unit-testing');
+const { SLOT_SHARD_COUNT, DEFAULT_SLOT_CAPACITY, shardQuota } = require('../slotShards');
+
+if (!process.env.FIRESTORE_EMULATOR_HOST) {
+  console.error('FIRESTORE_EMULATOR_HOST is not set; refusing to run against a real project.');
+  process.exit(1);
+}
+
+const [HOST, PORT] = process.env.FIRESTORE_EMULATOR_HOST.split(':');
+const DATE = '2026-11-02';
+const WINDOW = '09:00-10:00';
+const SLOT_ID = `${DATE}_${WINDOW}`;
+
+let env;
+
+before(async () => {
+  env = await initializeTestEnvironment({
+    projectId: 'demo-sjpiicd-rules',
+    firestore: {
+      host: HOST,
+      port: parseInt(PORT, 10),
+      rules: fs.readFileSync(path.resolve(__dirname, '../../firestore.rules'), 'utf8')
+    }
+  });
+});
+
+after(async () => {
+  await env.cleanup();
+});
+
+beforeEach(async () => {
+  await env.clearFirestore();
+});
+
+function as(uid, claims) {
+  return env.authenticatedContext(uid, claims).firestore();
+}
+
+async function seed(docs) {
+  await env.withSecurityRulesDisabled(async (ctx) => {
+    const db = ctx.firestore();
+    for (const [docPath, data] of Object.entries(docs)) {
+      await db.doc(docPath).set(data);
+    }
+  });
+}
+
+// BookingTransaction.attempt for a slot whose shards do not exist yet (SlotShards.seedAndClaim
+// with nothing booked), optionally consuming the waiting-room ticket.
+function book(db, uid, { consumeTicket = false, date = DATE, window = WINDOW } = {}) {
+  const slotId = `${date}_${window}`;
+  const apptRef = db.doc(`appointments/${uid}_${slotId}`);
+  const userRef = db.doc(`users/${uid}`);
+  return db.runTransaction(async (tx) => {
+    await tx.get(apptRef);
+    await tx.get(userRef);
+    const slot = await tx.get(db.doc(`slots/${slotId}`));
+    for (let i = 0; i < SLOT_SHARD_COUNT; i++) await tx.get(db.doc(`slots/${slotId}/shards/${i}`));
+
+    const capacity = slot.exists ? (slot.get('capacity') || DEFAULT_SLOT_CAPACITY) : DEFAULT_SLOT_CAPACITY;
+    const remaining = Math.max(0, capacity - (slot.exists ? (slot.get('bookedCount') || 0) : 0));
+    for (let i = 0; i < SLOT_SHARD_COUNT; i++) {
+      tx.set(db.doc(`slots/${slotId}/shards/${i}`), {
+        date, window, quota: shardQuota(i, remaining), bookedCount: i === 0 ? 1 : 0, seeded: true
+      }, { merge: true });
+    }
+    tx.set(apptRef, {
+      userId: uid, date, window, status: 'PENDING', paymentMethod: 'PAY_AT_SCHOOL',
+      createdAt: new Date(), createdByClient: true, slotShard: 0
+    });
+    if (consumeTicket) tx.delete(db.doc(`bookingTickets/${uid}`));
+    tx.set(userRef, { activeAppointments: 1, activeDays: { [date]: `${uid}_${slotId}` } }, { merge: true });
+  });
+}
+
+describe('appointments', () => {
+  test('a booking reads its own id before the document exists', async () => {
+    await assertSucceeds(as('alice').doc(`appointments/alice_${SLOT_ID}`).get());
+  });
+
+  test("another user's missing appointment id stays closed", async () => {
+    await assertFails(as('alice').doc(`appointments/bob_${SLOT_ID}`).get());
+  });
+
+  test("another user's existing appointment stays closed", async () => {
+    await seed({ [`appointments/bob_${SLOT_ID}`]: { userId: 'bob', date: DATE, window: WINDOW, status: 'PENDING' } });
+    await assertFails(as('alice').doc(`appointments/bob_${SLOT_ID}`).get());
+    await assertSucceeds(as('bob').doc(`appointments/bob_${SLOT_ID}`).get());
+  });
+
+  test('books with no config/bookingQueue document', async () => {
+    await assertSucceeds(book(as('alice')));
+  });
+
+  test('books with the queue disabled', async () => {
+    await seed({ 'config/bookingQueue': { enabled: false } });
+    await assertSucceeds(book(as('alice')));
+  });
+
+  test('queue enabled: no ticket, no booking', async () => {
+    await seed({ 'config/bookingQueue': { enabled: true } });
+    await assertFails(book(as('alice')));
+  });
+
+  test('queue enabled: an admitted ticket consumed in the same write books', async () => {
+    const now = Date.now();
+    await seed({
+      'config/bookingQueue': { enabled: true },
+      'bookingTickets/alice': { admitAtMs: now - 1000, expiresAtMs: now + 60000 }
+    });
+    await assertSucceeds(book(as('alice'), { consumeTicket: true }));
+  });
+
+  test('queue enabled: a ticket that is kept does not count', async () => {
+    const now = Date.now();
+    await seed({
+      'config/bookingQueue': { enabled: true },
+      'bookingTickets/alice': { admitAtMs: now - 1000, expiresAtMs: now + 60000 }
+    });
+    await assertFails(book(as('alice')));
+  });
+
+  test('queue enabled: a ticket not yet admitted does not count', async () => {
+    const now = Date.now();
+    await seed({
+      'config/bookingQueue': { enabled: true },
+      'bookingTickets/alice': { admitAtMs: now + 60000, expiresAtMs: now + 120000 }
+    });
+    await assertFails(book(as('alice'), { consumeTicket: true }));
+  });
+
+  test('cannot book under another id', async () => {
+    const db = as('alice');
+    await assertFails(db.doc(`appointments/bob_${SLOT_ID}`).set({
+      userId: 'alice', date: DATE, window: WINDOW, status: 'PENDING'
+    }));
+  });
+
+  test('reschedule takes one seat on the shard it records', async () => {
+    const newDate = '2026-11-03';
+    const newSlotId = `${newDate}_${WINDOW}`;
+    await seed({
+      [`appointments/alice_${SLOT_ID}`]: { userId: 'alice', date: DATE, window: WINDOW, status: 'PENDING', slotShard: 0 },
+      [`slots/${newSlotId}/shards/4`]: { quota: 40, bookedCount: 7, seeded: true }
+    });
+    const db = as('alice');
+    const apptRef = db.doc(`appointments/alice_${SLOT_ID}`);
+    const shardRef = db.doc(`slots/${newSlotId}/shards/4`);
+    const move = { date: newDate, window: WINDOW, slotShard: 4, seatSlotId: newSlotId, updatedAt: new Date() };
+
+    // without the seat
+    await assertFails(apptRef.update(move));
+    await assertSucceeds(db.runTransaction(async (tx) => {
+      await tx.get(apptRef);
+      const shard = await tx.get(shardRef);
+      tx.update(shardRef, { bookedCount: shard.get('bookedCount') + 1, updatedAt: new Date() });
+      tx.update(apptRef, move);
+    }));
+  });
+});
+
+describe('registration', () => {
+  for (const role of ['student', 'guest']) {
+    test(`self-create as ${role}`, async () => {
+      await assertSucceeds(as('alice').doc('users/alice').set({ name: 'Alice', role }));
+    });
+  }
+
+  test('self-create without a role', async () => {
+    await assertSucceeds(as('alice').doc('users/alice').set({ activeAppointments: 1 }));
+  });
+
+  for (const role of ['admin', 'cashier']) {
+    test(`self-create as ${role} is denied`, async () => {
+      await assertFails(as('mallory').doc('users/mallory').set({ name: 'Mallory', role }));
+    });
+  }
+
+  test("cannot create someone else's profile", async () => {
+    await assertFails(as('mallory').doc('users/alice').set({ role: 'student' }));
+  });
+
+  test('cannot promote yourself after sign-up', async () => {
+    await seed({ 'users/mallory': { role: 'guest' } });
+    await assertFails(as('mallory').doc('users/mallory').set({ role: 'admin' }, { merge: true }));
+    await assertSucceeds(as('mallory').doc('users/mallory').set({ name: 'M' }, { merge: true }));
+  });
+
+  test('an admin changes roles', async () => {
+    await seed({ 'users/alice': { role: 'guest' } });
+    await assertSucceeds(as('root', { role: 'admin' }).doc('users/alice').update({ role: 'student' }));
+  });
+});
+
+describe('slot shards', () => {
+  const shard = `slots/${SLOT_ID}/shards/3`;
+
+  beforeEach(async () => {
+    await seed({ [shard]: { quota: 40, bookedCount: 5, seeded: true } });
+  });
+
+  test('takes one seat', async () => {
+    await assertSucceeds(as('alice').doc(shard).update({ bookedCount: 6, updatedAt: new Date() }));
+  });
+
+  test('cannot take two seats at once', async () => {
+    await assertFails(as('alice').doc(shard).update({ bookedCount: 7 }));
+  });
+
+  test('cannot lower bookedCount', async () => {
+    await assertFails(as('alice').doc(shard).update({ bookedCount: 0 }));
+    await assertFails(as('alice').doc(shard).update({ bookedCount: 4 }));
+  });
+
+  test('cannot raise the quota', async () => {
+    await assertFails(as('alice').doc(shard).update({ quota: 1000 }));
+    await assertFails(as('alice').doc(shard).update({ quota: 1000, bookedCount: 6 }));
+  });
+
+  test('cannot go past the stored quota', async () => {
+    await seed({ [shard]: { quota: 40, bookedCount: 40, seeded: true } });
+    await assertFails(as('alice').doc(shard).update({ bookedCount: 41 }));
+  });
+
+  test('seeds a missing shard only with the server quota', async () => {
+    await seed({ [`slots/${SLOT_ID}`]: { capacity: 95, bookedCount: 3 } });
+    const db = as('alice');
+    // 92 left: shards 0 and 1 take 10, the rest 9
+    await assertSucceeds(db.doc(`slots/${SLOT_ID}/shards/1`).set({ quota: 10, bookedCount: 1, seeded: true }));
+    await assertSucceeds(db.doc(`slots/${SLOT_ID}/shards/2`).set({ quota: 9, bookedCount: 0, seeded: true }));
+    await assertFails(db.doc(`slots/${SLOT_ID}/shards/4`).set({ quota: 50, bookedCount: 0, seeded: true }));
+    await assertFails(db.doc(`slots/${SLOT_ID}/shards/5`).set({ quota: 9, bookedCount: 5, seeded: true }));
+    await assertFails(db.doc(`slots/${SLOT_ID}/shards/12`).set({ quota: 9, bookedCount: 0, seeded: true }));
+  });
+
+  test('an unseeded shard is left to rebalanceSlotShards', async () => {
+    await seed({ [`slots/${SLOT_ID}/shards/6`]: { bookedCount: 2 } });
+    await assertFails(as('alice').doc(`slots/${SLOT_ID}/shards/6`).update({ bookedCount: 3 }));
+  });
+
+  test('admins may correct a shard', async () => {
+    await assertSucceeds(as('root', { role: 'admin' }).doc(shard).update({ quota: 60, bookedCount: 0 }));
+  });
+});
@@ -0,0 +1,155 @@
+// functions/usernameBloom.js
+//
+// Bloom filter of taken usernames, so AuthRegisterActivity can tell "free" from "maybe taken"
+// on every keystroke without a network call. UsernameBloom.java must hash exactly like this.
+//
+// usernameBloom/filter       { m, k, count, seq, bits (bytes), builtAt }   the base filter
+// usernameBloom/seq          { seq, filterSeq, prunedThrough }             delta sequence
+// usernameBloomDeltas/{name} { username, seq }                             added since a build
+//
+// Every new usernames doc gets a delta with the next seq. Clients keep a copy of the base and
+// apply deltas with seq above theirs. A rebuild folds the deltas into a fresh base sized for
+// the current count plus headroom; deltas older than the previous base are deleted then, and
+// a client whose copy is older than prunedThrough downloads the base again. Released usernames
+// stay in the filter until the next rebuild; they only cost an extra confirm.
+
+const admin = require('firebase-admin');
+
+const TARGET_FPR = 0.01;
+const MIN_CAPACITY = 1000;
+const REBUILD_EVERY = 1000;
+const PAGE_SIZE = 1000;
+
+const FNV_OFFSET = 0x811c9dc5;
+const FNV_PRIME = 16777619;
+// second hash for double hashing: same FNV-1a, different offset basis
+const FNV_OFFSET_2 = 0x5bd1e995;
+
+function fnv1a(bytes, offset) {
+  let h = offset;
+  for (let i = 0; i < bytes.length; i++) {
+    h ^= bytes[i];
+    h = Math.imul(h, FNV_PRIME);
+  }
+  return h >>> 0;
+}
+
+// Bit positions (h1 + i*h2) mod m, i < k; h2 forced odd so the positions don't collapse.
+function positions(username, m, k) {
+  const bytes = Buffer.from(username, 'utf8');
+  const h1 = fnv1a(bytes, FNV_OFFSET);
+  const h2 = (fnv1a(bytes, FNV_OFFSET_2) | 1) >>> 0;
+  const out = new Array(k);
+  for (let i = 0; i < k; i++) out[i] = ((h1 + Math.imul(i, h2)) >>> 0) % m;
+  return out;
+}
+
+// Room for REBUILD_EVERY more names (twice, in case a rebuild is late) before the rate degrades.
+function capacityFor(count) {
+  return Math.max(MIN_CAPACITY, count + 2 * REBUILD_EVERY);
+}
+
+// m rounded up to whole bytes; k = (m/n) ln 2.
+function sizeFor(capacity, fpr = TARGET_FPR) {
+  const n = Math.max(capacity, 1);
+  const m = Math.ceil((-n * Math.log(fpr)) / (Math.LN2 * Math.LN2) / 8) * 8;
+  const k = Math.min(16, Math.max(1, Math.round((m / n) * Math.LN2)));
+  return { m, k };
+}
+
+function createFilter(capacity) {
+  const { m, k } = sizeFor(capacity);
+  return { m, k, count: 0, bits: Buffer.alloc(m / 8) };
+}
+
+function addTo(filter, username) {
+  positions(username, filter.m, filter.k).forEach((p) => {
+    filter.bits[p >>> 3] |= 1 << (p & 7);
+  });
+  filter.count++;
+}
+
+function mightContain(filter, username) {
+  return positions(username, filter.m, filter.k).every((p) => (filter.bits[p >>> 3] & (1 << (p & 7))) !== 0);
+}
+
+// Called from the usernames onCreate trigger. Returns the delta's seq and whether the base
+// is due for a rebuild (none yet, or REBUILD_EVERY deltas since the last one).
+async function recordUsernameDelta(db, username) {
+  const seqRef = db.collection('usernameBloom').doc('seq');
+  const deltaRef = db.collection('usernameBloomDeltas').doc(username);
+  return db.runTransaction(async (tx) => {
+    const snap = await tx.get(seqRef);
+    const state = snap.exists ? snap.data() : {};
+    const seq = (state.seq || 0) + 1;
+    tx.set(seqRef, { seq }, { merge: true });
+    tx.set(deltaRef, { username, seq });
+    const rebuildDue = state.filterSeq === undefined || seq - state.filterSeq >= REBUILD_EVERY;
+    return { seq, rebuildDue };
+  });
+}
+
+async function rebuildUsernameBloom(db, now) {
+  const seqRef = db.collection('usernameBloom').doc('seq');
+  const seqSnap = await seqRef.get();
+  const state = seqSnap.exists ? seqSnap.data() : {};
+  // every username with a delta at or below this seq already exists, so the scan sees it
+  const seq = state.seq || 0;
+  const previous = state.filterSeq || 0;
+
+  const names = [];
+  let last = null;
+  for (;;) {
+    let q = db.collection('usernames')
+      .orderBy(admin.firestore.FieldPath.documentId())
+      .select()
+      .limit(PAGE_SIZE);
+    if (last) q = q.startAfter(last);
+    const page = await q.get();
+    if (page.empty) break;
+    page.docs.forEach((d) => names.push(d.id));
+    last = page.docs[page.docs.length - 1];
+    if (page.size < PAGE_SIZE) break;
+  }
+
+  const filter = createFilter(capacityFor(names.length));
+  names.forEach((n) => addTo(filter, n));
+
+  await db.collection('usernameBloom').doc('filter').set({
+    m: filter.m,
+    k: filter.k,
+    count: filter.count,
+    seq,
+    bits: filter.bits,
+    builtAt: now
+  });
+  // publish prunedThrough before deleting, so no client trusts deltas that are going away
+  await seqRef.set({ filterSeq: seq, prunedThrough: previous }, { merge: true });
+
+  const writer = db.bulkWriter();
+  let pruned = 0;
+  if (previous > 0) {
+    const old = await db.collection('usernameBloomDeltas').where('seq', '<=', previous).select().get();
+    old.docs.forEach((d) => {
+      writer.delete(d.ref);
+      pruned++;
+    });
+  }
+  await writer.close();
+
+  return { count: filter.count, m: filter.m, k: filter.k, bytes: filter.bits.length, seq, pruned };
+}
+
+module.exports = {
+  TARGET_FPR,
+  REBUILD_EVERY,
+  capacityFor,
+  fnv1a,
+  positions,
+  sizeFor,
+  createFilter,
+  addTo,
+  mightContain,
+  recordUsernameDelta,
+  rebuildUsernameBloom
+};